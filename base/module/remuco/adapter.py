@@ -25,6 +25,7 @@ import inspect
 import math # for ceiling
 import os
 import os.path
+import time
 import urllib
 import urlparse
 
@@ -42,6 +43,7 @@ from remuco.defs import *
 from remuco.features import *
 
 from remuco.data import PlayerInfo, PlayerState, Progress, ItemList, Item
+from remuco.data import Delta
 from remuco.data import Control, Action, Tagging, Request
 
 from remuco.manager import NoManager
@@ -125,12 +127,18 @@ class ListReply(object):
         
         ### sending ###
         
+        device = self.__client.info.device
+        
         ilist = ItemList(self.__request_id,
                          self.__path, nested, ids, names, item_offset,
                          self.__page, page_max,
-                         self.__item_actions, self.__list_actions)
+                         self.__item_actions, self.__list_actions,
+                         pairs=device.get("item-pairs") == "yes")
+        
+        string_refs = device.get("string-refs") == "yes"
         
-        msg = net.build_message(self.__reply_msg_id, ilist)
+        msg = net.build_message(self.__reply_msg_id, ilist,
+                                string_refs=string_refs)
         
         gobject.idle_add(self.__client.send, msg)
         
@@ -321,6 +329,9 @@ MIMETYPES_AUDIO = ("audio", "application/ogg")
 MIMETYPES_VIDEO = ("video",)
 MIMETYPES_AV = MIMETYPES_AUDIO + MIMETYPES_VIDEO
 
+# max number of steps done for one (coalesced) seek or volume control
+CTRL_STEPS_MAX = 20
+
 class PlayerAdapter(object):
     '''Base class for Remuco player adapters.
     
@@ -355,6 +366,7 @@ class PlayerAdapter(object):
         * ctrl_previous()
         * ctrl_seek()
         * ctrl_volume()
+        * ctrl_volume_set()
         * ctrl_rate()
         * ctrl_tag()
         * ctrl_navigate()
@@ -480,6 +492,12 @@ class PlayerAdapter(object):
         
         self.__clients = []
         
+        # last state and progress data sent to delta sync capable clients
+        self.__sync_base = {}
+        
+        # last progress sent to clients which requested a progress interval
+        self.__progress_sent = {}
+        
         self.__state = PlayerState()
         self.__progress = Progress()
         self.__item_id = None
@@ -771,6 +789,19 @@ class PlayerAdapter(object):
         """
         log.error("** BUG ** in feature handling")
         
+    def ctrl_volume_set(self, volume):
+        """Set volume.
+        
+        @param volume:
+            the new volume in percent (0 - 100)
+        
+        @note: Override if it is possible and makes sense. If not overridden,
+            clients adjust the volume stepwise using ctrl_volume().
+            Not used if master volume control is enabled in the configuration.
+               
+        """
+        log.error("** BUG ** in feature handling")
+        
     def __ctrl_volume_master(self, direction):
         """Adjust volume using custom volume command (instead of player)."""
         
@@ -787,6 +818,17 @@ class PlayerAdapter(object):
         else:
             gobject.idle_add(self.__update_volume_master)
         
+    def __ctrl_steps(self, ctrl, steps):
+        """Call a relative control function repeatedly.
+        
+        Clients merge repeated seek or volume controls into one control whose
+        parameter is the number of steps to do (negative for backward/down).
+        
+        """
+        direction = steps > 0 and 1 or -1
+        for i in range(min(abs(steps), CTRL_STEPS_MAX)):
+            ctrl(direction)
+        
     def __ctrl_shutdown_system(self):
         
         if self.config.system_shutdown_enabled:
@@ -1208,12 +1250,7 @@ class PlayerAdapter(object):
 
         log.debug("broadcast new state to clients: %s" % self.__state)
         
-        msg = net.build_message(message.SYNC_STATE, self.__state)
-        
-        if msg is None:
-            return
-        
-        for c in self.__clients: c.send(msg)
+        self.__sync_broadcast(message.SYNC_STATE, self.__state)
         
         return False
     
@@ -1223,14 +1260,85 @@ class PlayerAdapter(object):
         
         log.debug("broadcast new progress to clients: %s" % self.__progress)
         
-        msg = net.build_message(message.SYNC_PROGRESS, self.__progress)
+        self.__sync_broadcast(message.SYNC_PROGRESS, self.__progress)
         
-        if msg is None:
-            return
+        return False
+    
+    def __sync_broadcast(self, id, serializable):
+        """Send a state or progress sync message to all clients."""
         
-        for c in self.__clients: c.send(msg)
+        msg_full = None
         
-        return False
+        for c in self.__clients:
+            
+            if id == message.SYNC_PROGRESS and not self.__progress_due(c):
+                continue
+            
+            if c.info.device.get("delta-sync") == "yes":
+                msg = self.__sync_msg_delta(c, id, serializable)
+            else:
+                if msg_full is None:
+                    msg_full = net.build_message(id, serializable)
+                msg = msg_full
+            
+            if msg is not None:
+                c.send(msg)
+        
+        for c in self.__sync_base.keys():
+            if not c in self.__clients:
+                del self.__sync_base[c]
+        for c in self.__progress_sent.keys():
+            if not c in self.__clients:
+                del self.__progress_sent[c]
+    
+    def __progress_due(self, client):
+        """Check if a progress sync is due for a client.
+        
+        Clients which requested a progress interval extrapolate the progress
+        on their own. They get a sync only when the interval has passed or
+        when the progress differs from what they extrapolate (e.g. because of
+        seeking or a new item).
+        
+        """
+        try:
+            interval = int(client.info.device.get("progress-interval", 0))
+        except ValueError:
+            interval = 0
+        
+        if interval <= 0:
+            return True
+        
+        now = time.time()
+        playing = self.__state.playback == PLAYBACK_PLAY
+        current = (now, self.__progress.progress, self.__progress.length,
+                   playing)
+        
+        last = self.__progress_sent.get(client)
+        
+        if last is None:
+            due = True
+        else:
+            then, progress, length, was_playing = last
+            elapsed = now - then
+            expected = progress + (elapsed if was_playing else 0)
+            due = (length != current[2] or playing != was_playing or
+                   abs(current[1] - expected) > 2 or elapsed >= interval)
+        
+        if due:
+            self.__progress_sent[client] = current
+        
+        return due
+    
+    def __sync_msg_delta(self, client, id, serializable):
+        """Creates a sync message with fields changed since the last sync."""
+        
+        base = self.__sync_base.setdefault(client, {})
+        
+        msg = net.build_message(id, Delta(serializable, base.get(id)))
+        
+        base[id] = serializable.get_data()
+        
+        return msg
     
     def __sync_item(self):
 
@@ -1240,7 +1348,7 @@ class PlayerAdapter(object):
         
         for c in self.__clients:
             
-            msg = net.build_message(message.SYNC_ITEM, self.__item(c))
+            msg = self.__item_msg(c)
             
             if msg is not None:
                 c.send(msg)
@@ -1273,13 +1381,35 @@ class PlayerAdapter(object):
             
         elif id == message.PRIV_INITIAL_SYNC:
             
-            msg = net.build_message(message.SYNC_STATE, self.__state)
-            client.send(msg)
-            
-            msg = net.build_message(message.SYNC_PROGRESS, self.__progress)
-            client.send(msg)
+            # client may have missed syncs, reset sync history
+            self.__progress_sent.pop(client, None)
+            self.__progress_due(client)
+            
+            if client.info.device.get("delta-sync") == "yes":
+                # send all fields
+                self.__sync_base.pop(client, None)
+                msg = self.__sync_msg_delta(client, message.SYNC_STATE,
+                                            self.__state)
+                client.send(msg)
+                msg = self.__sync_msg_delta(client, message.SYNC_PROGRESS,
+                                            self.__progress)
+                client.send(msg)
+            else:
+                msg = net.build_message(message.SYNC_STATE, self.__state)
+                client.send(msg)
+                msg = net.build_message(message.SYNC_PROGRESS, self.__progress)
+                client.send(msg)
+            
+            # a client resuming a session already has the item it saw last
+            # (a new client has no session and nothing to skip, even if
+            # currently there is no item either)
+            device = client.info.device
+            if (device.get("session") and self.__item_id is not None and
+                device.get("session-item") == self.__item_id):
+                log.debug("skip item sync for resumed session of %s" % client)
+                return
             
-            msg = net.build_message(message.SYNC_ITEM, self.__item(client))
+            msg = self.__item_msg(client)
             client.send(msg)
             
         else:
@@ -1305,7 +1435,7 @@ class PlayerAdapter(object):
             if control is None:
                 return
             
-            self.ctrl_seek(control.param)
+            self.__ctrl_steps(self.ctrl_seek, control.param)
             
         elif id == message.CTRL_VOLUME:
             
@@ -1314,9 +1444,22 @@ class PlayerAdapter(object):
                 return
             
             if self.config.master_volume_enabled:
-                self.__ctrl_volume_master(control.param)
+                ctrl = self.__ctrl_volume_master
+            else:
+                ctrl = self.ctrl_volume
+            
+            if control.param == 0:
+                ctrl(0)
             else:
-                self.ctrl_volume(control.param)
+                self.__ctrl_steps(ctrl, control.param)
+            
+        elif id == message.CTRL_VOLUME_SET:
+            
+            control = serial.unpack(Control, bindata)
+            if control is None:
+                return
+            
+            self.ctrl_volume_set(min(max(control.param, 0), 100))
             
         elif id == message.CTRL_REPEAT:
             
@@ -1440,6 +1583,32 @@ class PlayerAdapter(object):
         return Item(self.__item_id, self.__item_info, self.__item_img,
                     client.info.img_size, client.info.img_type)
         
+    def __item_msg(self, client):
+        """Creates a client specific item message.
+        
+        If the message exceeds the maximum message size of the client, the
+        item's image gets left out.
+        
+        """
+        string_refs = client.info.device.get("string-refs") == "yes"
+        
+        msg = net.build_message(message.SYNC_ITEM, self.__item(client),
+                                string_refs=string_refs)
+        
+        try:
+            max_size = int(client.info.device.get("max-msg-size", 0))
+        except ValueError:
+            max_size = 0
+        
+        if msg is not None and max_size > 0 and len(msg) > max_size:
+            log.debug("item too big for %s, leave out image" % client)
+            item = Item(self.__item_id, self.__item_info, None, 0,
+                        client.info.img_type)
+            msg = net.build_message(message.SYNC_ITEM, item,
+                                    string_refs=string_refs)
+        
+        return msg
+        
     def __util_files_to_uris(self, files):
         
         def file_to_uri(file):
@@ -1474,6 +1643,12 @@ class PlayerAdapter(object):
             else:
                 return 0  
         
+        # master volume commands only adjust the volume stepwise
+        if self.config.master_volume_enabled:
+            volume_set = 0
+        else:
+            volume_set = ftc(self.ctrl_volume_set, FT_CTRL_VOLUME_SET)
+        
         features = (
                                            
             # --- 'is known' features ---
@@ -1490,6 +1665,7 @@ class PlayerAdapter(object):
             ftc(self.ctrl_toggle_playing, FT_CTRL_PLAYBACK),
             ftc(self.ctrl_volume, FT_CTRL_VOLUME),
             ftc(self.config.master_volume_enabled, FT_CTRL_VOLUME),
+            volume_set,
             ftc(self.ctrl_seek, FT_CTRL_SEEK),
             ftc(self.ctrl_tag, FT_CTRL_TAG),
             ftc(self.ctrl_rate, FT_CTRL_RATE),
@@ -112,6 +112,44 @@ class Progress(serial.Serializable):
     def get_data(self):
         return (self.progress, self.length)
 
+class Delta(serial.Serializable):
+    """ Delta format of a serializable relative to previously sent data.
+    
+    A leading short contains a bit mask of the fields included (bit i for the
+    i-th field of the serializable). Only fields which differ from the base
+    data are included (all fields if there is no base data).
+    
+    """
+    
+    def __init__(self, serializable, base):
+        
+        mask = 0
+        self.__fmt = [serial.TYPE_N]
+        self.__data = [0]
+        
+        fmt = serializable.get_fmt()
+        data = serializable.get_data()
+        
+        for i in range(len(fmt)):
+            if base is None or base[i] != data[i]:
+                mask |= 1 << i
+                self.__fmt.append(fmt[i])
+                self.__data.append(data[i])
+                
+        self.__data[0] = mask
+        
+    def __str__(self):
+        
+        return str(self.__data)
+        
+    # === serial interface ===
+        
+    def get_fmt(self):
+        return tuple(self.__fmt)
+        
+    def get_data(self):
+        return tuple(self.__data)
+
 class Item(serial.Serializable):
     """ Parameter of the item sync message sent to clients."""
     
@@ -184,8 +222,16 @@ class ItemList(serial.Serializable):
     """ Parameter of a request reply message sent to clients."""
     
     def __init__(self, request_id, path, nested, item_ids, item_names,
-                 item_offset, page, page_max, item_actions, list_actions):
+                 item_offset, page, page_max, item_actions, list_actions,
+                 pairs=False):
+        """Create a new item list.
+        
+        @keyword pairs:
+            send item IDs and names as one array of interleaved pairs (only
+            for clients which announced the device extra 'item-pairs')
         
+        """
+        self.pairs = pairs
         self.request_id = request_id
         self.path = path or []
         self.nested = nested or []
@@ -221,18 +267,29 @@ class ItemList(serial.Serializable):
     # === serial interface ===
         
     def get_fmt(self):
-        return (serial.TYPE_I,
-                serial.TYPE_AS, serial.TYPE_AS, serial.TYPE_AS, serial.TYPE_AS,
-                serial.TYPE_I, serial.TYPE_I, serial.TYPE_I,
-                serial.TYPE_AI, serial.TYPE_AS, serial.TYPE_AB,
-                serial.TYPE_AI, serial.TYPE_AS)
+        if self.pairs:
+            # a short marks the pair layout, then one array of ID-name pairs
+            items = (serial.TYPE_N, serial.TYPE_AS)
+        else:
+            items = (serial.TYPE_AS, serial.TYPE_AS)
+        return ((serial.TYPE_I, serial.TYPE_AS, serial.TYPE_AS) + items +
+                (serial.TYPE_I, serial.TYPE_I, serial.TYPE_I,
+                 serial.TYPE_AI, serial.TYPE_AS, serial.TYPE_AB,
+                 serial.TYPE_AI, serial.TYPE_AS))
         
     def get_data(self):
-        return (self.request_id,
-                self.path, self.nested, self.item_ids, self.item_names,
-                self.item_offset, self.page, self.page_max,
-                self.ia_ids, self.ia_labels, self.ia_multiples,
-                self.la_ids, self.la_labels)
+        if self.pairs:
+            pairs = []
+            for id, name in zip(self.item_ids, self.item_names):
+                pairs.append(id)
+                pairs.append(name)
+            items = (0, pairs)
+        else:
+            items = (self.item_ids, self.item_names)
+        return ((self.request_id, self.path, self.nested) + items +
+                (self.item_offset, self.page, self.page_max,
+                 self.ia_ids, self.ia_labels, self.ia_multiples,
+                 self.la_ids, self.la_labels))
 
 
 # =============================================================================
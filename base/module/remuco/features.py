@@ -34,7 +34,7 @@ FT_CTRL_PLAYBACK = 1 << 9
 FT_CTRL_VOLUME = 1 << 10
 FT_CTRL_SEEK = 1 << 11
 FT_CTRL_TAG = 1 << 12
-#FT_CTRL_ = 1 << 13
+FT_CTRL_VOLUME_SET = 1 << 13
 #FT_CTRL_ = 1 << 14
 FT_CTRL_RATE = 1 << 15
 FT_CTRL_REPEAT = 1 << 16
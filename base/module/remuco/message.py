@@ -58,6 +58,7 @@ CTRL_REPEAT = _CTRL + 5
 CTRL_SHUFFLE = _CTRL + 6
 CTRL_FULLSCREEN = _CTRL + 7
 CTRL_RATE = _CTRL + 8
+CTRL_VOLUME_SET = _CTRL + 9
 CTRL_TAG = _CTRL + 30
 CTRL_NAVIGATE = _CTRL + 40 #31 would be ugly
 CTRL_SHUTDOWN = _CTRL + 90
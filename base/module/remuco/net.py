@@ -34,13 +34,16 @@ from remuco import serial
 from remuco.data import ClientInfo
 from remuco.remos import zc_publish, zc_unpublish
 
-def build_message(id, serializable):
+def build_message(id, serializable, string_refs=False):
     """Create a message ready to send on a socket.
     
     @param id:
         message id
     @param serializable:
         message content (object of type Serializable)
+    @keyword string_refs:
+        write repeated strings as back-references (only use for clients
+        which announced the device extra 'string-refs')
     
     @return:
         the message as a binary string or None if serialization failed
@@ -53,7 +56,7 @@ def build_message(id, serializable):
     # clients.
     
     if serializable is not None:
-        ba = serial.pack(serializable)
+        ba = serial.pack(serializable, string_refs=string_refs)
         if ba is None:
             log.warning("failed to serialize (msg-id %d)" % id)
             return None
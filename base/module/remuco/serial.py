@@ -39,17 +39,38 @@ TYPE_AN = 10
 TYPE_AB = 11
 TYPE_AL = 12
 
+# string length value marking a back-reference to a previous string
+STRING_REF = -1
+
+# number of strings per message clients remember for back-references
+STRING_REFS_MAX = 256
+
+# minimum string length for which a back-reference saves space
+STRING_REF_MIN_LEN = 5
+
 class Bin:
     
     NET_ENCODING = "UTF-8" # codec for data exchanged with clients
     NET_ENCODING_ALT = ("UTF-8", "UTF8", "utf-8", "utf8") # synonyms
     HOST_ENCODING = NET_ENCODING # will be updated with value from config file
     
-    def __init__(self, buff=None):
+    def __init__(self, buff=None, string_refs=False):
+        """Create a new binary data buffer.
         
+        @keyword string_refs:
+            write repeated strings as back-references (only for clients which
+            announced support for them)
+            
+        """
         self.__data = buff or array.array('c')
         self.__off = 0
         
+        if string_refs:
+            self.__refs = {} # string -> index of its first occurrence
+        else:
+            self.__refs = None
+        self.__refs_num = 0 # number of strings written as is
+        
     def get_buff(self):
         if isinstance(self.__data, basestring):
             return self.__data
@@ -218,8 +239,7 @@ class Bin:
         
         """
         if s is None:
-            self.__write_string(s)
-            return
+            s = ""
         
         if isinstance(s, unicode):
             
@@ -241,7 +261,18 @@ class Bin:
             except UnicodeEncodeError, e:
                 log.warning("could not encode '%s' with codec %s (%s)" %
                             (s, Bin.NET_ENCODING, e))
-            
+        
+        if self.__refs is not None:
+            index = self.__refs.get(s)
+            if index is not None:
+                self.write_short(STRING_REF)
+                self.write_int(index)
+                return
+            if (self.__refs_num < STRING_REFS_MAX and
+                len(s) >= STRING_REF_MIN_LEN):
+                self.__refs[s] = self.__refs_num
+        
+        self.__refs_num += 1
         self.__write_string(s)
 
     def write_array_boolean(self, ba):
@@ -321,7 +352,7 @@ class Serializable(object):
 
         raise NotImplementedError
     
-def pack(serializable):
+def pack(serializable, string_refs=False):
 
     fmt = serializable.get_fmt()
     
@@ -333,7 +364,7 @@ def pack(serializable):
         
     #log.debug("data to pack: %s" % str(data))
 
-    bin = Bin()
+    bin = Bin(string_refs=string_refs)
     
     try:
 
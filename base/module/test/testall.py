@@ -32,6 +32,7 @@ from testserial import SerializationTest
 from testnet import ServerTest
 from testfiles import FilesTest
 from testadapter import AdapterTest
+from testprotocol import ProtocolTest
 
 if __name__ == "__main__":
     
@@ -0,0 +1,316 @@
+# =============================================================================
+#
+#    Remuco - A remote control system for media players.
+#    Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+#
+#    This file is part of Remuco.
+#
+#    Remuco is free software: you can redistribute it and/or modify
+#    it under the terms of the GNU General Public License as published by
+#    the Free Software Foundation, either version 3 of the License, or
+#    (at your option) any later version.
+#
+#    Remuco is distributed in the hope that it will be useful,
+#    but WITHOUT ANY WARRANTY; without even the implied warranty of
+#    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+#    GNU General Public License for more details.
+#
+#    You should have received a copy of the GNU General Public License
+#    along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+#
+# =============================================================================
+
+import unittest
+
+import os
+import struct
+import sys
+import tempfile
+import zlib
+
+import remuco.log
+from remuco import PlayerAdapter
+from remuco import message
+from remuco import serial
+from remuco.data import ClientInfo, Delta, PlayerState
+from remuco.features import FT_CTRL_VOLUME_SET
+
+def _write_png(width, height):
+    """Write a noisy RGB image as PNG to a temporary file.
+    
+    @return: the file's name (to delete by the caller)
+    
+    """
+    def chunk(tag, data):
+        crc = zlib.crc32(tag + data) & 0xffffffff
+        return (struct.pack("!I", len(data)) + tag + data +
+                struct.pack("!I", crc))
+    
+    rows = []
+    for y in range(height):
+        row = [struct.pack("!B", 0)] # filter type none
+        for x in range(width):
+            i = y * width + x
+            row.append(struct.pack("!BBB", i % 251, i * 7 % 253, i * 13 % 255))
+        rows.append("".join(row))
+    
+    fd, name = tempfile.mkstemp(suffix=".png")
+    os.write(fd, "\x89PNG\r\n\x1a\n")
+    os.write(fd, chunk("IHDR", struct.pack("!IIBBBBB", width, height, 8, 2,
+                                           0, 0, 0)))
+    os.write(fd, chunk("IDAT", zlib.compress("".join(rows))))
+    os.write(fd, chunk("IEND", ""))
+    os.close(fd)
+    
+    return name
+    
+class _Client(object):
+    """Records the messages a player adapter sends to a client."""
+    
+    def __init__(self, device=None):
+        
+        self.info = ClientInfo()
+        self.info.device = device or {}
+        self.messages = []
+        
+    def send(self, msg):
+        
+        self.messages.append(msg)
+        
+    def ids(self):
+        """Get the IDs of all sent messages."""
+        
+        return [struct.unpack("!h", msg[:2])[0] for msg in self.messages]
+    
+class _ControlAdapter(PlayerAdapter):
+    """Records the controls it gets called with."""
+    
+    def __init__(self):
+        
+        PlayerAdapter.__init__(self, "unittest")
+        
+        self.controls = []
+        
+    def ctrl_seek(self, direction):
+        
+        self.controls.append(("seek", direction))
+        
+    def ctrl_volume(self, direction):
+        
+        self.controls.append(("volume", direction))
+        
+    def ctrl_volume_set(self, volume):
+        
+        self.controls.append(("volume-set", volume))
+        
+class ProtocolTest(unittest.TestCase):
+
+    def setUp(self):
+        
+        logarg = "--remuco-log-stdout"
+        if not logarg in sys.argv:
+            sys.argv.append(logarg)
+
+        self.__pa = PlayerAdapter("unittest")
+        
+        self.__pa.config.log_level = remuco.log.WARNING
+        
+    def test_delta(self):
+        
+        state = PlayerState()
+        
+        delta = Delta(state, None)
+        self.assertEqual(delta.get_fmt()[0], serial.TYPE_N)
+        self.assertEqual(delta.get_fmt()[1:], state.get_fmt())
+        self.assertEqual(delta.get_data(), (0x3f,) + state.get_data())
+        
+        base = state.get_data()
+        state.volume = 50
+        state.shuffle = True
+        
+        delta = Delta(state, base)
+        self.assertEqual(delta.get_fmt(),
+                         (serial.TYPE_N, serial.TYPE_Y, serial.TYPE_B))
+        self.assertEqual(delta.get_data(), (0x12, 50, True))
+        
+        delta = Delta(state, state.get_data())
+        self.assertEqual(delta.get_fmt(), (serial.TYPE_N,))
+        self.assertEqual(delta.get_data(), (0,))
+        
+    def test_sync_msg_delta(self):
+        
+        c1 = _Client({"delta-sync": "yes"})
+        c2 = _Client({"delta-sync": "yes"})
+        state = PlayerState()
+        
+        msg = self.__sync_msg_delta(c1, message.SYNC_STATE, state)
+        self.assertEqual(self.__delta_mask(msg), 0x3f)
+        
+        state.position = 3
+        
+        msg = self.__sync_msg_delta(c1, message.SYNC_STATE, state)
+        self.assertEqual(self.__delta_mask(msg), 0x04)
+        self.assertEqual(msg[9:], struct.pack("!bi", serial.TYPE_I, 3))
+        
+        msg = self.__sync_msg_delta(c1, message.SYNC_STATE, state)
+        self.assertEqual(self.__delta_mask(msg), 0)
+        
+        # bases are per client and per message
+        msg = self.__sync_msg_delta(c2, message.SYNC_STATE, state)
+        self.assertEqual(self.__delta_mask(msg), 0x3f)
+        msg = self.__sync_msg_delta(c1, message.SYNC_ITEM, state)
+        self.assertEqual(self.__delta_mask(msg), 0x3f)
+        
+    def test_initial_sync_delta(self):
+        
+        c = _Client({"delta-sync": "yes"})
+        state = self.__pa._PlayerAdapter__state
+        
+        self.__initial_sync(c)
+        self.assertEqual(self.__delta_mask(c.messages[0]), 0x3f)
+        self.assertEqual(self.__delta_mask(c.messages[1]), 0x03)
+        
+        msg = self.__sync_msg_delta(c, message.SYNC_STATE, state)
+        self.assertEqual(self.__delta_mask(msg), 0)
+        
+        # client may have missed syncs, so it gets all fields again
+        c.messages = []
+        self.__initial_sync(c)
+        self.assertEqual(self.__delta_mask(c.messages[0]), 0x3f)
+        
+        # clients without delta sync get plain messages
+        c = _Client()
+        self.__initial_sync(c)
+        self.assertEqual(c.messages[0][6], chr(serial.TYPE_Y))
+        
+    def test_initial_sync_new_client(self):
+        
+        c = _Client()
+        self.__initial_sync(c)
+        self.assertEqual(c.ids(), [message.SYNC_STATE, message.SYNC_PROGRESS,
+                                   message.SYNC_ITEM])
+        
+    def test_initial_sync_resumed_session(self):
+        
+        self.__pa.update_item("i1", {"title": "t1"}, None)
+        
+        c = _Client({"session": "s1", "session-item": "i1"})
+        self.__initial_sync(c)
+        self.assertEqual(c.ids(), [message.SYNC_STATE, message.SYNC_PROGRESS])
+        
+        # item changed while the client was away
+        self.__pa.update_item("i2", {"title": "t2"}, None)
+        
+        c = _Client({"session": "s1", "session-item": "i1"})
+        self.__initial_sync(c)
+        self.assertEqual(c.ids(), [message.SYNC_STATE, message.SYNC_PROGRESS,
+                                   message.SYNC_ITEM])
+        
+        # same item, but no session to resume
+        c = _Client({"session-item": "i2"})
+        self.__initial_sync(c)
+        self.assertTrue(message.SYNC_ITEM in c.ids())
+        
+    def test_initial_sync_resumed_session_without_item(self):
+        
+        c = _Client({"session": "s1"})
+        self.__initial_sync(c)
+        self.assertTrue(message.SYNC_ITEM in c.ids())
+        
+    def test_item_max_msg_size(self):
+        
+        img = _write_png(64, 64)
+        try:
+            self.__pa.update_item("i1", {"title": "t1"}, img)
+            
+            c = _Client()
+            c.info.img_size = 64
+            c.info.img_type = "PNG"
+            
+            full = self.__item_msg(c)
+            empty_img = struct.pack("!bi", serial.TYPE_AY, 0)
+            self.assertFalse(full.endswith(empty_img))
+            
+            c.info.device["max-msg-size"] = str(len(full))
+            self.assertEqual(self.__item_msg(c), full)
+            
+            # too big, leave out the image but keep ID and meta information
+            c.info.device["max-msg-size"] = str(len(full) - 1)
+            msg = self.__item_msg(c)
+            self.assertTrue(len(msg) < len(full))
+            self.assertTrue(msg.endswith(empty_img))
+            self.assertTrue("t1" in msg)
+            
+            c.info.device["max-msg-size"] = "x"
+            self.assertEqual(self.__item_msg(c), full)
+        finally:
+            os.remove(img)
+        
+    def __initial_sync(self, client):
+        
+        self.__pa._PlayerAdapter__handle_message(client,
+                                                 message.PRIV_INITIAL_SYNC,
+                                                 None)
+        
+    def test_ctrl_steps(self):
+        
+        pa = _ControlAdapter()
+        pa.config.log_level = remuco.log.WARNING
+        
+        self.__control(pa, message.CTRL_SEEK, 3)
+        self.assertEqual(pa.controls, [("seek", 1)] * 3)
+        
+        pa.controls = []
+        self.__control(pa, message.CTRL_SEEK, -2)
+        self.assertEqual(pa.controls, [("seek", -1)] * 2)
+        
+        # limited to not block the adapter on bogus step counts
+        pa.controls = []
+        self.__control(pa, message.CTRL_VOLUME, -1000)
+        self.assertEqual(pa.controls, [("volume", -1)] * 20)
+        
+        # zero means mute, not zero steps
+        pa.controls = []
+        self.__control(pa, message.CTRL_VOLUME, 0)
+        self.assertEqual(pa.controls, [("volume", 0)])
+        
+    def test_ctrl_volume_set(self):
+        
+        pa = _ControlAdapter()
+        pa.config.log_level = remuco.log.WARNING
+        
+        self.__control(pa, message.CTRL_VOLUME_SET, 42)
+        self.__control(pa, message.CTRL_VOLUME_SET, 150)
+        self.__control(pa, message.CTRL_VOLUME_SET, -5)
+        self.assertEqual(pa.controls, [("volume-set", 42), ("volume-set", 100),
+                                       ("volume-set", 0)])
+        
+        # feature only set for adapters which can set the volume
+        flags = pa._PlayerAdapter__info.flags
+        self.assertTrue(flags & FT_CTRL_VOLUME_SET)
+        flags = self.__pa._PlayerAdapter__info.flags
+        self.assertFalse(flags & FT_CTRL_VOLUME_SET)
+        
+    def __control(self, pa, id, param):
+        
+        bindata = struct.pack("!bi", serial.TYPE_I, param)
+        pa._PlayerAdapter__handle_message_control(id, bindata)
+        
+    def __delta_mask(self, msg):
+        """Get the field mask of a delta sync message."""
+        
+        type, mask = struct.unpack("!bh", msg[6:9])
+        self.assertEqual(type, serial.TYPE_N)
+        return mask
+        
+    def __item_msg(self, client):
+        
+        return self.__pa._PlayerAdapter__item_msg(client)
+        
+    def __sync_msg_delta(self, client, id, serializable):
+        
+        return self.__pa._PlayerAdapter__sync_msg_delta(client, id,
+                                                        serializable)
+        
+if __name__ == "__main__":
+    unittest.main()
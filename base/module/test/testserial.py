@@ -191,6 +191,14 @@ class SerializationTest(unittest.TestCase):
         #self.__serialize(il)
         serial.pack(il)
         
+        il = data.ItemList(1, path, nested, ids, names, 0, 1, 2, ias, las,
+                           pairs=True)
+        
+        self.assertEquals(len(il.get_fmt()), len(il.get_data()))
+        self.assertEquals(il.get_data()[4], [ "id1", "na1", "id2", "na2",
+                                              "id3", "na3" ])
+        serial.pack(il)
+        
         # ---------------------------------------------------------------------
         
         path = [ ]
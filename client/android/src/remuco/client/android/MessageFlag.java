@@ -44,5 +44,6 @@ public abstract class MessageFlag {
 	public static final int MLIB = 42;
 	public static final int FILES = 43;
 	public static final int SEARCH = 44;
+	public static final int ROWS_CHANGED = 45;
 	
 }
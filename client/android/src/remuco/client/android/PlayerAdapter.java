@@ -23,12 +23,12 @@ package remuco.client.android;
 import java.util.ArrayList;
 
 import remuco.client.android.util.ConnectTask;
-import remuco.client.common.MainLoop;
 import remuco.client.common.UserException;
 import remuco.client.common.data.ClientInfo;
 import remuco.client.common.data.Item;
 import remuco.client.common.io.Connection;
 import remuco.client.common.io.ISocket;
+import remuco.client.common.io.Reconnector;
 import remuco.client.common.io.Connection.IConnectionListener;
 import remuco.client.common.player.IItemListener;
 import remuco.client.common.player.IProgressListener;
@@ -42,6 +42,7 @@ public class PlayerAdapter implements IConnectionListener, IItemListener, IProgr
 
 	private static final int PING_INTERVAL = 5;
 	private static Player player;
+	private static Reconnector reconnector;
 	
 	ArrayList<Handler> handlers;
 	
@@ -62,7 +63,7 @@ public class PlayerAdapter implements IConnectionListener, IItemListener, IProgr
 	 */
 	public void connectWifi(String hostname, int port, ClientInfo clientInfo){
         if (player != null && !player.getConnection().isClosed()) return;
-		MainLoop.schedule(new ConnectTask(ConnectTask.WIFI, hostname, port, clientInfo, this));
+        connect(new ConnectTask(ConnectTask.WIFI, hostname, port, clientInfo, this), clientInfo);
 	}
 
 	/**
@@ -72,7 +73,19 @@ public class PlayerAdapter implements IConnectionListener, IItemListener, IProgr
 	 */
 	public void connectBluetooth(String hostname, ClientInfo clientInfo){
         if (player != null && !player.getConnection().isClosed()) return;
-		MainLoop.schedule(new ConnectTask(ConnectTask.BLUETOOTH, hostname, clientInfo, this));
+        connect(new ConnectTask(ConnectTask.BLUETOOTH, hostname, clientInfo, this), clientInfo);
+	}
+
+	/**
+	 * connects using the given task to create sockets, reconnects
+	 * automatically when the connection breaks
+	 */
+	private void connect(ConnectTask task, ClientInfo clientInfo){
+        if (reconnector != null) {
+            reconnector.stop();
+        }
+        reconnector = new Reconnector(task, this, 15, clientInfo);
+        reconnector.start();
 	}
 	
 	/**
@@ -81,7 +94,12 @@ public class PlayerAdapter implements IConnectionListener, IItemListener, IProgr
 	 */
 	public void disconnect(){
 		if(player!=null){
-			player.getConnection().close();
+			if (reconnector != null) {
+				reconnector.stop();
+				reconnector = null;
+			} else {
+				player.getConnection().close();
+			}
 			
 			// we get no disconnect signal if we close the connection ourself
 			notifyHandlers(MessageFlag.DISCONNECTED);
@@ -163,13 +181,13 @@ public class PlayerAdapter implements IConnectionListener, IItemListener, IProgr
 	@Override
 	public void notifyProgressChanged() {
 		Log.debug("[PA] new progress: " + player.progress.getProgressFormatted() + "/" + player.progress.getLengthFormatted());
-		notifyHandlers(MessageFlag.PROGRESS_CHANGED, player.progress);
+		notifyHandlers(MessageFlag.PROGRESS_CHANGED, player.progress.getChanged(), player.progressModel);
 	}
 
 	@Override
 	public void notifyStateChanged() {
 		Log.debug("[PA] state changed");
-		notifyHandlers(MessageFlag.STATE_CHANGED, player.state);
+		notifyHandlers(MessageFlag.STATE_CHANGED, player.state.getChanged(), player.state);
 	}
 
 	private void notifyHandlers(int what, Object obj){
@@ -179,6 +197,13 @@ public class PlayerAdapter implements IConnectionListener, IItemListener, IProgr
 		}
 	}
 	
+	private void notifyHandlers(int what, int arg, Object obj){
+		for(Handler h : handlers){
+			Message msg = h.obtainMessage(what, arg, 0, obj);
+			msg.sendToTarget();
+		}
+	}
+	
 	private void notifyHandlers(int what){
 		for(Handler h : handlers){
 			Message msg = h.obtainMessage(what);
@@ -42,6 +42,9 @@ import android.widget.TextView;
 
 public class Remuco extends RemucoActivity implements OnClickListener{
 	
+	/** Interval of progress syncs in seconds (progress gets extrapolated). */
+	private static final int PROGRESS_SYNC_INTERVAL = 30;
+	
 	// --- view handler
 	private ViewHandler viewHandler;
 	
@@ -81,7 +84,10 @@ public class Remuco extends RemucoActivity implements OnClickListener{
         // afaik every android (so far) has a touchscreen and is using unicode
         info.put("touch", "yes");
         info.put("utf8", "yes");
-        return new ClientInfo(imgSize, "PNG", 50, info);
+        ClientInfo ci = new ClientInfo(imgSize, "PNG", 50, info);
+        // progress gets extrapolated, occasional syncs are sufficient
+        ci.setProgressInterval(PROGRESS_SYNC_INTERVAL);
+        return ci;
 	}
 
 	// -----------------------------------------------------------------------------
@@ -125,7 +131,9 @@ public class Remuco extends RemucoActivity implements OnClickListener{
                         player.getPlayer() == null)
                         return;
                     int end = ctrlProgressBar.getProgress();
-                    player.getPlayer().ctrlSeek((end - start));
+                    if (end != start) {
+                        player.getPlayer().ctrlSeek(end > start ? 1 : -1);
+                    }
                 }
             });
 
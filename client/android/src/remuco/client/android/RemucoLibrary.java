@@ -40,7 +40,7 @@ import remuco.client.common.data.ActionParam;
 import remuco.client.common.data.ListAction;
 import remuco.client.common.data.ItemAction;
 import remuco.client.common.data.ItemList;
-import remuco.client.common.player.IRequester;
+import remuco.client.common.player.VirtualList;
 import remuco.client.common.util.Log;
 
 public abstract class RemucoLibrary extends RemucoActivity implements OnClickListener{
@@ -53,10 +53,12 @@ public abstract class RemucoLibrary extends RemucoActivity implements OnClickLis
 	Button nextButton;
     ListView lv;
     LibraryAdapter mArrayAdapter;
-    ItemList list;
 
-    int page = 0;
-    int pagemax = 0;
+    // all pages of the current list, requested on demand while scrolling
+    VirtualList list;
+
+    // maximum number of pages of the current list to keep in memory
+    private static final int RESIDENT_PAGES = 8;
 
 	// -----------------------------------------------------------------------------
 	// --- lifecycle methods
@@ -80,9 +82,7 @@ public abstract class RemucoLibrary extends RemucoActivity implements OnClickLis
 
 		// --- set listeners
 		prevButton.setOnClickListener(this);
-        prevButton.setClickable(false);
 		nextButton.setOnClickListener(this);
-        nextButton.setClickable(false);
     }
 	
 	private void getViewHandles() {
@@ -90,7 +90,7 @@ public abstract class RemucoLibrary extends RemucoActivity implements OnClickLis
 		prevButton = (Button) findViewById(R.id.library_prev_button);
 		nextButton = (Button) findViewById(R.id.library_next_button);
 	
-        mArrayAdapter = new LibraryAdapter(getApplicationContext(), R.layout.list_item);
+        mArrayAdapter = new LibraryAdapter(getApplicationContext());
         lv = (ListView) findViewById(R.id.library_items);
         lv.setTextFilterEnabled(true);
         lv.setAdapter(mArrayAdapter);
@@ -130,15 +130,16 @@ public abstract class RemucoLibrary extends RemucoActivity implements OnClickLis
             LibraryItem item = mArrayAdapter.getItem(info.position);
 
 			if (item.position == -1) return; // no ContextMenu en folder '..'
-            if (list.getActions().size() == 0) return;
+            if (item.list == null) return; // not yet received
+            if (item.list.getActions().size() == 0) return;
 
 			if (item.nested) {
-				menu.setHeaderTitle(list.getNested(item.position));
+				menu.setHeaderTitle(item.list.getNested(item.position));
 			} else {
-	            menu.setHeaderTitle(list.getItemName(item.position));
+	            menu.setHeaderTitle(item.list.getItemName(item.position));
 			}
-            for (int i = 0; i < list.getActions().size(); i++) {
-                AbstractAction act = (AbstractAction) list.getActions().elementAt(i);
+            for (int i = 0; i < item.list.getActions().size(); i++) {
+                AbstractAction act = (AbstractAction) item.list.getActions().elementAt(i);
 				if ( act.isItemAction() == item.nested ) 
 					continue;
                 menu.add(Menu.NONE, i, i, act.label);
@@ -150,8 +151,11 @@ public abstract class RemucoLibrary extends RemucoActivity implements OnClickLis
 	public boolean onContextItemSelected(MenuItem item) {
         AdapterView.AdapterContextMenuInfo info = (AdapterView.AdapterContextMenuInfo)item.getMenuInfo();
         LibraryItem libitem = mArrayAdapter.getItem(info.position);
+        ItemList list = libitem.list;
         int menuItemIndex = item.getItemId();
 
+        if (list == null) return false; // dropped meanwhile
+
         AbstractAction act = ((AbstractAction) list.getActions().elementAt(menuItemIndex));
 
 		if (libitem.nested) {
@@ -194,69 +198,53 @@ public abstract class RemucoLibrary extends RemucoActivity implements OnClickLis
     public abstract void sendAction(ActionParam action);
     public abstract void getList();
 
-    public void setList(ItemList l){
-        int i = 0;
-
-        list = l;
-        pagemax = list.getPageMax();
-        activateButtons();
-
-        if ((list.isMediaLib() ||
-             list.isFiles()) &&
-            !list.isRoot()) {
-            LibraryItem item = new LibraryItem();
-            item.nested = true;
-            item.position = -1;
-            item.label = "..";
-            mArrayAdapter.add(item);
-        }
-
-        for (int j = 0; j < list.getNumNested(); j++) {
-            LibraryItem item = new LibraryItem();
-            item.nested = true;
-            item.position = j;
-            item.label = list.getNested(j);
-            mArrayAdapter.add(item);
+    /**
+     * Show a list, its pages are requested while scrolling through it.
+     * 
+     * @param type
+     *            the list type (one of the <code>TYPE_...</code> constants in
+     *            {@link ItemList})
+     * @param path
+     *            the list's path or the search query
+     */
+    protected void showList(int type, String[] path){
+        if (list != null) {
+            list.cancel();
         }
+        list = new VirtualList(player.getPlayer(), type, path, RESIDENT_PAGES);
+        list.setListener(reqHandler);
+        mArrayAdapter.setList(list);
+    }
 
-        while (!ItemList.UNKNWON.equals(list.getItemName(i))) {
-            LibraryItem item = new LibraryItem();
-            item.nested = false;
-            item.position = i;
-            item.label = list.getItemName(i);
-            mArrayAdapter.add(item);
-            i++;
+    /**
+     * Called when rows of the current list have been received.
+     */
+    public void updateList(VirtualList l){
+        if (l == list) {
+            mArrayAdapter.refresh();
         }
     }
-	
-    public void clearList() {
-        mArrayAdapter.clear();
-    }
 
-    protected void activateButtons() {
-        if (page == 0) {
-            prevButton.setClickable(false);
-        } else {
-            prevButton.setClickable(true);
-        }
-        if (page + 1 > pagemax) {
-            nextButton.setClickable(false);
-        } else {
-            nextButton.setClickable(true);
+    public void clearList() {
+        if (list != null) {
+            list.cancel();
+            list = null;
         }
+        mArrayAdapter.clear();
     }
 
 	@Override
 	public void onClick(View v) {
-		
+
+		// scroll by a screen, rows get requested as needed
+		int visible = lv.getLastVisiblePosition() - lv.getFirstVisiblePosition();
+
 		if(v == prevButton){
-            page--;
-            this.getList();
+            lv.setSelection(Math.max(0, lv.getFirstVisiblePosition() - visible));
 		}
 
 		if(v == nextButton){
-            page++;
-            this.getList();
+            lv.setSelection(lv.getLastVisiblePosition());
 		}
 	}
 }
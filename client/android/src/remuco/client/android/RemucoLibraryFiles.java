@@ -54,9 +54,9 @@ public class RemucoLibraryFiles extends RemucoLibrary implements OnClickListener
                     LibraryItem i = mArrayAdapter.getItem(position);
                     if (!i.nested) return;
                     if (i.position == -1) {
-                        path = list.getPathForParent();
+                        path = i.list.getPathForParent();
                     } else {
-                        path = list.getPathForNested(i.position);
+                        path = i.list.getPathForNested(i.position);
                     }
                     RemucoLibraryFiles.this.getList();
                 }
@@ -72,14 +72,6 @@ public class RemucoLibraryFiles extends RemucoLibrary implements OnClickListener
 
 		Log.debug("--- " + this.getClass().getName() + ".getFiles()");
 
-        mArrayAdapter.clear();
-        player.getPlayer().reqFiles(reqHandler, path, page);
-    }
-
-    @Override
-    public void setList(ItemList l){
-        super.setList(l);
-
-        path = l.getPath();
+        showList(ItemList.TYPE_FILES, path);
     }
 }
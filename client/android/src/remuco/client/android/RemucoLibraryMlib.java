@@ -54,9 +54,9 @@ public class RemucoLibraryMlib extends RemucoLibrary implements OnClickListener{
                     LibraryItem i = mArrayAdapter.getItem(position);
                     if (!i.nested) return;
                     if (i.position == -1) {
-                        path = list.getPathForParent();
+                        path = i.list.getPathForParent();
                     } else {
-                        path = list.getPathForNested(i.position);
+                        path = i.list.getPathForNested(i.position);
                     }
                     RemucoLibraryMlib.this.getList();
                 }
@@ -72,14 +72,6 @@ public class RemucoLibraryMlib extends RemucoLibrary implements OnClickListener{
 
 		Log.debug("--- " + this.getClass().getName() + ".getMLib()");
 
-        mArrayAdapter.clear();
-        player.getPlayer().reqMLib(reqHandler, path, page);
-    }
-
-    @Override
-    public void setList(ItemList l){
-        super.setList(l);
-
-        path = l.getPath();
+        showList(ItemList.TYPE_MLIB, path);
     }
 }
@@ -25,6 +25,7 @@ import android.view.View;
 import android.view.View.OnClickListener;
 
 import remuco.client.common.data.ActionParam;
+import remuco.client.common.data.ItemList;
 import remuco.client.common.util.Log;
 
 public class RemucoLibraryPlaylist extends RemucoLibrary implements OnClickListener{
@@ -41,8 +42,7 @@ public class RemucoLibraryPlaylist extends RemucoLibrary implements OnClickListe
 
 		Log.debug("--- " + this.getClass().getName() + ".getPlaylist()");
 
-        mArrayAdapter.clear();
-        player.getPlayer().reqPlaylist(reqHandler, page);
+        showList(ItemList.TYPE_PLAYLIST, null);
     }
 
 }
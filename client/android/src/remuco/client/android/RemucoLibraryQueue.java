@@ -25,6 +25,7 @@ import android.view.View;
 import android.view.View.OnClickListener;
 
 import remuco.client.common.data.ActionParam;
+import remuco.client.common.data.ItemList;
 import remuco.client.common.util.Log;
 
 public class RemucoLibraryQueue extends RemucoLibrary implements OnClickListener{
@@ -41,8 +42,7 @@ public class RemucoLibraryQueue extends RemucoLibrary implements OnClickListener
 
 		Log.debug("--- " + this.getClass().getName() + ".geQueue()");
 
-        mArrayAdapter.clear();
-        player.getPlayer().reqQueue(reqHandler, page);
+        showList(ItemList.TYPE_QUEUE, null);
     }
 
 }
@@ -26,6 +26,7 @@ import android.view.View.OnClickListener;
 
 import remuco.client.android.dialogs.SearchDialog;
 import remuco.client.common.data.ActionParam;
+import remuco.client.common.data.ItemList;
 import remuco.client.common.util.Log;
 
 public class RemucoLibrarySearch extends RemucoLibrary implements OnClickListener{
@@ -59,8 +60,7 @@ public class RemucoLibrarySearch extends RemucoLibrary implements OnClickListene
 
 		Log.debug("--- " + this.getClass().getName() + ".getSearch()");
 
-        mArrayAdapter.clear();
-        player.getPlayer().reqSearch(reqHandler, query, page);
+        showList(ItemList.TYPE_SEARCH, query);
     }
 
 }
@@ -22,14 +22,11 @@ package remuco.client.android;
 
 import android.os.Handler;
 import android.os.Message;
-import android.widget.ArrayAdapter;
 
-import remuco.client.common.data.Item;
-import remuco.client.common.data.ItemList;
-import remuco.client.common.player.IRequester;
+import remuco.client.common.player.VirtualList;
 import remuco.client.common.util.Log;
 
-public class RequesterAdapter extends Handler implements IRequester{
+public class RequesterAdapter extends Handler implements VirtualList.IListener{
 
     RemucoLibrary remucolibrary;
 
@@ -49,47 +46,15 @@ public class RequesterAdapter extends Handler implements IRequester{
 			Log.ln("[VH] DISCONNECTED!");
             remucolibrary.clearList();
             break;
-        case MessageFlag.PLAYLIST:
-        case MessageFlag.QUEUE:
-        case MessageFlag.MLIB:
-        case MessageFlag.FILES:
-        case MessageFlag.SEARCH:
-            remucolibrary.setList((ItemList) msg.obj);
+        case MessageFlag.ROWS_CHANGED:
+            remucolibrary.updateList((VirtualList) msg.obj);
             break;
         }
     }
 
     @Override
-	public void handleFiles(ItemList files){
-        Message msg = this.obtainMessage(MessageFlag.FILES, files);
-        msg.sendToTarget();
-    }
-
-    @Override
-	public void handleItem(Item item){
-    }
-
-    @Override
-	public void handleLibrary(ItemList library){
-        Message msg = this.obtainMessage(MessageFlag.MLIB, library);
-        msg.sendToTarget();
-    }
-
-    @Override
-	public void handlePlaylist(ItemList playlist){
-        Message msg = this.obtainMessage(MessageFlag.PLAYLIST, playlist);
-        msg.sendToTarget();
-    }
-
-    @Override
-	public void handleQueue(ItemList queue){
-        Message msg = this.obtainMessage(MessageFlag.QUEUE, queue);
-        msg.sendToTarget();
-    }
-	
-    @Override
-	public void handleSearch(ItemList search){
-        Message msg = this.obtainMessage(MessageFlag.SEARCH, search);
+	public void notifyRowsChanged(VirtualList list){
+        Message msg = this.obtainMessage(MessageFlag.ROWS_CHANGED, list);
         msg.sendToTarget();
     }
 
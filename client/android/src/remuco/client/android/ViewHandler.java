@@ -23,9 +23,9 @@ package remuco.client.android;
 
 import remuco.client.common.data.Item;
 import remuco.client.common.data.PlayerInfo;
-import remuco.client.common.data.Progress;
 import remuco.client.common.data.State;
 import remuco.client.common.player.Player;
+import remuco.client.common.player.ProgressModel;
 import remuco.client.common.util.Log;
 import android.graphics.BitmapFactory;
 import android.os.Handler;
@@ -34,7 +34,9 @@ import android.widget.Toast;
 
 public class ViewHandler extends Handler {
 
-	int tick;
+	ProgressModel progressModel;
+	
+	final Ticker ticker = new Ticker();
 	
 	byte[] imageCache;
 	
@@ -45,15 +47,15 @@ public class ViewHandler extends Handler {
 	
 	public ViewHandler(Remuco remuco) {
 		this.remuco = remuco;
-		this.postDelayed(new Ticker(), 1000);
 	}
 
     public void setRunning(boolean r) {
         updateItemGui(remuco.getPlayer().getPlayer().item);
-        updateProgressGui(remuco.getPlayer().getPlayer().progress);
-        updateStateGui(remuco.getPlayer().getPlayer().state);
+        updateProgressGui(remuco.getPlayer().getPlayer().progressModel);
+        updateStateGui(remuco.getPlayer().getPlayer().state, State.CHANGED_ALL);
 
         running = r;
+        startTicker();
     }
 
 	@Override
@@ -122,6 +124,7 @@ public class ViewHandler extends Handler {
 			
 			// not running anymore
 			running = false;
+			removeCallbacks(ticker);
 			
 			break;
 			
@@ -146,8 +149,8 @@ public class ViewHandler extends Handler {
 			
 			Log.ln("[VH] progress changed");
 			
-			// msg.obj should be of type Progress
-			Progress progress = (Progress)msg.obj;
+			// msg.obj should be of type ProgressModel
+			ProgressModel progress = (ProgressModel)msg.obj;
 			updateProgressGui(progress);
 			
 			break;
@@ -164,15 +167,7 @@ public class ViewHandler extends Handler {
 			// don't update if the player is not running
 //			if(player == null || player.state.getPlayback() != State.PLAYBACK_PLAY) break;
 			
-			tick++;
-			
-			remuco.ctrlProgressBar.setProgress(tick);
-			
-			remuco.ctrlProgress.setText(
-					String.format("%02d:%02d", 
-							tick/60,
-							tick%60)
-					);
+			showProgress();
 			
 			break;
 			
@@ -181,10 +176,10 @@ public class ViewHandler extends Handler {
 			
 			Log.ln("[VH] state changed");
 			
-			// msg.obj should be of type State
+			// msg.obj should be of type State, msg.arg1 tells what changed
 			State state = (State)msg.obj;
 
-            updateStateGui(state);
+            updateStateGui(state, msg.arg1);
 			
 			break;
 			
@@ -230,32 +225,65 @@ public class ViewHandler extends Handler {
         remuco.infoRatingBar.setProgress(item.getRating());
     }
 
-    private void updateProgressGui(Progress progress) {
+    private void updateProgressGui(ProgressModel progress) {
         // set progress
-        // the actual progress is set every second in the ticker runnable
+        // the actual progress is extrapolated by the model and set by the ticker
+        progressModel = progress;
         remuco.ctrlProgressBar.setMax(progress.getLength());
         remuco.ctrlLength.setText(String.format("%02d:%02d", 
 					progress.getLength()/60,
 					progress.getLength()%60));
 			
-        // set tick
-        tick = progress.getProgress();
+        showProgress();
+        startTicker();
     }	
 
-    private void updateStateGui(State state) {
+    private void showProgress() {
+        if (progressModel == null) return;
+
+        int progress = Math.max(0, progressModel.getProgress());
+
+        remuco.ctrlProgress.setText(String.format("%02d:%02d", 
+					progress/60,
+					progress%60));
+        remuco.ctrlProgressBar.setProgress(progress);
+    }
+
+    /**
+     * (re)start the ticker, it fires exactly when the extrapolated progress
+     * changes and stops while not playing
+     */
+    private void startTicker() {
+        removeCallbacks(ticker);
+        if (!running || progressModel == null) return;
+
+        long delay = progressModel.getMillisToNextChange();
+        if (delay >= 0) {
+            postDelayed(ticker, delay);
+        }
+    }
+
+    private void updateStateGui(State state, int changed) {
 			// toggle playbutton icon
-			if(state.getPlayback() == State.PLAYBACK_PLAY){
+			if((changed & State.CHANGED_PLAYBACK) == 0){
+				// unchanged
+			} else if(state.getPlayback() == State.PLAYBACK_PLAY){
 				Log.debug("[VH] playback = true");
 				remuco.ctrlPlay.setImageResource(R.drawable.button_pause);
 				running = true;
+				startTicker();
 			} else {
 				Log.debug("[VH] playback = false");
 				remuco.ctrlPlay.setImageResource(R.drawable.button_play);
 				running = false;
+				removeCallbacks(ticker);
+				showProgress();
 			}
 			
 			// toggle shuffle icon
-			if(state.isShuffle()){
+			if((changed & State.CHANGED_SHUFFLE) == 0){
+				// unchanged
+			} else if(state.isShuffle()){
 				Log.debug("[VH] shuffle = true");
 				remuco.ctrlShuffle.setImageResource(R.drawable.button_shuffle);
 			} else {
@@ -264,7 +292,9 @@ public class ViewHandler extends Handler {
 			}
 			
 			// toggle repeat icon
-			if(state.isRepeat()){
+			if((changed & State.CHANGED_REPEAT) == 0){
+				// unchanged
+			} else if(state.isRepeat()){
 				Log.debug("[VH] repeat = true");
 				remuco.ctrlRepeat.setImageResource(R.drawable.button_repeat);
 			} else {
@@ -284,21 +314,12 @@ public class ViewHandler extends Handler {
 		@Override
 		public void run() {
 			if(running){
-				
-				// increase tick time
-				tick++;
-				
-				// set progress text
-				remuco.ctrlProgress.setText(String.format("%02d:%02d", 
-							tick/60,
-							tick%60));
-				
-				// set progress bar
-				remuco.ctrlProgressBar.setProgress(tick);
+				// show extrapolated progress
+				showProgress();
 			}
 			
-			// repost us
-			postDelayed(this, 1000);
+			// repost us when the progress changes next time
+			startTicker();
 		}
 	}
 
@@ -67,10 +67,32 @@ public class VolumeDialog extends Dialog {
             volumeBar.setProgress(player.getPlayer().state.getVolume());
 		}
 
+		volumeBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+			@Override
+			public void onProgressChanged(SeekBar seekBar, int progress,
+					boolean fromUser) {
+				if (fromUser) {
+					resetDismissTimeout();
+				}
+			}
+			@Override
+			public void onStartTrackingTouch(SeekBar seekBar) {
+				resetDismissTimeout();
+			}
+			@Override
+			public void onStopTrackingTouch(SeekBar seekBar) {
+				if (player.getPlayer() == null) return;
+				// only the final value of a drag gets sent
+				player.getPlayer().ctrlVolumeSet(seekBar.getProgress());
+				resetDismissTimeout();
+			}
+		});
+
 		player.addHandler(new Handler(){
 			@Override
 			public void handleMessage(Message msg) {
-				if(msg.what == MessageFlag.STATE_CHANGED){
+				if(msg.what == MessageFlag.STATE_CHANGED &&
+						(msg.arg1 & State.CHANGED_VOLUME) != 0){
 					State state = (State)msg.obj;
 					volumeBar.setProgress(state.getVolume());
 				}
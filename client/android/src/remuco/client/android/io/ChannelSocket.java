@@ -0,0 +1,310 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.android.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+
+import remuco.client.common.UserException;
+import remuco.client.common.io.Connection;
+import remuco.client.common.io.ISocket;
+
+/**
+ * TCP socket based on a non-blocking {@link SocketChannel} to be used as an
+ * {@link ISocket} by a {@link Connection} object.
+ * <p>
+ * Data is transferred through direct {@link ByteBuffer}s. Reading and writing
+ * wait for channel readiness using selectors, so the streams provided by this
+ * socket behave like blocking streams towards a {@link Connection} and may be
+ * interrupted at any time by {@link #close()}.
+ */
+public class ChannelSocket implements ISocket {
+
+	/** Input stream reading from the channel through a direct buffer. */
+	private class ChannelInputStream extends InputStream {
+
+		@Override
+		public int available() throws IOException {
+			return rxBuf.remaining();
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			if (!fill()) {
+				return -1;
+			}
+			return rxBuf.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+
+			len = Math.min(len, rxBuf.remaining());
+			rxBuf.get(b, off, len);
+
+			return len;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+
+			if (n <= 0 || !fill()) {
+				return 0;
+			}
+
+			final int len = (int) Math.min(n, rxBuf.remaining());
+			rxBuf.position(rxBuf.position() + len);
+
+			return len;
+		}
+
+		/**
+		 * Makes sure there is data in the receive buffer, waits for the
+		 * channel to become readable if needed.
+		 * 
+		 * @return <code>false</code> if the other side closed the connection
+		 */
+		private boolean fill() throws IOException {
+
+			if (rxBuf.hasRemaining()) {
+				return true;
+			}
+
+			rxBuf.clear();
+
+			try {
+				while (true) {
+					if (closed) {
+						throw new IOException("socket closed");
+					}
+					final int n = channel.read(rxBuf);
+					if (n > 0) {
+						break;
+					}
+					if (n < 0) {
+						rxBuf.flip();
+						return false;
+					}
+					rxSelector.select();
+					rxSelector.selectedKeys().clear();
+				}
+			} catch (ClosedSelectorException e) {
+				throw new IOException("socket closed");
+			}
+
+			rxBuf.flip();
+
+			return true;
+		}
+
+	}
+
+	/** Output stream writing to the channel through a direct buffer. */
+	private class ChannelOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			while (len > 0) {
+
+				final int n = Math.min(len, txBuf.capacity());
+
+				txBuf.clear();
+				txBuf.put(b, off, n);
+				txBuf.flip();
+
+				drain();
+
+				off += n;
+				len -= n;
+			}
+		}
+
+		/**
+		 * Writes the content of the send buffer to the channel, waits for the
+		 * channel to become writable if needed.
+		 */
+		private void drain() throws IOException {
+
+			try {
+				while (txBuf.hasRemaining()) {
+					if (closed) {
+						throw new IOException("socket closed");
+					}
+					if (channel.write(txBuf) == 0) {
+						txSelector.select();
+						txSelector.selectedKeys().clear();
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				throw new IOException("socket closed");
+			}
+		}
+
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final SocketChannel channel;
+
+	private volatile boolean closed = false;
+
+	private final InputStream is;
+
+	private final OutputStream os;
+
+	private final ByteBuffer rxBuf, txBuf;
+
+	private final Selector rxSelector, txSelector;
+
+	/**
+	 * Create a new TCP client socket for the given host and port.
+	 * 
+	 * @param host
+	 *            host name or IP address
+	 * @param port
+	 *            port number
+	 * @param noDelay
+	 *            if to disable Nagle's algorithm (<code>TCP_NODELAY</code>)
+	 * @param keepAlive
+	 *            if to enable TCP keep-alive packets
+	 * @throws UserException
+	 *             if setting up the socket and connection fails
+	 */
+	public ChannelSocket(String host, int port, boolean noDelay,
+			boolean keepAlive) throws UserException {
+
+		try {
+			channel = SocketChannel.open();
+		} catch (IOException e) {
+			throw new UserException("Connection Error",
+					"IO error while setting up the connection");
+		}
+
+		try {
+			channel.socket().setTcpNoDelay(noDelay);
+			channel.socket().setKeepAlive(keepAlive);
+			channel.connect(new InetSocketAddress(host, port));
+			channel.configureBlocking(false);
+			rxSelector = Selector.open();
+			txSelector = Selector.open();
+			channel.register(rxSelector, SelectionKey.OP_READ);
+			channel.register(txSelector, SelectionKey.OP_WRITE);
+		} catch (UnresolvedAddressException e) {
+			closeQuietly();
+			throw new UserException("Connection Error",
+					"Given host name is unknown.");
+		} catch (UnknownHostException e) {
+			closeQuietly();
+			throw new UserException("Connection Error",
+					"Given host name is unknown.");
+		} catch (SecurityException e) {
+			closeQuietly();
+			throw new UserException("Connection Error",
+					"Not allowed to connect.");
+		} catch (IOException e) {
+			closeQuietly();
+			throw new UserException("Connection Error",
+					"IO error while setting up the connection");
+		}
+
+		rxBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		rxBuf.flip(); // initially empty
+		txBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		is = new ChannelInputStream();
+		os = new ChannelOutputStream();
+	}
+
+	@Override
+	public void close() {
+
+		closed = true;
+
+		if (rxSelector != null) {
+			rxSelector.wakeup();
+		}
+		if (txSelector != null) {
+			txSelector.wakeup();
+		}
+
+		closeQuietly();
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return is;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return os;
+	}
+
+	@Override
+	public String toString() {
+		return "ChannelSocket(" + channel.socket().getInetAddress() + ":"
+				+ channel.socket().getPort() + ")";
+	}
+
+	private void closeQuietly() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+		try {
+			if (rxSelector != null) {
+				rxSelector.close();
+			}
+		} catch (IOException e) {
+		}
+		try {
+			if (txSelector != null) {
+				txSelector.close();
+			}
+		} catch (IOException e) {
+		}
+	}
+
+}
@@ -22,16 +22,17 @@ package remuco.client.android.util;
 
 import java.util.TimerTask;
 
-import remuco.client.android.io.WifiSocket;
+import remuco.client.android.io.ChannelSocket;
 import remuco.client.android.io.BluetoothSocket;
 import remuco.client.common.UserException;
 import remuco.client.common.data.ClientInfo;
 import remuco.client.common.io.Connection;
 import remuco.client.common.io.Connection.IConnectionListener;
 import remuco.client.common.io.ISocket;
+import remuco.client.common.io.Reconnector.ISocketFactory;
 import remuco.client.common.util.Log;
 
-public class ConnectTask extends TimerTask {
+public class ConnectTask extends TimerTask implements ISocketFactory {
 
     public final static int WIFI = 0;
     public final static int BLUETOOTH = 1;
@@ -59,28 +60,45 @@ public class ConnectTask extends TimerTask {
 
 	@Override
 	public void run() {
-		Log.ln("[CT] trying to connect " + type + " to " + hostname + " " + port);
         ISocket s = null;
 
+        try {
+            s = createSocket();
+        } catch (UserException e) {
+            // tell the view that we have no connection
+            connectionListener.notifyDisconnected(s, e);
+            return;
+        }
+
+		/* 
+		 * Given the socket and the client info, we can set up a connection. A
+		 * connection cares about exchanging initial messages between client and
+		 * server. If a connections has been established it provides a Player
+		 * class which can be used to interact with the remote player. A
+		 * connection automatically creates it's own thread, so this call
+		 * returns immediately.
+		 */
+		new Connection(s, connectionListener, 15, clientInfo);
+	}
+
+	@Override
+	public ISocket createSocket() throws UserException {
+		Log.ln("[CT] trying to connect " + type + " to " + hostname + " " + port);
+
         if (type == WIFI) {
             /*
-             * Create a socket (note that WifiSocket is a wrapper around java.net.Socket
-             * which implements ISocket - this is because we need a uniform socket
+             * Create a socket (note that ChannelSocket is a wrapper around a
+             * java.nio.channels.SocketChannel which implements ISocket - this is because we need a uniform socket
              * interface for JavaME and Android clients). The socket parameters are
              * for connecting to localhost from an emulated Android device. The
              * socket creation should be done in an extra thread (e.g. using the
              * MainLoop) to not block the UI.
              */
-		
             try {
-                s = new WifiSocket(hostname, port);
+                return new ChannelSocket(hostname, port, true, true);
             } catch (UserException e) {
                 Log.ln("[CT] Wifi socket creation failed: ", e);
-			
-                // tell the view that we have no connection
-                connectionListener.notifyDisconnected(s, e);
-			
-                return;
+                throw e;
             }
         }
 
@@ -93,30 +111,15 @@ public class ConnectTask extends TimerTask {
              * socket creation should be done in an extra thread (e.g. using the
              * MainLoop) to not block the UI.
              */
-		
             try {
-                s = new BluetoothSocket(hostname);
+                return new BluetoothSocket(hostname);
             } catch (UserException e) {
                 Log.ln("[CT] Bluetooth socket creation failed: ", e);
-			
-                // tell the view that we have no connection
-                connectionListener.notifyDisconnected(s, e);
-			
-                return;
+                throw e;
             }
         }
 
-        if (s == null) return;
-		
-		/* 
-		 * Given the socket and the client info, we can set up a connection. A
-		 * connection cares about exchanging initial messages between client and
-		 * server. If a connections has been established it provides a Player
-		 * class which can be used to interact with the remote player. A
-		 * connection automatically creates it's own thread, so this call
-		 * returns immediately.
-		 */
-		new Connection(s, connectionListener, 15, clientInfo);
+        throw new UserException("Connection Error", "Unknown connection type.");
 	}
 	
 
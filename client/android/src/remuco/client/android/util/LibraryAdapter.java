@@ -24,35 +24,133 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import remuco.client.android.R;
+import remuco.client.common.data.ItemList;
+import remuco.client.common.player.VirtualList;
 
-public class LibraryAdapter extends ArrayAdapter<LibraryItem> {
+/**
+ * Adapter showing the rows of a {@link VirtualList}. Rows not yet received
+ * are shown as placeholders and get requested by the list when shown.
+ * <p>
+ * The list's row count changes in the main loop thread, so the adapter uses a
+ * snapshot of it taken in the UI thread by {@link #refresh()} - otherwise the
+ * ListView could see a changed count without a data set change notification.
+ */
+public class LibraryAdapter extends BaseAdapter {
+
+    private static final String PLACEHOLDER = "\u2026";
+
+    private final Context context;
+
+    private VirtualList list;
+
+    /** Snapshot of the number of rows (including the parent row). */
+    private int count = 0;
 
-    public LibraryAdapter(Context context, int textViewResourceId) {
-        super(context, textViewResourceId);
+    /** Snapshot of {@link #hasParentRow()}. */
+    private boolean parentRow = false;
+
+    public LibraryAdapter(Context context) {
+        this.context = context;
+    }
+
+    public void setList(VirtualList list) {
+        this.list = list;
+        refresh();
+    }
+
+    /**
+     * Take a snapshot of the list's rows and notify the change. Must be
+     * called in the UI thread whenever the list's rows have changed.
+     */
+    public void refresh() {
+        if (list == null) {
+            count = 0;
+            parentRow = false;
+        } else {
+            parentRow = hasParentRow();
+            count = list.getNumRows() + (parentRow ? 1 : 0);
+        }
+        notifyDataSetChanged();
+    }
+
+    public void clear() {
+        setList(null);
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public LibraryItem getItem(int position) {
+
+        LibraryItem item = new LibraryItem();
+
+        if (parentRow) {
+            if (position == 0) {
+                item.nested = true;
+                item.position = -1;
+                item.label = "..";
+                item.list = list.getFirstPage();
+                return item;
+            }
+            position--;
+        }
+
+        ItemList page = list.getPage(position);
+        if (page == null) {
+            item.label = PLACEHOLDER;
+            return item;
+        }
+
+        int index = list.getIndex(position);
+
+        item.list = page;
+        if (index < page.getNumNested()) {
+            item.nested = true;
+            item.position = index;
+            item.label = page.getNested(index);
+        } else {
+            item.nested = false;
+            item.position = index - page.getNumNested();
+            item.label = page.getItemName(item.position);
+        }
+        return item;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         View v = convertView;
         if (v == null) {
-            LayoutInflater vi = (LayoutInflater) getContext().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+            LayoutInflater vi = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             v = vi.inflate(R.layout.list_item, null);
         }
         LibraryItem i = this.getItem(position);
-        if (i != null) {
-            ImageView image = (ImageView) v.findViewById(R.id.library_list_icon);
-            if (i.nested)
-                image.setVisibility(View.VISIBLE);
-            else
-                image.setVisibility(View.GONE);
-            TextView t = (TextView) v.findViewById(R.id.library_list_text);
-            t.setText(i.label);
-        }
+        ImageView image = (ImageView) v.findViewById(R.id.library_list_icon);
+        if (i.nested)
+            image.setVisibility(View.VISIBLE);
+        else
+            image.setVisibility(View.GONE);
+        TextView t = (TextView) v.findViewById(R.id.library_list_text);
+        t.setText(i.label);
         return v;
     }
+
+    /** Media library and file lists below the root get a row for the parent. */
+    private boolean hasParentRow() {
+        ItemList first = list.getFirstPage();
+        return first != null && (first.isMediaLib() || first.isFiles()) &&
+            !first.isRoot();
+    }
 }
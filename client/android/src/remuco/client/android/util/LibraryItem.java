@@ -20,8 +20,13 @@
  */
 package remuco.client.android.util;
 
+import remuco.client.common.data.ItemList;
+
 public class LibraryItem {
     public boolean nested = false;
+    /** index of the nested list or item within {@link #list} */
     public int position = 0;
     public String label = "";
+    /** page containing the row, <code>null</code> if not yet received */
+    public ItemList list = null;
 }
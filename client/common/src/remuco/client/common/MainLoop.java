@@ -37,6 +37,19 @@ import remuco.client.common.util.Log;
  * <li>synchronizing access to objects where critical race conditions may occur.
  * </ul>
  * <p>
+ * Tasks run in one of several lanes, each lane served by its own thread, so
+ * that blocking tasks in one lane (e.g. creating a socket) do not delay tasks
+ * in other lanes (e.g. handling received messages):
+ * <ul>
+ * <li>{@link #LANE_DISPATCH} - event handling and anything which needs to be
+ * serialized with event handling (default lane),
+ * <li>{@link #LANE_IO} - tasks which may block on I/O, like setting up
+ * connections,
+ * <li>{@link #LANE_PERIODIC} - periodic housekeeping, like pings and watchdogs.
+ * </ul>
+ * Lanes are provided by an {@link IScheduler}, which may be set when enabling
+ * the main loop. The default scheduler uses one {@link Timer} per lane.
+ * <p>
  * <em>Note:</em> The methods {@link #enable()} and {@link #disable()} should
  * get called only from the application's entry and exit points to prevent race
  * conditions and to ensure other methods (<em>schedule...</em>) are not called
@@ -47,6 +60,39 @@ import remuco.client.common.util.Log;
  */
 public class MainLoop {
 
+	/**
+	 * Runs tasks of the main loop's lanes. Tasks of one lane must run
+	 * sequentially, i.e. a lane behaves like a single thread.
+	 */
+	public interface IScheduler {
+
+		/**
+		 * Schedule a task in a lane. See {@link Timer#schedule(TimerTask, long)}.
+		 * 
+		 * @param lane
+		 *            one of the <code>LANE_...</code> constants in
+		 *            {@link MainLoop}
+		 */
+		public void schedule(int lane, TimerTask task, long delay);
+
+		/**
+		 * Schedule a repetitive task in a lane. See
+		 * {@link Timer#schedule(TimerTask, long, long)}.
+		 * 
+		 * @param lane
+		 *            one of the <code>LANE_...</code> constants in
+		 *            {@link MainLoop}
+		 */
+		public void schedule(int lane, TimerTask task, long delay, long period);
+
+		/**
+		 * Stop all lanes. Scheduled tasks will not run anymore and the
+		 * scheduler will not be used again.
+		 */
+		public void shutdown();
+
+	}
+
 	/** Timer task to periodically log that the main loop is alive. */
 	private static class AliveLogger extends TimerTask {
 
@@ -56,18 +102,104 @@ public class MainLoop {
 			final long now = System.currentTimeMillis();
 			final long seconds = (now - startTime) / 1000;
 			Log.ln("main loop alive (" + seconds + ")");
+			for (int i = 0; i < LANES; i++) {
+				Log.ln("main loop lane " + i + ": depth " + getQueueDepth(i)
+						+ ", tasks " + getTaskCount(i) + ", latency avg "
+						+ getLatencyAvg(i) + "ms, max " + getLatencyMax(i)
+						+ "ms");
+			}
+		}
+
+	}
+
+	/**
+	 * Runs right before a task scheduled to run as soon as possible, for queue
+	 * depth and latency statistics. The task itself gets scheduled as is, so
+	 * that cancelling it works as usual.
+	 */
+	private static class Probe extends TimerTask {
+
+		private final int lane;
+
+		private final long queued = System.currentTimeMillis();
+
+		public Probe(int lane) {
+			this.lane = lane;
+		}
+
+		public void run() {
+
+			final long latency = System.currentTimeMillis() - queued;
+
+			synchronized (MainLoop.class) {
+				depth[lane]--;
+				tasks[lane]++;
+				latencySum[lane] += latency;
+				if (latency > latencyMax[lane]) {
+					latencyMax[lane] = latency;
+				}
+			}
+		}
+
+	}
+
+	/** Default scheduler, uses one {@link Timer} per lane. */
+	private static class TimerScheduler implements IScheduler {
+
+		private final Timer timers[] = new Timer[LANES];
+
+		public TimerScheduler() {
+			for (int i = 0; i < timers.length; i++) {
+				timers[i] = new Timer();
+			}
+		}
+
+		public void schedule(int lane, TimerTask task, long delay) {
+			timers[lane].schedule(task, delay);
+		}
+
+		public void schedule(int lane, TimerTask task, long delay, long period) {
+			timers[lane].schedule(task, delay, period);
+		}
+
+		public void shutdown() {
+			for (int i = 0; i < timers.length; i++) {
+				timers[i].cancel();
+			}
 		}
 
 	}
 
-	private static Timer timer;
+	/** Lane for event handling (default lane). */
+	public static final int LANE_DISPATCH = 0;
+
+	/** Lane for tasks which may block on I/O. */
+	public static final int LANE_IO = 1;
+
+	/** Lane for periodic housekeeping tasks. */
+	public static final int LANE_PERIODIC = 2;
+
+	/** Number of lanes. */
+	public static final int LANES = 3;
+
+	/** Number of tasks per lane scheduled to run immediately but not run yet. */
+	private static final int depth[] = new int[LANES];
+
+	private static final long latencyMax[] = new long[LANES];
+
+	private static final long latencySum[] = new long[LANES];
+
+	private static IScheduler scheduler;
+
+	/** Number of tasks per lane run via {@link #schedule(int, TimerTask)}. */
+	private static final long tasks[] = new long[LANES];
 
 	/** Disable the main loop. Does nothing if the loop is already disabled. */
 	public static void disable() {
 
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
 		}
 
 	}
@@ -75,33 +207,121 @@ public class MainLoop {
 	/** Enable the main loop. Does nothing if the loop is already enabled. */
 	public static void enable() {
 
-		if (timer == null) {
-			timer = new Timer();
-			timer.schedule(new AliveLogger(), 60000, 60000);
+		enable(null);
+	}
+
+	/**
+	 * Enable the main loop using a specific scheduler. Does nothing if the loop
+	 * is already enabled.
+	 * 
+	 * @param s
+	 *            the scheduler to run tasks with (if <code>null</code>, the
+	 *            default {@link Timer} based scheduler is used)
+	 */
+	public static void enable(IScheduler s) {
+
+		if (scheduler == null) {
+			scheduler = s != null ? s : new TimerScheduler();
+			synchronized (MainLoop.class) {
+				for (int i = 0; i < LANES; i++) {
+					depth[i] = 0;
+					tasks[i] = 0;
+					latencySum[i] = 0;
+					latencyMax[i] = 0;
+				}
+			}
+			scheduler.schedule(LANE_PERIODIC, new AliveLogger(), 60000, 60000);
 		}
 	}
 
-	/** See {@link Timer#schedule(TimerTask, long)} with 10ms delay. */
-	public static void schedule(TimerTask task) {
-		if (timer == null) return;
+	/**
+	 * Get the average time in milliseconds tasks scheduled via
+	 * {@link #schedule(int, TimerTask)} had to wait until they were run.
+	 */
+	public static synchronized long getLatencyAvg(int lane) {
+		return tasks[lane] > 0 ? latencySum[lane] / tasks[lane] : 0;
+	}
 
-		timer.schedule(task, 10);
+	/**
+	 * Get the maximum time in milliseconds tasks scheduled via
+	 * {@link #schedule(int, TimerTask)} had to wait until they were run.
+	 */
+	public static synchronized long getLatencyMax(int lane) {
+		return latencyMax[lane];
 	}
 
-	/** See {@link Timer#schedule(TimerTask, long)}. */
-	public static void schedule(TimerTask task, long delay) {
-		if (timer == null) return;
+	/**
+	 * Get the number of tasks scheduled via {@link #schedule(int, TimerTask)}
+	 * which are waiting to get run.
+	 */
+	public static synchronized int getQueueDepth(int lane) {
+		return depth[lane];
+	}
 
-		timer.schedule(task, delay);
+	/**
+	 * Get the number of tasks scheduled via {@link #schedule(int, TimerTask)}
+	 * which have been run (or would have been run if they had not been
+	 * cancelled).
+	 */
+	public static synchronized long getTaskCount(int lane) {
+		return tasks[lane];
+	}
 
+	/**
+	 * Run a task as soon as possible in a lane. The task may get cancelled
+	 * like any other scheduled task.
+	 * 
+	 * @param lane
+	 *            one of the <code>LANE_...</code> constants
+	 */
+	public static void schedule(int lane, TimerTask task) {
+		final IScheduler s = scheduler;
+		if (s == null) return;
+
+		synchronized (MainLoop.class) {
+			depth[lane]++;
+		}
+
+		s.schedule(lane, new Probe(lane), 0);
+		s.schedule(lane, task, 0);
+	}
+
+	/** See {@link Timer#schedule(TimerTask, long)}. */
+	public static void schedule(int lane, TimerTask task, long delay) {
+		final IScheduler s = scheduler;
+		if (s == null) return;
+
+		s.schedule(lane, task, delay);
 	}
 
 	/** See {@link Timer#schedule(TimerTask, long, long)}. */
-	public static void schedule(TimerTask task, long delay, long period) {
-		if (timer == null) return;
+	public static void schedule(int lane, TimerTask task, long delay,
+			long period) {
+		final IScheduler s = scheduler;
+		if (s == null) return;
 
-		timer.schedule(task, delay, period);
+		s.schedule(lane, task, delay, period);
+	}
+
+	/** Same as {@link #schedule(int, TimerTask)} in {@link #LANE_DISPATCH}. */
+	public static void schedule(TimerTask task) {
+		schedule(LANE_DISPATCH, task);
+	}
 
+	/**
+	 * Same as {@link #schedule(int, TimerTask, long)} in
+	 * {@link #LANE_DISPATCH}.
+	 */
+	public static void schedule(TimerTask task, long delay) {
+		schedule(LANE_DISPATCH, task, delay);
+	}
+
+	/**
+	 * Same as {@link #schedule(int, TimerTask, long, long)} in
+	 * {@link #LANE_DISPATCH}.
+	 */
+	public static void schedule(TimerTask task, long delay, long period) {
+		schedule(LANE_DISPATCH, task, delay, period);
 	}
 
 }
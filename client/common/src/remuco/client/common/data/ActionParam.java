@@ -20,54 +20,49 @@
  */
 package remuco.client.common.data;
 
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
-import remuco.client.common.serial.SerialAtom;
 import remuco.client.common.util.Log;
 
 /** Parameters of an action (list or item) to send to the server. */
 public class ActionParam implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_I,
-			SerialAtom.TYPE_AS, SerialAtom.TYPE_AI, SerialAtom.TYPE_AS };
+	private final int id;
 
-	private final SerialAtom[] atoms;
+	private final String libPath[], itemIDs[];
+
+	private final int positions[];
 
 	/** Action on playlist/queue or its items. */
 	public ActionParam(int id, int positions[], String itemIDs[]) {
-		this();
-		atoms[0].i = id;
-		atoms[2].ai = positions;
-		atoms[3].as = itemIDs;
+		this(id, null, positions, itemIDs);
 	}
 
 	/** Action on file list. */
 	public ActionParam(int id, String files[]) {
-		this();
-		atoms[0].i = id;
-		atoms[3].as = files;
+		this(id, null, null, files);
 	}
 
 	/** Action on a library level or its items. */
 	public ActionParam(int id, String libPath[], int positions[],
 			String itemIDs[]) {
-		this();
-		atoms[0].i = id;
-		atoms[1].as = libPath;
-		atoms[2].ai = positions;
-		atoms[3].as = itemIDs;
-	}
-
-	private ActionParam() {
-		atoms = SerialAtom.build(ATOMS_FMT);
+		this.id = id;
+		this.libPath = libPath;
+		this.positions = positions;
+		this.itemIDs = itemIDs;
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
+	public void read(BaIn bis) throws BinaryDataExecption {
+		Log.bug("Mar 9, 2009.6:29:32 PM");
 	}
 
-	public void notifyAtomsUpdated() throws BinaryDataExecption {
-		Log.bug("Mar 9, 2009.6:29:32 PM");
+	public void write(BaOut bos) {
+		bos.writeI(id);
+		bos.writeAS(libPath);
+		bos.writeAI(positions);
+		bos.writeAS(itemIDs);
 	}
 
 }
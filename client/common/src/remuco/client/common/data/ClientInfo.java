@@ -24,27 +24,65 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 
 import remuco.client.common.io.Connection;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.ISerializable;
-import remuco.client.common.serial.SerialAtom;
 import remuco.client.common.util.Log;
 
 public final class ClientInfo implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_I,
-			SerialAtom.TYPE_S, SerialAtom.TYPE_I, SerialAtom.TYPE_AS,
-			SerialAtom.TYPE_AS };
-
 	/** Possible image type of images send from server to client. */
 	public static final String IMG_TYPE_JPEG = "JPEG";
 	
 	/** Possible image type of images send from server to client. */
 	public static final String IMG_TYPE_PNG = "PNG";
 
-	private final SerialAtom[] atoms;
+	private final int imgSize, ilPageSize;
+
+	private int maxMsgSize = 0;
+
+	private int progressInterval = 0;
+
+	private final String imgType;
+
+	private String extraKeys[], extraValues[];
+
+	private String session = null, sessionItem = null;
 
 	/** Remuco version */
 	public static final String VERSION = "0.9.6"; // VERSION_CHECK
 
+	/**
+	 * Extra information key to announce that the client understands string
+	 * back-references (see {@link remuco.client.common.serial.SerialAtom#STRING_REF}).
+	 */
+	private static final String EXTRA_STRING_REFS = "string-refs";
+
+	/**
+	 * Extra information key to announce that the client understands the delta
+	 * format of state and progress messages (see {@link State#read(BaIn)}).
+	 */
+	private static final String EXTRA_DELTA_SYNC = "delta-sync";
+
+	/**
+	 * Extra information key to announce that the client understands item
+	 * lists with interleaved item IDs and names (see
+	 * {@link ItemList#read(BaIn)}).
+	 */
+	private static final String EXTRA_ITEM_PAIRS = "item-pairs";
+
+	/** Extra information key for the maximum size of messages to receive. */
+	private static final String EXTRA_MAX_MSG_SIZE = "max-msg-size";
+
+	/** Extra information key for the interval of progress syncs. */
+	private static final String EXTRA_PROGRESS_INTERVAL = "progress-interval";
+
+	/** Extra information key for the token of a session to resume. */
+	private static final String EXTRA_SESSION = "session";
+
+	/** Extra information key for the last item seen in a resumed session. */
+	private static final String EXTRA_SESSION_ITEM = "session-item";
+
 	/**
 	 * Create a new client info.
 	 * <p>
@@ -73,38 +111,128 @@ public final class ClientInfo implements ISerializable {
 	public ClientInfo(int imgSize, String imgType, int ilPageSize,
 			Hashtable extra) {
 
-		atoms = SerialAtom.build(ATOMS_FMT);
-
-		atoms[0].i = imgSize;
-		atoms[1].s = imgType;
-		atoms[2].i = ilPageSize;
+		this.imgSize = imgSize;
+		this.imgType = imgType;
+		this.ilPageSize = ilPageSize;
 
 		if (extra != null) {
 
 			extra.put("version", VERSION);
+			extra.put(EXTRA_STRING_REFS, "yes");
+			extra.put(EXTRA_DELTA_SYNC, "yes");
+			extra.put(EXTRA_ITEM_PAIRS, "yes");
 			
-			atoms[3].as = new String[extra.size()];
-			atoms[4].as = new String[extra.size()];
+			extraKeys = new String[extra.size()];
+			extraValues = new String[extra.size()];
 
 			final Enumeration enu = extra.keys();
 			int i = 0;
 			while (enu.hasMoreElements()) {
 				final String key = (String) enu.nextElement();
 				final String val = (String) extra.get(key);
-				atoms[3].as[i] = key;
-				atoms[4].as[i] = val;
+				extraKeys[i] = key;
+				extraValues[i] = val;
 				i++;
 			}
 		}
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
+	/**
+	 * Get the maximum message size.
+	 * 
+	 * @see #setMaxMessageSize(int)
+	 */
+	public int getMaxMessageSize() {
+		return maxMsgSize;
 	}
 
-	public void notifyAtomsUpdated() {
+	public void read(BaIn bis) {
 		Log.bug("Feb 22, 2009.6:25:29 PM");
 	}
 
+	/**
+	 * Set the maximum size of messages the client is able to receive. The
+	 * size is announced to the server (only with an initial client info, i.e.
+	 * one with extra information), which then should keep messages below
+	 * that size, e.g. by leaving out images. Messages exceeding that size
+	 * nevertheless are not received as a whole by a {@link Connection}: item
+	 * messages are read without the image, other messages are discarded.
+	 * 
+	 * @param size
+	 *            maximum size in bytes (0 for no limit, which is the default)
+	 */
+	public void setMaxMessageSize(int size) {
+		maxMsgSize = size > 0 ? size : 0;
+	}
+
+	/**
+	 * Set the interval of regular progress syncs. The progress is announced
+	 * to the server (only with an initial client info, i.e. one with extra
+	 * information), which then sends progress updates to the client only in
+	 * that interval - unless the progress changes unexpectedly (e.g. because
+	 * of seeking or a new item). Clients setting an interval should
+	 * extrapolate the progress in between (see
+	 * {@link remuco.client.common.player.ProgressModel}).
+	 * 
+	 * @param seconds
+	 *            interval in seconds (0 for as often as the progress changes,
+	 *            which is the default)
+	 */
+	public void setProgressInterval(int seconds) {
+		progressInterval = seconds > 0 ? seconds : 0;
+	}
+
+	/**
+	 * Set a session to resume. This is only useful for an initial client info
+	 * (i.e. one with extra information). It tells the server which session
+	 * the client continues, so that the server can skip sending data the
+	 * client already has (e.g. the cover art of the last seen item).
+	 * 
+	 * @param token
+	 *            the session token (<code>null</code> to start a new session)
+	 * @param lastItemID
+	 *            ID of the item last seen in the session (may be
+	 *            <code>null</code>)
+	 */
+	public void setSession(String token, String lastItemID) {
+		session = token;
+		sessionItem = token != null ? lastItemID : null;
+	}
+
+	public void write(BaOut bos) {
+		bos.writeI(imgSize);
+		bos.writeS(imgType);
+		bos.writeI(ilPageSize);
+		if (extraKeys == null
+				|| (session == null && maxMsgSize == 0 && progressInterval == 0)) {
+			bos.writeAS(extraKeys);
+			bos.writeAS(extraValues);
+			return;
+		}
+		int n = extraKeys.length;
+		final int num = n + (session != null ? 2 : 0)
+				+ (maxMsgSize > 0 ? 1 : 0) + (progressInterval > 0 ? 1 : 0);
+		final String keys[] = new String[num];
+		final String values[] = new String[num];
+		System.arraycopy(extraKeys, 0, keys, 0, n);
+		System.arraycopy(extraValues, 0, values, 0, n);
+		if (session != null) {
+			keys[n] = EXTRA_SESSION;
+			values[n++] = session;
+			keys[n] = EXTRA_SESSION_ITEM;
+			values[n++] = sessionItem != null ? sessionItem : "";
+		}
+		if (maxMsgSize > 0) {
+			keys[n] = EXTRA_MAX_MSG_SIZE;
+			values[n++] = String.valueOf(maxMsgSize);
+		}
+		if (progressInterval > 0) {
+			keys[n] = EXTRA_PROGRESS_INTERVAL;
+			values[n++] = String.valueOf(progressInterval);
+		}
+		bos.writeAS(keys);
+		bos.writeAS(values);
+	}
+
 
 }
@@ -20,29 +20,27 @@
  */
 package remuco.client.common.data;
 
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
-import remuco.client.common.serial.SerialAtom;
 import remuco.client.common.util.Log;
 
 /** Parameters of a control to send to the server. */
 public class ControlParam implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_I };
-
-	private final SerialAtom[] atoms;
+	private final int param;
 
 	public ControlParam(int param) {
-		atoms = SerialAtom.build(ATOMS_FMT);
-		atoms[0].i = param;
+		this.param = param;
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
+	public void read(BaIn bis) throws BinaryDataExecption {
+		Log.bug("Mar 9, 2009.5:36:51 PM");
 	}
 
-	public void notifyAtomsUpdated() throws BinaryDataExecption {
-		Log.bug("Mar 9, 2009.5:36:51 PM");
+	public void write(BaOut bos) {
+		bos.writeI(param);
 	}
 
 }
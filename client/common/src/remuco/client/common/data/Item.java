@@ -23,8 +23,11 @@ package remuco.client.common.data;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
+import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
-import remuco.client.common.serial.SerialAtom;
+import remuco.client.common.util.Log;
 
 /**
  * A Item is a <i>playable object</i>, which could be a song, a video or ..
@@ -73,9 +76,6 @@ public final class Item implements ISerializable {
 
 	public static final int TYPE_VIDEO = 2;
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_S,
-			SerialAtom.TYPE_AS, SerialAtom.TYPE_AY };
-
 	private static final String META_RATING = "rating";
 
 	private static final String META_TYPE = "type";
@@ -86,35 +86,40 @@ public final class Item implements ISerializable {
 
 	private static final String META_TYPE_VIDEO = "video";
 
-	private final SerialAtom[] atoms;
+	private static final byte[] NO_IMG = new byte[0];
 
 	private String id = ID_NONE;
 
+	/**
+	 * Array containing the image data - possibly a whole message (see
+	 * {@link #getImgData()}).
+	 */
 	private byte img[];
 
+	/** Copy of the image data as returned by {@link #getImg()}. */
+	private byte imgCopy[];
+
+	private int imgOff, imgLen;
+
 	private final Hashtable meta;
 
+	private boolean skipImage = false;
+
 	/**
 	 * Create a new item with ID {@link #ID_NONE} and title
 	 * {@link #META_TITLE_VALUE_NONE}.
 	 * <p>
 	 * Whenever this item gets updated as a result of deserialization (see
-	 * {@link #notifyAtomsUpdated()}), ID and title get set to the values above
+	 * {@link #read(BaIn)}), ID and title get set to the values above
 	 * fi they are missing in the deserialized data.
 	 */
 	public Item() {
 
-		atoms = SerialAtom.build(ATOMS_FMT);
-
 		meta = new Hashtable(10);
 
 		setMeta(META_TITLE, META_TITLE_VALUE_NONE);
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
-	}
-
 	/**
 	 * Get the ID of the item.
 	 * 
@@ -131,7 +136,54 @@ public final class Item implements ISerializable {
 	 * @return the image data (empty array if there is no image)
 	 */
 	public byte[] getImg() {
-		return img;
+
+		if (imgCopy == null) {
+			final int len = getImgLength();
+			if (len == 0) {
+				imgCopy = NO_IMG;
+			} else if (imgOff == 0 && len == img.length) {
+				imgCopy = img; // not a zero-copy image
+			} else {
+				imgCopy = new byte[len];
+				System.arraycopy(img, imgOff, imgCopy, 0, len);
+			}
+		}
+
+		return imgCopy;
+	}
+
+	/**
+	 * Get the item's image without copying it. The image data is located
+	 * within a larger array (e.g. the message the item has been received
+	 * with), so use {@link #getImgOffset()} and {@link #getImgLength()} to
+	 * locate the image data within the returned array.
+	 * <p>
+	 * Use this to decode the image right away. To keep the image data, use
+	 * {@link #getImg()}, which does not keep the larger array alive.
+	 * 
+	 * @return the array containing the image data (empty array if there is no
+	 *         image)
+	 */
+	public byte[] getImgData() {
+		return img != null ? img : NO_IMG;
+	}
+
+	/**
+	 * Get the length of the item's image data within the array returned by
+	 * {@link #getImgData()}.
+	 * 
+	 * @return the length (0 if there is no image)
+	 */
+	public int getImgLength() {
+		return img != null ? imgLen : 0;
+	}
+
+	/**
+	 * Get the offset of the item's image data within the array returned by
+	 * {@link #getImgData()}.
+	 */
+	public int getImgOffset() {
+		return img != null ? imgOff : 0;
 	}
 
 	/**
@@ -242,16 +294,26 @@ public final class Item implements ISerializable {
 
 	}
 
-	public void notifyAtomsUpdated() {
+	public void read(BaIn bis) throws BinaryDataExecption {
 
-		id = atoms[0].s;
+		final String rid = bis.readS();
+		final String rmeta[] = bis.readAS();
+		final byte rimg[];
+		if (skipImage) {
+			bis.skipAY();
+			rimg = null;
+		} else {
+			rimg = bis.readAY();
+		}
 
-		final int meta_num = atoms[1].as.length / 2;
+		id = rid;
+
+		final int meta_num = rmeta.length / 2;
 
 		meta.clear();
 		for (int i = 0; i < meta_num; i++) {
 
-			meta.put(atoms[1].as[2 * i], atoms[1].as[2 * i + 1]);
+			meta.put(rmeta[2 * i], rmeta[2 * i + 1]);
 
 		}
 		if (meta_num == 0) {
@@ -259,7 +321,40 @@ public final class Item implements ISerializable {
 			setMeta(META_TITLE, META_TITLE_VALUE_NONE);
 		}
 
-		img = atoms[2].ay;
+		img = rimg;
+		imgOff = bis.getAYOffset();
+		imgLen = bis.getAYLength();
+		imgCopy = null;
+	}
+
+	/**
+	 * Set this item to the values of another item. Data is not copied, so
+	 * <em>other</em> should not be used anymore afterwards.
+	 */
+	public void set(Item other) {
+
+		id = other.id;
+
+		meta.clear();
+		final Enumeration keys = other.meta.keys();
+		while (keys.hasMoreElements()) {
+			final Object key = keys.nextElement();
+			meta.put(key, other.meta.get(key));
+		}
+
+		img = other.img;
+		imgOff = other.imgOff;
+		imgLen = other.imgLen;
+		imgCopy = null;
+	}
+
+	/**
+	 * Set if to skip the image when reading this item. This allows to read
+	 * a degraded item (metadata only) when the image is too large for the
+	 * device.
+	 */
+	public void setSkipImage(boolean skip) {
+		skipImage = skip;
 	}
 
 	public void setMeta(String name, String value) {
@@ -301,6 +396,10 @@ public final class Item implements ISerializable {
 
 	}
 
+	public void write(BaOut bos) {
+		Log.bug("Oct 18, 2026.10:14:52 AM");
+	}
+
 	public String toString() {
 
 		String s;
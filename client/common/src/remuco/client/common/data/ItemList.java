@@ -24,6 +24,9 @@ import java.util.Enumeration;
 import java.util.Vector;
 
 import remuco.client.common.io.Message;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
+import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
 import remuco.client.common.serial.SerialAtom;
 import remuco.client.common.util.Log;
@@ -31,6 +34,35 @@ import remuco.client.common.util.Tools;
 
 public final class ItemList implements ISerializable {
 
+	/**
+	 * Interface for classes interested in items of an item list while the list
+	 * is being deserialized.
+	 */
+	public interface IChunkListener {
+
+		/**
+		 * Notifies that some items of a list have been deserialized. The
+		 * given list is a snapshot of the list being deserialized which
+		 * provides the list's request ID, path and nested lists as well as
+		 * the IDs and names of the items 0 to <em>to</em> - 1. The snapshot
+		 * does not change anymore, so it may be passed to other threads.
+		 * Other data of the list is not available in the snapshot.
+		 * <p>
+		 * Chunks are notified in order, the last chunk ends with the last item
+		 * of the list. This method gets called by the thread which
+		 * deserializes the list.
+		 * 
+		 * @param list
+		 *            snapshot of the list being deserialized
+		 * @param from
+		 *            index of the first new item
+		 * @param to
+		 *            index of the last new item plus 1
+		 */
+		public void notifyItemsRead(ItemList list, int from, int to);
+
+	}
+
 	public static final int TYPE_MLIB = Message.REQ_MLIB;
 
 	public static final int TYPE_PLAYLIST = Message.REQ_PLAYLIST;
@@ -39,16 +71,27 @@ public final class ItemList implements ISerializable {
 
 	public static final int TYPE_SEARCH = Message.REQ_SEARCH;
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_I,
-			SerialAtom.TYPE_AS, SerialAtom.TYPE_AS, SerialAtom.TYPE_AS,
-			SerialAtom.TYPE_AS, SerialAtom.TYPE_I, SerialAtom.TYPE_I,
-			SerialAtom.TYPE_I, SerialAtom.TYPE_AI, SerialAtom.TYPE_AS,
-			SerialAtom.TYPE_AB, SerialAtom.TYPE_AI, SerialAtom.TYPE_AS };
-
-	private static final int TYPE_FILES = Message.REQ_FILES;
+	public static final int TYPE_FILES = Message.REQ_FILES;
 
 	public static final String UNKNWON = "#~@X+.YO?/";
 
+	/** Compare two string arrays element by element. */
+	private static boolean equals(String a[], String b[]) {
+
+		if (a == b) {
+			return true;
+		}
+		if (a == null || b == null || a.length != b.length) {
+			return false;
+		}
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] == null ? b[i] != null : !a[i].equals(b[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Some list names have a special format which needs to be changed before
 	 * displaying them on screen.
@@ -67,9 +110,27 @@ public final class ItemList implements ISerializable {
 		}
 	}
 
+	/** Approximate number of bytes used by a string array. */
+	private static int sizeOf(String a[]) {
+
+		if (a == null) {
+			return 0;
+		}
+
+		int size = 16 + 4 * a.length;
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != null) {
+				size += 40 + 2 * a[i].length();
+			}
+		}
+		return size;
+	}
+
 	private final Vector actions;
 
-	private final SerialAtom[] atoms;
+	private IChunkListener chunkListener = null;
+
+	private int chunkSize;
 
 	private boolean haveItemActions = false;
 
@@ -77,6 +138,12 @@ public final class ItemList implements ISerializable {
 
 	private boolean haveListActions = false;
 
+	/**
+	 * Number of available items. Less than the length of {@link #itemIDs} if
+	 * this list is a snapshot of a list being deserialized.
+	 */
+	private int numItems = 0;
+
 	private int page, pageMax, itemOffset;
 
 	private String path[], nested[], itemIDs[], itemNames[];
@@ -88,19 +155,34 @@ public final class ItemList implements ISerializable {
 	/** Create a new playlist, queue or media library item list. */
 	public ItemList(int type) {
 
-		atoms = SerialAtom.build(ATOMS_FMT);
-
 		actions = new Vector();
 
 		this.type = type;
 
 	}
 
+	/**
+	 * Create a snapshot of a list being deserialized which provides the items
+	 * read so far. The snapshot shares the item arrays with the list, which
+	 * only fills elements beyond the snapshot's items.
+	 */
+	private ItemList(ItemList list, int numItems) {
+
+		actions = new Vector();
+
+		type = list.type;
+		requestID = list.requestID;
+		path = list.path;
+		nested = list.nested;
+		itemIDs = list.itemIDs;
+		itemNames = list.itemNames;
+
+		this.numItems = numItems;
+	}
+
 	/** Create a new file browser item list. */
 	public ItemList(Vector fileActions) {
 
-		atoms = SerialAtom.build(ATOMS_FMT);
-
 		actions = fileActions;
 
 		this.type = TYPE_FILES;
@@ -123,13 +205,13 @@ public final class ItemList implements ISerializable {
 		return actions;
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
-	}
-
 	/** Get the ID of item <em>i</em> (starting from 0). */
 	public String getItemID(int i) {
 
+		if (i >= numItems) {
+			return UNKNWON;
+		}
+
 		try {
 			return itemIDs[i];
 		} catch (NullPointerException e) {
@@ -142,6 +224,10 @@ public final class ItemList implements ISerializable {
 	/** Get the name of item <em>i</em> (starting from 0). */
 	public String getItemName(int i) {
 
+		if (i >= numItems) {
+			return UNKNWON;
+		}
+
 		try {
 			return itemNames[i];
 		} catch (NullPointerException e) {
@@ -218,7 +304,7 @@ public final class ItemList implements ISerializable {
 
 	public int getNumItems() {
 
-		return itemIDs != null ? itemIDs.length : 0;
+		return numItems;
 	}
 
 	public int getNumNested() {
@@ -239,6 +325,20 @@ public final class ItemList implements ISerializable {
 		return pageMax;
 	}
 
+	/** Get the list type (one of the <code>TYPE_...</code> constants). */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Get the approximate number of bytes used by this list's item and nested
+	 * list data in memory.
+	 */
+	public int getSizeEstimate() {
+		return 64 + sizeOf(path) + sizeOf(nested) + sizeOf(itemIDs)
+				+ sizeOf(itemNames);
+	}
+
 	/**
 	 * Get the item list's path. When the item list is a search result, the path
 	 * lists the search query parameters.
@@ -295,12 +395,26 @@ public final class ItemList implements ISerializable {
 		return requestID;
 	}
 
+	/**
+	 * Check if this list has the same content as another list, i.e. the same
+	 * type, path, page, nested lists and items. Actions are not compared.
+	 */
+	public boolean hasSameContent(ItemList other) {
+
+		return type == other.type && page == other.page
+				&& pageMax == other.pageMax && itemOffset == other.itemOffset
+				&& numItems == other.numItems
+				&& equals(path, other.path) && equals(nested, other.nested)
+				&& equals(itemIDs, other.itemIDs)
+				&& equals(itemNames, other.itemNames);
+	}
+
 	public boolean hasItemActions() {
-		return haveItemActions && itemIDs.length > 0;
+		return haveItemActions && numItems > 0;
 	}
 
 	public boolean hasItemActionsMultiple() {
-		return haveItemActionsMultiple && itemIDs.length > 0;
+		return haveItemActionsMultiple && numItems > 0;
 	}
 
 	public boolean hasListActions() {
@@ -336,38 +450,63 @@ public final class ItemList implements ISerializable {
 		return type == TYPE_SEARCH;
 	}
 
-	public void notifyAtomsUpdated() {
+	/**
+	 * Reads the list. Item IDs and names are either given as two string
+	 * arrays or, when preceded by a {@link SerialAtom#TYPE_N} marker, as one
+	 * string array of interleaved ID and name pairs. The latter allows to
+	 * notify the chunk listener about items as soon as they are read.
+	 */
+	public void read(BaIn bis) throws BinaryDataExecption {
 
-		requestID = atoms[0].i;
-		path = atoms[1].as;
-		nested = atoms[2].as;
-		itemIDs = atoms[3].as;
-		itemNames = atoms[4].as;
+		requestID = bis.readI();
+		path = bis.readAS();
+		nested = bis.readAS();
 
-		itemOffset = atoms[5].i;
-		page = atoms[6].i;
-		pageMax = atoms[7].i;
+		if (bis.nextType() == SerialAtom.TYPE_N) {
+			bis.readN(); // layout marker
+			readItemPairs(bis);
+		} else {
+			itemIDs = bis.readAS();
+			if (chunkListener == null) {
+				itemNames = bis.readAS();
+			} else {
+				readItemNamesChunked(bis);
+			}
+			numItems = itemIDs.length;
+		}
+
+		itemOffset = bis.readI();
+		page = bis.readI();
+		pageMax = bis.readI();
+
+		final int itemActionIDs[] = bis.readAI();
+		final String itemActionLabels[] = bis.readAS();
+		final boolean itemActionMultiple[] = bis.readAB();
+		final int listActionIDs[] = bis.readAI();
+		final String listActionLabels[] = bis.readAS();
 
 		if (type == TYPE_FILES) { // no dynamic actions
 			return;
 		}
 
-		int off;
+		if (itemActionLabels.length < itemActionIDs.length
+				|| itemActionMultiple.length < itemActionIDs.length
+				|| listActionLabels.length < listActionIDs.length) {
+			throw new BinaryDataExecption("inconsistent action arrays");
+		}
 
 		actions.removeAllElements();
 
-		off = 11;
-		haveListActions = atoms[off].ai.length > 0;
-		for (int i = 0; i < atoms[off].ai.length; i++) {
-			actions.addElement(new ListAction(atoms[off].ai[i],
-					atoms[off + 1].as[i]));
+		haveListActions = listActionIDs.length > 0;
+		for (int i = 0; i < listActionIDs.length; i++) {
+			actions.addElement(new ListAction(listActionIDs[i],
+					listActionLabels[i]));
 		}
 
-		off = 8;
-		haveItemActions = atoms[off].ai.length > 0;
-		for (int i = 0; i < atoms[off].ai.length; i++) {
-			final ItemAction ia = new ItemAction(atoms[off].ai[i],
-					atoms[off + 1].as[i], atoms[off + 2].ab[i]);
+		haveItemActions = itemActionIDs.length > 0;
+		for (int i = 0; i < itemActionIDs.length; i++) {
+			final ItemAction ia = new ItemAction(itemActionIDs[i],
+					itemActionLabels[i], itemActionMultiple[i]);
 			actions.addElement(ia);
 			if (ia.multiple) {
 				haveItemActionsMultiple = true;
@@ -376,6 +515,92 @@ public final class ItemList implements ISerializable {
 
 	}
 
+	public void write(BaOut bos) {
+		Log.bug("Oct 18, 2026.10:16:03 AM");
+	}
+
+	/**
+	 * Notifies the chunk listener about the items <em>from</em> to
+	 * <em>to</em> - 1 if they complete a chunk or the list's items.
+	 * 
+	 * @return the index of the first item of the next chunk
+	 */
+	private int notifyChunk(int from, int to, int len) {
+
+		if (chunkListener == null || (to - from < chunkSize && to < len)) {
+			return from;
+		}
+
+		chunkListener.notifyItemsRead(new ItemList(this, to), from, to);
+
+		return to;
+	}
+
+	/**
+	 * Reads interleaved item ID and name pairs and notifies the chunk
+	 * listener whenever a chunk of items is complete.
+	 */
+	private void readItemPairs(BaIn bis) throws BinaryDataExecption {
+
+		final int len = bis.readASBegin();
+
+		if (len % 2 != 0) {
+			throw new BinaryDataExecption("incomplete item pair");
+		}
+
+		final int n = len / 2;
+
+		itemIDs = new String[n];
+		itemNames = new String[n];
+
+		int from = 0;
+
+		for (int i = 0; i < n; i++) {
+			itemIDs[i] = bis.readASNext();
+			itemNames[i] = bis.readASNext();
+			from = notifyChunk(from, i + 1, n);
+		}
+
+		numItems = n;
+	}
+
+	/**
+	 * Reads the item names element by element and notifies the chunk listener
+	 * whenever a chunk of items is complete (item IDs must have been read
+	 * already).
+	 */
+	private void readItemNamesChunked(BaIn bis) throws BinaryDataExecption {
+
+		final int len = bis.readASBegin();
+
+		itemNames = new String[len];
+
+		final int n = Math.min(len, itemIDs.length);
+
+		int from = 0;
+
+		for (int i = 0; i < len; i++) {
+			itemNames[i] = bis.readASNext();
+			if (i < n) {
+				from = notifyChunk(from, i + 1, n);
+			}
+		}
+	}
+
+	/**
+	 * Set a listener to get notified about chunks of items while this list is
+	 * being deserialized.
+	 * 
+	 * @param cl
+	 *            the listener (<code>null</code> for no listener)
+	 * @param size
+	 *            number of items per chunk
+	 */
+	public void setChunkListener(IChunkListener cl, int size) {
+		chunkListener = cl;
+		chunkSize = size;
+	}
+
 	public String toString() {
 
 		final StringBuffer sb = new StringBuffer("ItemList: /");
@@ -23,19 +23,15 @@ package remuco.client.common.data;
 import java.util.Vector;
 
 import remuco.client.common.player.Feature;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
-import remuco.client.common.serial.SerialAtom;
+import remuco.client.common.util.Log;
 
 /** A descriptive interface for the player. */
 public class PlayerInfo implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_S,
-			SerialAtom.TYPE_I, SerialAtom.TYPE_Y, SerialAtom.TYPE_AI,
-			SerialAtom.TYPE_AS, SerialAtom.TYPE_AB, SerialAtom.TYPE_AS };
-
-	private final SerialAtom[] atoms;
-
 	private final Vector fileActions;
 
 	private int flags;
@@ -48,16 +44,10 @@ public class PlayerInfo implements ISerializable {
 
 	public PlayerInfo() {
 
-		atoms = SerialAtom.build(ATOMS_FMT);
-
 		fileActions = new Vector();
 
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
-	}
-
 	public Vector getFileActions() {
 		return fileActions;
 	}
@@ -74,20 +64,32 @@ public class PlayerInfo implements ISerializable {
 		return searchMask;
 	}
 
-	public void notifyAtomsUpdated() throws BinaryDataExecption {
+	public void read(BaIn bis) throws BinaryDataExecption {
 
-		name = atoms[0].s;
-		flags = atoms[1].i;
-		maxRating = atoms[2].y;
+		name = bis.readS();
+		flags = bis.readI();
+		maxRating = bis.readY();
+
+		final int fileActionIDs[] = bis.readAI();
+		final String fileActionLabels[] = bis.readAS();
+		final boolean fileActionMultiple[] = bis.readAB();
+
+		if (fileActionLabels.length < fileActionIDs.length
+				|| fileActionMultiple.length < fileActionIDs.length) {
+			throw new BinaryDataExecption("inconsistent action arrays");
+		}
 
 		fileActions.removeAllElements();
-		int off = 3;
-		for (int i = 0; i < atoms[off].ai.length; i++) {
-			fileActions.addElement(new ItemAction(atoms[off].ai[i],
-					atoms[off + 1].as[i], atoms[off + 2].ab[i]));
+		for (int i = 0; i < fileActionIDs.length; i++) {
+			fileActions.addElement(new ItemAction(fileActionIDs[i],
+					fileActionLabels[i], fileActionMultiple[i]));
 		}
 
-		searchMask = atoms[6].as;
+		searchMask = bis.readAS();
+	}
+
+	public void write(BaOut bos) {
+		Log.bug("Oct 18, 2026.10:19:05 AM");
 	}
 
 	public boolean supports(int feature) {
@@ -20,42 +20,94 @@
  */
 package remuco.client.common.data;
 
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
+import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
 import remuco.client.common.serial.SerialAtom;
+import remuco.client.common.util.Log;
 import remuco.client.common.util.Tools;
 
 public class Progress implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_I,
-			SerialAtom.TYPE_I };
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_PROGRESS = 1 << 0;
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_LENGTH = 1 << 1;
 
-	private final SerialAtom[] atoms;
+	/** Flags for all fields. */
+	public static final int CHANGED_ALL = (1 << 2) - 1;
 
-	public Progress() {
-		atoms = SerialAtom.build(ATOMS_FMT);
+	private int changed = CHANGED_ALL;
+
+	private int progress, length;
+
+	private boolean synced = false;
+
+	/**
+	 * Get the fields which changed with the last update of this progress.
+	 * 
+	 * @return a bit mask of <code>CHANGED_...</code> flags (all flags are set
+	 *         for the first update)
+	 */
+	public int getChanged() {
+		return changed;
 	}
 
 	public int getProgress() {
-		return atoms[0].i;
+		return progress;
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
+	public int getLength() {
+		return length;
 	}
 
-	public int getLength() {
-		return atoms[1].i;
+	/**
+	 * Reads a progress. Like {@link State#read(BaIn)}, this understands the
+	 * full and the delta format and leaves this progress unchanged if the data
+	 * is malformed.
+	 */
+	public void read(BaIn bis) throws BinaryDataExecption {
+
+		final int present;
+		if (bis.nextType() == SerialAtom.TYPE_N) {
+			present = bis.readN() & CHANGED_ALL;
+		} else {
+			present = CHANGED_ALL;
+		}
+
+		int rprogress = progress, rlength = length;
+
+		if ((present & CHANGED_PROGRESS) != 0)
+			rprogress = bis.readI();
+		if ((present & CHANGED_LENGTH) != 0)
+			rlength = bis.readI();
+
+		if (!synced) {
+			changed = CHANGED_ALL;
+			synced = true;
+		} else {
+			changed = 0;
+			if (rprogress != progress)
+				changed |= CHANGED_PROGRESS;
+			if (rlength != length)
+				changed |= CHANGED_LENGTH;
+		}
+
+		progress = rprogress;
+		length = rlength;
 	}
 
-	public void notifyAtomsUpdated() {
+	public void write(BaOut bos) {
+		Log.bug("Oct 18, 2026.10:18:22 AM");
 	}
 
 	public String getLengthFormatted() {
-		return Tools.formatTime(atoms[1].i);
+		return Tools.formatTime(length);
 	}
 
 	public String getProgressFormatted() {
-		return Tools.formatTime(atoms[0].i);
+		return Tools.formatTime(progress);
 	}
 
 }
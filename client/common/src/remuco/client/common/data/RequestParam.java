@@ -20,50 +20,73 @@
  */
 package remuco.client.common.data;
 
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
-import remuco.client.common.serial.SerialAtom;
 import remuco.client.common.util.Log;
 import remuco.client.common.util.Tools;
 
 /** Parameters of a request to send to the server. */
 public class RequestParam implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_I,
-			SerialAtom.TYPE_S, SerialAtom.TYPE_AS, SerialAtom.TYPE_I };
+	private final int requestID;
 
-	private final SerialAtom[] atoms;
+	private final String id;
+
+	private final String path[];
+
+	private final int page;
 
 	/** Request for a playlist or queue. */
 	public RequestParam(int page) {
-		atoms = SerialAtom.build(ATOMS_FMT);
-		atoms[0].i = Tools.RANDOM.nextInt(Integer.MAX_VALUE);
-		atoms[3].i = page;
+		this(null, null, page);
 	}
 
 	/** Request for an item. */
 	public RequestParam(String id) {
-		this(0);
-		atoms[1].s = id;
+		this(id, null, 0);
 	}
 
 	/** Request for a file system or media lib level or search. */
 	public RequestParam(String path[], int page) {
-		this(page);
-		atoms[2].as = path;
+		this(null, path, page);
+	}
+
+	private RequestParam(String id, String path[], int page) {
+		this.requestID = Tools.RANDOM.nextInt(Integer.MAX_VALUE);
+		this.id = id;
+		this.path = path;
+		this.page = page;
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
+	/** Get the requested page. */
+	public int getPage() {
+		return page;
+	}
+
+	/**
+	 * Get the path of the requested list (or the query if this is a search
+	 * request).
+	 */
+	public String[] getPath() {
+		return path;
 	}
 
 	/** Get this request's randomly generated ID. */
 	public int getRequestID() {
-		return atoms[0].i;
+		return requestID;
 	}
 
-	public void notifyAtomsUpdated() throws BinaryDataExecption {
+	public void read(BaIn bis) throws BinaryDataExecption {
 		Log.bug("Mar 9, 2009.6:34:50 PM");
 	}
 
+	public void write(BaOut bos) {
+		bos.writeI(requestID);
+		bos.writeS(id);
+		bos.writeAS(path);
+		bos.writeI(page);
+	}
+
 }
@@ -20,49 +20,126 @@
  */
 package remuco.client.common.data;
 
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
+import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
 import remuco.client.common.serial.SerialAtom;
+import remuco.client.common.util.Log;
 
 /**
  * Class to represent all relevant state information of a music player.
  */
 public final class State implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_Y,
-			SerialAtom.TYPE_Y, SerialAtom.TYPE_I, SerialAtom.TYPE_B,
-			SerialAtom.TYPE_B, SerialAtom.TYPE_B };
-
 	public static final byte PLAYBACK_PAUSE = 1;
 
 	public static final byte PLAYBACK_PLAY = 2;
 
 	public static final byte PLAYBACK_STOP = 0;
 
-	private final SerialAtom[] atoms;
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_PLAYBACK = 1 << 0;
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_VOLUME = 1 << 1;
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_POSITION = 1 << 2;
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_REPEAT = 1 << 3;
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_SHUFFLE = 1 << 4;
+	/** Flag for {@link #getChanged()}. */
+	public static final int CHANGED_QUEUE = 1 << 5;
+
+	/** Flags for all fields. */
+	public static final int CHANGED_ALL = (1 << 6) - 1;
+
+	private int changed = CHANGED_ALL;
 
 	private int playback, volume, position;
 
 	private boolean repeat, shuffle, queue;
 
-	public State() {
+	private boolean synced = false;
 
-		atoms = SerialAtom.build(ATOMS_FMT);
+	public State() {
 
 		reset();
 	}
 
-	public void notifyAtomsUpdated() {
+	/**
+	 * Reads a state. Besides the full format, this understands the delta
+	 * format, where a leading short atom contains a bit mask of the fields
+	 * following (using the <code>CHANGED_...</code> flags) and fields missing
+	 * in the mask keep their current values.
+	 * <p>
+	 * Fields are decoded completely before any of them is assigned, so this
+	 * state remains unchanged if the data is malformed.
+	 */
+	public void read(BaIn bis) throws BinaryDataExecption {
+
+		final int present;
+		if (bis.nextType() == SerialAtom.TYPE_N) {
+			present = bis.readN() & CHANGED_ALL;
+		} else {
+			present = CHANGED_ALL;
+		}
+
+		int rplayback = playback, rvolume = volume, rposition = position;
+		boolean rrepeat = repeat, rshuffle = shuffle, rqueue = queue;
+
+		if ((present & CHANGED_PLAYBACK) != 0)
+			rplayback = bis.readY();
+		if ((present & CHANGED_VOLUME) != 0)
+			rvolume = bis.readY();
+		if ((present & CHANGED_POSITION) != 0)
+			rposition = bis.readI();
+		if ((present & CHANGED_REPEAT) != 0)
+			rrepeat = bis.readB();
+		if ((present & CHANGED_SHUFFLE) != 0)
+			rshuffle = bis.readB();
+		if ((present & CHANGED_QUEUE) != 0)
+			rqueue = bis.readB();
+
+		if (!synced) {
+			changed = CHANGED_ALL;
+			synced = true;
+		} else {
+			changed = 0;
+			if (rplayback != playback)
+				changed |= CHANGED_PLAYBACK;
+			if (rvolume != volume)
+				changed |= CHANGED_VOLUME;
+			if (rposition != position)
+				changed |= CHANGED_POSITION;
+			if (rrepeat != repeat)
+				changed |= CHANGED_REPEAT;
+			if (rshuffle != shuffle)
+				changed |= CHANGED_SHUFFLE;
+			if (rqueue != queue)
+				changed |= CHANGED_QUEUE;
+		}
+
+		playback = rplayback;
+		volume = rvolume;
+		position = rposition;
+		repeat = rrepeat;
+		shuffle = rshuffle;
+		queue = rqueue;
+	}
 
-		playback = atoms[0].y;
-		volume = atoms[1].y;
-		position = atoms[2].i;
-		repeat = atoms[3].b;
-		shuffle = atoms[4].b;
-		queue = atoms[5].b;
+	public void write(BaOut bos) {
+		Log.bug("Oct 18, 2026.10:17:40 AM");
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
+	/**
+	 * Get the fields which changed with the last update of this state.
+	 * 
+	 * @return a bit mask of <code>CHANGED_...</code> flags (all flags are set
+	 *         for the first update)
+	 */
+	public int getChanged() {
+		return changed;
 	}
 
 	public int getPlayback() {
@@ -22,18 +22,16 @@ package remuco.client.common.data;
 
 import java.util.Vector;
 
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
-import remuco.client.common.serial.SerialAtom;
 import remuco.client.common.util.Log;
 import remuco.client.common.util.Tools;
 
 /** Tags (labels) of an item. */
 public class Tagging implements ISerializable {
 
-	private static final int[] ATOMS_FMT = new int[] { SerialAtom.TYPE_S,
-			SerialAtom.TYPE_AS };
-
 	/**
 	 * Split and trim a comma separated list of tags (bounding whitespace and
 	 * duplicates get removed).
@@ -66,7 +64,9 @@ public class Tagging implements ISerializable {
 		return ret;
 	}
 
-	private final SerialAtom[] atoms;
+	private final String id;
+
+	private final String tags[];
 
 	/**
 	 * Create a new item tagging.
@@ -77,17 +77,17 @@ public class Tagging implements ISerializable {
 	 *            comma separated list of tags (gets trimmed automatically)
 	 */
 	public Tagging(String id, String tags) {
-		atoms = SerialAtom.build(ATOMS_FMT);
-		atoms[0].s = id;
-		atoms[1].as = splitAndTrim(tags);
+		this.id = id;
+		this.tags = splitAndTrim(tags);
 	}
 
-	public SerialAtom[] getAtoms() {
-		return atoms;
+	public void read(BaIn bis) throws BinaryDataExecption {
+		Log.bug("Mar 9, 2009.6:32:37 PM");
 	}
 
-	public void notifyAtomsUpdated() throws BinaryDataExecption {
-		Log.bug("Mar 9, 2009.6:32:37 PM");
+	public void write(BaOut bos) {
+		bos.writeS(id);
+		bos.writeAS(tags);
 	}
 
 }
@@ -25,16 +25,18 @@ import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.TimerTask;
+import java.util.Vector;
 
 import remuco.client.common.MainLoop;
 import remuco.client.common.UserException;
 import remuco.client.common.data.ClientInfo;
 import remuco.client.common.data.PlayerInfo;
 import remuco.client.common.player.Player;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.Serial;
 import remuco.client.common.util.Log;
-import remuco.client.common.util.Tools;
 
 /**
  * A connection sets up a connection to the server and handles receiving and
@@ -42,6 +44,33 @@ import remuco.client.common.util.Tools;
  */
 public final class Connection implements Runnable {
 
+	/**
+	 * Creates the threads used by connections for receiving and sending
+	 * messages. Set a custom factory with
+	 * {@link Connection#setThreadFactory(IThreadFactory)}, e.g. to use virtual
+	 * threads on JVMs supporting them:
+	 * 
+	 * <pre>
+	 * public Thread newThread(Runnable r, String name) {
+	 * 	return Thread.ofVirtual().name(name).unstarted(r);
+	 * }
+	 * </pre>
+	 */
+	public interface IThreadFactory {
+
+		/**
+		 * Create a thread.
+		 * 
+		 * @param r
+		 *            the runnable to run by the thread
+		 * @param name
+		 *            the name of the thread
+		 * @return a new thread, not yet started
+		 */
+		public Thread newThread(Runnable r, String name);
+
+	}
+
 	/**
 	 * Interface for classes interested in the state of a {@link Connection}.
 	 */
@@ -68,6 +97,64 @@ public final class Connection implements Runnable {
 
 	}
 
+	/**
+	 * Passes received messages from the inbox to the player. Runs in the main
+	 * loop's dispatch lane until the inbox is empty.
+	 */
+	private class Dispatcher extends TimerTask {
+
+		public void run() {
+
+			while (true) {
+
+				final Message m = inbox.poll();
+
+				if (m == null) {
+					dispatching = false;
+					if (inbox.isEmpty()) {
+						return;
+					}
+					dispatching = true; // message arrived meanwhile
+					continue;
+				}
+
+				try {
+					player.handleMessage(m);
+				} catch (BinaryDataExecption e) {
+					notifyDisconnected("Connection Error",
+						"Received malformed data.", e);
+				} catch (OutOfMemoryError e) {
+					m.data = null;
+					notifyDisconnected("Memory Error",
+						"Received data too big.", null);
+				}
+			}
+		}
+	}
+
+	/** Writes coalesced messages once the coalescing window has passed. */
+	private class FlushTask extends TimerTask {
+
+		public void run() {
+			synchronized (dos) {
+				if (flush == this) {
+					flush = null;
+				}
+				if (closed) {
+					return;
+				}
+				try {
+					flushPrivate();
+				} catch (IOException e) {
+					Log.ln("[CN] connection broken", e);
+					downPrivate();
+					notifyDisconnected("Connection broken",
+						"IO Error while sending data.", e);
+				}
+			}
+		}
+	}
+
 	private class PingTask extends TimerTask {
 
 		private final Message m;
@@ -87,8 +174,74 @@ public final class Connection implements Runnable {
 
 	}
 
+	/**
+	 * Writes queued messages to the socket, highest priority first. Messages
+	 * queued while writing get written together with a single flush.
+	 */
+	private class Writer implements Runnable {
+
+		public void run() {
+
+			while (true) {
+
+				final Message m;
+				final boolean more;
+
+				synchronized (outbox) {
+					Message next = null;
+					while (!closed && (next = dequeue()) == null) {
+						try {
+							outbox.wait();
+						} catch (InterruptedException e) {
+						}
+					}
+					if (closed) {
+						return;
+					}
+					m = next;
+					more = !isOutboxEmpty();
+				}
+
+				synchronized (dos) {
+					if (closed) {
+						return;
+					}
+					try {
+						sendPrivate(m, more);
+					} catch (IOException e) {
+						Log.ln("[CN] connection broken", e);
+						downPrivate();
+						notifyDisconnected("Connection broken",
+							"IO Error while sending data.", e);
+					}
+				}
+			}
+		}
+	}
+
+	/** Watchdog for the hello message, closes the socket on timeout. */
+	private class HelloTimeoutTask extends TimerTask {
+
+		public synchronized void run() {
+			if (!helloReceived) {
+				helloTimedOut = true;
+				Log.ln("[CN] timeout while waiting for hello msg");
+				sock.close();
+			}
+		}
+	}
+
 	private static final int HELLO_TIMEOUT = 2000;
 
+	/** Factory for connection threads (<code>null</code> for the default). */
+	private static IThreadFactory threadFactory = null;
+
+	/**
+	 * Number of received messages which may wait to get dispatched before the
+	 * inbox overflows (see {@link MessageQueue}).
+	 */
+	private static final int INBOX_SIZE = 32;
+
 	private static final byte[] PREFIX = { (byte) 0xFF, (byte) 0xFF,
 			(byte) 0xFF, (byte) 0xFF };
 
@@ -97,11 +250,18 @@ public final class Connection implements Runnable {
 	private static final byte[] SUFFIX = { (byte) 0xFE, (byte) 0xFE,
 			(byte) 0xFE, (byte) 0xFE };
 
-	private static final int HELLO_LEN = PREFIX.length + PROTO_VERSION.length
-			+ SUFFIX.length;
-
 	private boolean closed = false;
 
+	/** Whether a {@link Dispatcher} is scheduled or running. */
+	private volatile boolean dispatching = false;
+
+	/**
+	 * Coalescing window in milliseconds (guarded by {@link #dos}).
+	 * 
+	 * @see #setCoalescing(int)
+	 */
+	private int coalescing = 0;
+
 	private final IConnectionListener connectionListener;
 
 	private boolean connectionListenerNotifiedAboutError = false;
@@ -110,17 +270,87 @@ public final class Connection implements Runnable {
 
 	private final DataOutputStream dos;
 
+	/** Pending write of coalesced messages (guarded by {@link #dos}). */
+	private TimerTask flush;
+
+	/** Time needed to connect in milliseconds (-1 if not yet connected). */
+	private long connectLatency = -1;
+
+	/** Time when this connection has been created. */
+	private final long created;
+
+	private boolean helloReceived = false;
+
+	private volatile boolean helloTimedOut = false;
+
 	private final ClientInfo initialClientInfo;
 
+	/** Received messages waiting to get dispatched. */
+	private final MessageQueue inbox = new MessageQueue(INBOX_SIZE);
+
+	/** Reusable send buffer (guarded by {@link #dos}). */
+	private final BaOut out = new BaOut(256);
+
 	private final int initialPingInterval;
 
+	/**
+	 * Queues of messages to send, one per priority (see
+	 * {@link Message#getPriority()}). Also used as lock for the queues.
+	 */
+	private final Vector outbox[] = { new Vector(), new Vector(),
+			new Vector() };
+
 	private TimerTask ping;
 
+	/** The player to pass messages to (<code>null</code> while connecting). */
+	private Player player;
+
 	/** Flag indicating if a reconnect has chance to succeed. */
 	private boolean reconnect = true;
 
+	/** Maximum size of messages to receive (0 for no limit). */
+	private int maxMsgSize;
+
+	/** Player whose session to resume (may be <code>null</code>). */
+	private final Player resume;
+
+	/** Runtime shared with other connections (may be <code>null</code>). */
+	private final ConnectionRuntime runtime;
+
 	private final ISocket sock;
 
+	/**
+	 * Thread receiving messages (and setting up the connection) -
+	 * <code>null</code> if the runtime's receive driver does this.
+	 */
+	private final Thread receiver;
+
+	/**
+	 * Thread sending messages (<code>null</code> while connecting or if the
+	 * runtime's writer threads do this).
+	 */
+	private volatile Thread writer;
+
+	/**
+	 * Whether the connection has been set up, so that queued messages may be
+	 * written by the runtime's writer threads (guarded by {@link #outbox}).
+	 */
+	private boolean writable = false;
+
+	/**
+	 * Whether the connection waits for or is served by one of the runtime's
+	 * writer threads (guarded by {@link #outbox}).
+	 */
+	private boolean writing = false;
+
+	/**
+	 * Input for messages which get deserialized while receiving, owned by the
+	 * thread receiving for this connection. If a receive driver receives for
+	 * this connection, the input is borrowed from the runtime while receiving
+	 * a message (see {@link ConnectionRuntime#borrowInput()}).
+	 */
+	private BaIn stream;
+
 	/**
 	 * Create a new connection.
 	 * <p>
@@ -133,8 +363,10 @@ public final class Connection implements Runnable {
 	 * If the connection has been set up, a {@link Player} object is created and
 	 * received messages are passed to that player.
 	 * <p>
-	 * Notifications and messages are passed via the {@link MainLoop} thread to
-	 * decouple their handling from the receiver thread used by this connection.
+	 * Notifications and messages are passed via the {@link MainLoop}'s dispatch
+	 * lane to decouple their handling from the receiver thread used by this
+	 * connection. Received state, progress and item updates which get
+	 * superseded while waiting to get dispatched are dropped.
 	 * 
 	 * @param sock
 	 *            socket providing streams for the connection
@@ -150,23 +382,105 @@ public final class Connection implements Runnable {
 	public Connection(ISocket sock, IConnectionListener listener, int ping,
 			ClientInfo ci) {
 
+		this(sock, listener, ping, ci, null);
+	}
+
+	/**
+	 * Create a new connection which resumes the session of a player of a
+	 * previous, broken connection. Works like
+	 * {@link #Connection(ISocket, IConnectionListener, int, ClientInfo)} but
+	 * the session of <em>resume</em> is presented to the server and the
+	 * player of the new connection continues to use the state of
+	 * <em>resume</em> (see {@link Player#Player(Connection, PlayerInfo, Player)}).
+	 * 
+	 * @param resume
+	 *            the player whose session to resume (if <code>null</code>, a
+	 *            new session is started)
+	 */
+	public Connection(ISocket sock, IConnectionListener listener, int ping,
+			ClientInfo ci, Player resume) {
+
+		this(sock, listener, ping, ci, resume, null);
+	}
+
+	/**
+	 * Create a new connection which shares threads and buffers with other
+	 * connections. Works like
+	 * {@link #Connection(ISocket, IConnectionListener, int, ClientInfo, Player)}
+	 * but messages get written by the runtime's writer threads and, if the
+	 * runtime has a receive driver, there is no receiver thread - the driver
+	 * sets up the connection and receives messages instead (see
+	 * {@link ConnectionRuntime.IReceiveDriver}).
+	 * 
+	 * @param runtime
+	 *            the runtime to use (if <code>null</code>, the connection uses
+	 *            its own threads and buffers)
+	 */
+	public Connection(ISocket sock, IConnectionListener listener, int ping,
+			ClientInfo ci, Player resume, ConnectionRuntime runtime) {
+
+		this.resume = resume;
+		this.runtime = runtime;
+		this.created = System.currentTimeMillis();
 		this.sock = sock;
 		this.connectionListener = listener;
 		this.initialPingInterval = ping;
 		this.initialClientInfo = ci;
+		this.maxMsgSize = ci.getMaxMessageSize();
 
 		Log.ln("[CN] sock: " + sock);
 
 		dis = new DataInputStream(sock.getInputStream());
 		dos = new DataOutputStream(sock.getOutputStream());
 
-		new Thread(this).start();
+		if (runtime == null) {
+			stream = new BaIn(false);
+			receiver = newThread(this, "remuco-receiver");
+			receiver.start();
+		} else if (runtime.getDriver() == null) {
+			stream = new BaIn(false);
+			receiver = runtime.newThread(this, "remuco-receiver");
+			receiver.start();
+		} else {
+			receiver = null;
+			runtime.getDriver().start(this, sock);
+		}
+	}
+
+	/**
+	 * Set the factory which creates the threads of connections created
+	 * afterwards. Each connection uses 2 threads - one for setting up the
+	 * connection and receiving messages and one for sending messages. Both
+	 * threads end when the connection gets closed. Connections using a
+	 * {@link ConnectionRuntime} share the threads of the runtime instead.
+	 * 
+	 * @param factory
+	 *            the thread factory (if <code>null</code>, plain threads are
+	 *            used)
+	 */
+	public static void setThreadFactory(IThreadFactory factory) {
+		threadFactory = factory;
+	}
+
+	static Thread newThread(Runnable r, String name) {
+
+		final IThreadFactory factory = threadFactory;
+
+		if (factory != null) {
+			return factory.newThread(r, name);
+		} else {
+			return new Thread(r, name);
+		}
 	}
 
 	/**
 	 * Close the connection. If the connection is already closed, this method
 	 * has no effect. There will be no connection events for a
 	 * {@link IConnectionListener} after a call to this method.
+	 * <p>
+	 * Closing cancels all tasks of the connection (pings, pending writes) and
+	 * ends its threads, including a thread which is still setting up the
+	 * connection or waiting for the dispatcher to catch up.
 	 * 
 	 */
 	public void close() {
@@ -178,30 +492,134 @@ public final class Connection implements Runnable {
 		downPrivate();
 	}
 
+	/**
+	 * Get the time it took to set up this connection, i.e. the time between
+	 * creating this connection and having received the player info from the
+	 * server (which completes the handshake).
+	 * 
+	 * @return connect latency in milliseconds or -1 if the connection has not
+	 *         been set up (yet)
+	 */
+	public long getConnectLatency() {
+		return connectLatency;
+	}
+
+	/**
+	 * Get the number of received messages of a specific type which have been
+	 * dropped without dispatching because newer messages of the same type
+	 * superseded them.
+	 * 
+	 * @param id
+	 *            the message type ({@link Message#SYNC_ITEM},
+	 *            {@link Message#SYNC_PROGRESS} or {@link Message#SYNC_STATE})
+	 */
+	public int getConflatedMessages(int id) {
+		return inbox.getConflated(id);
+	}
+
+	/**
+	 * Get the number of received messages which have been dropped without
+	 * dispatching because newer messages superseded them (e.g. a state update
+	 * followed by another state update).
+	 */
+	public int getDroppedMessages() {
+		return inbox.getDropped();
+	}
+
 	public boolean isClosed() {
 		return closed;
 	}
 
-	public void run() {
+	/**
+	 * Receive one message and pass it to the dispatcher. Used by the receiver
+	 * thread and by receive drivers (see
+	 * {@link ConnectionRuntime.IReceiveDriver}), which must call
+	 * {@link #setUp()} before. Blocks until a message has been received
+	 * completely (but not on the dispatcher, see {@link MessageQueue}).
+	 * 
+	 * @return <code>true</code> if more messages may be received,
+	 *         <code>false</code> if the connection is down
+	 */
+	public boolean receive() {
+
+		if (closed) {
+			return false;
+		}
+
+		final Message m;
 
-		// delay startup a little bit to give UI a chance to update
 		try {
-			Thread.sleep(200);
-		} catch (InterruptedException e) {
+			m = recv();
+		} catch (UserException e) {
+			notifyDisconnected(e);
+			return false;
 		}
 
+		if (m.id == Message.IGNORE) {
+			return !closed;
+		}
+
+		// pass message to main loop, wake up dispatcher if idle (if this
+		// schedules a second dispatcher, it finds an empty inbox)
+
+		inbox.put(m);
+
+		if (!dispatching) {
+			dispatching = true;
+			MainLoop.schedule(new Dispatcher());
+		}
+
+		return !closed;
+	}
+
+	public void run() {
+
+		if (!setUp()) {
+			return;
+		}
+
+		while (receive()) { // loop receiving messages
+		}
+	}
+
+	/**
+	 * Set up the connection, i.e. receive the hello message, exchange client
+	 * and player info and notify the listener about the result. Used by the
+	 * receiver thread and by receive drivers (see
+	 * {@link ConnectionRuntime.IReceiveDriver}).
+	 * 
+	 * @return <code>true</code> if the connection has been set up,
+	 *         <code>false</code> if setting up the connection failed
+	 */
+	public boolean setUp() {
+
 		final PlayerInfo pinfo;
 
 		try {
 			pinfo = up();
 		} catch (UserException e) {
 			notifyDisconnected(e);
-			return;
+			return false;
+		}
+
+		connectLatency = System.currentTimeMillis() - created;
+
+		Log.ln("[CN] connected in " + connectLatency + "ms");
+
+		if (runtime == null) {
+			writer = newThread(new Writer(), "remuco-writer");
+			writer.start();
+		} else {
+			startWriting();
 		}
 
 		setPing(initialPingInterval);
 
-		final Player player = new Player(this, pinfo);
+		if (resume != null) {
+			player = new Player(this, pinfo, resume);
+		} else {
+			player = new Player(this, pinfo);
+		}
 
 		MainLoop.schedule(new TimerTask() {
 			public void run() {
@@ -209,40 +627,7 @@ public final class Connection implements Runnable {
 			}
 		});
 
-		while (!closed) { // loop receiving messages
-
-			final Message m;
-
-			try {
-				m = recv();
-			} catch (UserException e) {
-				notifyDisconnected(e);
-				return;
-			}
-
-			if (m.id == Message.IGNORE) {
-				continue;
-			}
-
-			// notify new message in main loop
-
-			MainLoop.schedule(new TimerTask() {
-				public void run() {
-					try {
-						player.handleMessage(m);
-					} catch (BinaryDataExecption e) {
-						notifyDisconnected("Connection Error",
-							"Received malformed data.", e);
-					} catch (OutOfMemoryError e) {
-						m.data = null;
-						notifyDisconnected("Memory Error",
-							"Received data too big.", null);
-					}
-				}
-			});
-
-		}
-
+		return true;
 	}
 
 	/**
@@ -261,13 +646,21 @@ public final class Connection implements Runnable {
 		final Message msg = new Message();
 
 		msg.id = Message.CONN_CINFO;
-		msg.data = Serial.out(ci);
+		msg.obj = ci;
+
+		maxMsgSize = ci.getMaxMessageSize();
 
 		send(msg);
 	}
 
 	/**
-	 * Sends a message.
+	 * Sends a message. The message gets queued and is written to the socket by
+	 * a dedicated writer thread (or one of the runtime's writer threads).
+	 * Queued messages are written by priority (see
+	 * {@link Message#getPriority()}), so controls and connection messages do
+	 * not wait for requests or background messages sent before. Messages of
+	 * the same priority are written in order. A message which is already queued is not queued again
+	 * (e.g. pings while a slow write blocks the writer).
 	 * <p>
 	 * If sending fails, the listener set in
 	 * {@link #Connection(ISocket, IConnectionListener, int)} is notified using
@@ -278,19 +671,59 @@ public final class Connection implements Runnable {
 	 */
 	public void send(Message m) {
 
-		synchronized (dos) {
+		synchronized (outbox) {
 
 			if (closed)
 				return;
 
-			try {
-				sendPrivate(m);
-			} catch (IOException e) {
-				Log.ln("[CN] connection broken", e);
-				downPrivate();
-				notifyDisconnected("Connection broken",
-					"IO Error while sending data.", e);
+			final Vector queue = outbox[m.getPriority()];
+
+			if (queue.contains(m)) {
+				return;
+			}
+
+			queue.addElement(m);
 
+			if (runtime == null) {
+				outbox.notify();
+				return;
+			}
+			if (!writable || writing) {
+				return;
+			}
+			writing = true;
+		}
+
+		runtime.write(this);
+	}
+
+	/**
+	 * Set the outbound coalescing window. If greater than 0, messages sent
+	 * within <em>window</em> milliseconds after a first message are collected
+	 * and written to the socket together with a single write. This reduces
+	 * the number of packets when sending bursts of messages (e.g. repeated
+	 * volume changes) but delays each message by up to <em>window</em>
+	 * milliseconds.
+	 * 
+	 * @param window
+	 *            in milliseconds (0 disables coalescing, which is the
+	 *            default)
+	 */
+	public void setCoalescing(int window) {
+
+		synchronized (dos) {
+			coalescing = window > 0 ? window : 0;
+			if (coalescing == 0 && flush != null) {
+				flush.cancel();
+				flush = null;
+				try {
+					flushPrivate();
+				} catch (IOException e) {
+					Log.ln("[CN] connection broken", e);
+					downPrivate();
+					notifyDisconnected("Connection broken",
+						"IO Error while sending data.", e);
+				}
 			}
 		}
 	}
@@ -310,7 +743,8 @@ public final class Connection implements Runnable {
 
 		if (interval > 0) {
 			ping = new PingTask();
-			MainLoop.schedule(ping, interval * 1000, interval * 1000);
+			MainLoop.schedule(MainLoop.LANE_PERIODIC, ping, interval * 1000,
+				interval * 1000);
 		}
 	}
 
@@ -318,11 +752,56 @@ public final class Connection implements Runnable {
 
 		closed = true;
 
-		Log.ln("[CN] going down");
+		Log.ln("[CN] going down (conflated: items "
+				+ inbox.getConflated(Message.SYNC_ITEM) + ", progress "
+				+ inbox.getConflated(Message.SYNC_PROGRESS) + ", states "
+				+ inbox.getConflated(Message.SYNC_STATE) + ")");
 
 		setPing(0);
 
+		if (flush != null) {
+			flush.cancel();
+			flush = null;
+		}
+
+		synchronized (outbox) {
+			for (int i = 0; i < outbox.length; i++) {
+				outbox[i].removeAllElements();
+			}
+			outbox.notify(); // let the writer exit
+		}
+
 		sock.close();
+
+		// wake up threads possibly blocked elsewhere (in the writer's wait),
+		// they see the closed flag and end
+
+		if (receiver != null && Thread.currentThread() != receiver) {
+			receiver.interrupt();
+		}
+		final Thread w = writer;
+		if (w != null && Thread.currentThread() != w) {
+			w.interrupt();
+		}
+	}
+
+	/**
+	 * Remove the next message to send from the outbox. Must be called with the
+	 * lock on {@link #outbox} held.
+	 * 
+	 * @return the message with the highest priority or <code>null</code> if
+	 *         there are no messages to send
+	 */
+	private Message dequeue() {
+
+		for (int i = 0; i < outbox.length; i++) {
+			if (!outbox[i].isEmpty()) {
+				final Message m = (Message) outbox[i].elementAt(0);
+				outbox[i].removeElementAt(0);
+				return m;
+			}
+		}
+		return null;
 	}
 
 	/** See {@link #notifyDisconnected(UserException)}. */
@@ -413,14 +892,33 @@ public final class Connection implements Runnable {
 
 			if (size > 0) {
 
+				if (receiver == null) {
+					stream = runtime.borrowInput();
+				}
+
 				try {
-					m.data = new byte[size]; // may throw OutOfMemoryError
-					dis.readFully(m.data);
+					recvData(m, size);
+				} catch (BinaryDataExecption e) {
+					Log.ln("[CN] rxed malformed data", e);
+					downPrivate();
+					throw new UserException("Connection Error",
+							"Received malformed data.", e);
 				} catch (OutOfMemoryError e) {
 					m.id = Message.IGNORE;
-					m.data = null;
-					Log.ln("[CN] out of mem, try to skip " + size + "B)");
-					skip(size);
+					m.obj = null;
+					Log.ln("[CN] out of mem, skip rest of msg");
+					try {
+						stream.discard();
+					} catch (BinaryDataExecption be) {
+						downPrivate();
+						throw new UserException("Connection broken",
+								"IO error while receiving data.", be);
+					}
+				} finally {
+					if (receiver == null) {
+						runtime.releaseInput(stream);
+						stream = null;
+					}
 				}
 			}
 
@@ -448,86 +946,207 @@ public final class Connection implements Runnable {
 
 	}
 
-	/** Send a message without exception handling. */
-	private void sendPrivate(Message m) throws IOException {
+	/**
+	 * Receives the data of a message. Request replies are deserialized
+	 * directly while reading them (see {@link Player#decodeReply(Message, BaIn)}
+	 * ). Other messages are read into {@link Message#data}, unless they exceed
+	 * the maximum message size or there is not enough memory - in that case
+	 * item messages are read without their image and any other messages are
+	 * discarded. Either way, exactly <em>size</em> bytes are read, so the
+	 * stream stays in sync.
+	 * 
+	 * @param m
+	 *            the message (ID already set)
+	 * @param size
+	 *            the size of the message data
+	 * @throws BinaryDataExecption
+	 *             if the message is malformed or reading fails
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	private void recvData(Message m, int size) throws BinaryDataExecption,
+			IOException {
+
+		if (player != null && Message.isRequest(m.id)) {
+			player.decodeReply(m, stream.wrap(dis, size));
+			return;
+		}
+
+		// the size limit does not apply to the handshake (no player yet), the
+		// player info is needed in any case
 
-		Log.ln("[CN] send msg: " + m.id + ", "
-				+ (m.data != null ? m.data.length : 0) + "B");
+		if (player == null || maxMsgSize == 0 || size <= maxMsgSize) {
+			try {
+				m.data = new byte[size];
+			} catch (OutOfMemoryError e) {
+				m.data = null;
+				Log.ln("[CN] out of mem for " + size + "B");
+			}
+			if (m.data != null) {
+				dis.readFully(m.data);
+				return;
+			}
+		}
 
-		dos.writeShort(m.id);
-		if (m.data != null) {
-			dos.writeInt(m.data.length);
-			dos.write(m.data);
+		stream.wrap(dis, size);
+
+		if (player != null && m.id == Message.SYNC_ITEM) {
+			Log.ln("[CN] item msg too big, drop image");
+			player.decodeItemDegraded(m, stream);
 		} else {
-			dos.writeInt(0);
+			Log.ln("[CN] msg too big, skip " + size + "B");
+			stream.discard();
+			m.id = Message.IGNORE;
 		}
-		dos.flush();
+	}
 
-		Log.ln("[CN] send msg: done");
+	/**
+	 * Writes all messages assembled in {@link #out} to the socket at once.
+	 * Must be called with the lock on {@link #dos} held.
+	 */
+	private void flushPrivate() throws IOException {
+
+		if (out.size() == 0) {
+			return;
+		}
+
+		out.writeTo(dos);
+		dos.flush();
+		out.reset();
 	}
 
-	private void skip(int num) throws IOException {
+	/** Must be called with the lock on {@link #outbox} held. */
+	private boolean isOutboxEmpty() {
 
-		long rest = num;
-		while (rest > 0) {
-			Tools.sleep(20);
-			final long avail = dis.available();
-			if (avail == 0) {
-				break;
+		for (int i = 0; i < outbox.length; i++) {
+			if (!outbox[i].isEmpty()) {
+				return false;
 			}
-			rest -= dis.skip(Math.min(avail, 10240));
 		}
-		;
-		Log.ln("[CN] skipped " + (num - rest) + "B");
-
+		return true;
 	}
 
 	/**
-	 * This method blocks until the <i>HELLO</i> message has been received, but
-	 * waiting time is limited to {@link #HELLO_TIMEOUT}.
-	 * <p>
-	 * When this method returns, {@link Message}s can be sent and received with
-	 * {@link #send(Message)} and {@link #recv(Message)}.
+	 * Send a message without exception handling. The message header and data
+	 * get assembled in {@link #out} and written at once - either immediately
+	 * or, if coalescing is enabled, together with other messages sent within
+	 * the coalescing window.
 	 * 
-	 * @throws UserException
-	 *             if connecting fails
+	 * @param m
+	 *            the message to send
+	 * @param more
+	 *            if <code>true</code>, more messages are about to be sent
+	 *            immediately, so writing gets deferred to the last of them
 	 */
-	private PlayerInfo up() throws UserException {
+	private void sendPrivate(Message m, boolean more) throws IOException {
 
-		// ////// wait until there is enough data for hello message ////// //
+		out.beginMessage(m.id);
+		if (m.obj != null) {
+			Serial.out(m.obj, out);
+		} else if (m.data != null) {
+			out.write(m.data);
+		}
+		final int len = out.endMessage();
 
-		int n = 0, wait = 0;
+		Log.ln("[CN] send msg: " + m.id + ", " + len + "B");
 
-		while (wait < HELLO_TIMEOUT && n < HELLO_LEN) {
+		if (more) {
+			return; // gets written together with the next message
+		}
 
-			try {
+		if (coalescing == 0) {
+			flushPrivate();
+		} else if (flush == null) {
+			flush = new FlushTask();
+			MainLoop.schedule(MainLoop.LANE_IO, flush, coalescing);
+		}
 
-				n = dis.available();
+		Log.ln("[CN] send msg: done");
+	}
 
-			} catch (IOException e) {
+	/**
+	 * Let the runtime's writer threads write messages which have been queued
+	 * while connecting (and any messages queued from now on).
+	 */
+	private void startWriting() {
 
-				Log.ln("[CN] waiting for hello msg failed", e);
-				downPrivate();
-				throw new UserException("Connecting failed",
-						"IO error while waiting for the hello message.", e);
+		synchronized (outbox) {
+			writable = true;
+			if (writing || isOutboxEmpty()) {
+				return;
 			}
+			writing = true;
+		}
 
-			Tools.sleep(HELLO_TIMEOUT / 10);
+		runtime.write(this);
+	}
 
-			wait += HELLO_TIMEOUT / 10;
-		}
+	/**
+	 * Write queued messages, highest priority first. Called by the runtime's
+	 * writer threads, which take turns in serving connections.
+	 * 
+	 * @param max
+	 *            maximum number of messages to write in this turn
+	 * @return <code>true</code> if there may be more messages to write (the
+	 *         connection wants another turn), <code>false</code> if the outbox
+	 *         is empty or the connection is down
+	 */
+	boolean write(int max) {
 
-		if (n < HELLO_LEN) {
+		for (int i = 0; i < max; i++) {
 
-			Log.ln("[CN] not enough data for hello msg (need " + HELLO_LEN
-					+ "B, only " + n + "B available)");
-			downPrivate();
-			throw new UserException("Connecting failed",
-					"Timeout while waiting for the hello message.");
+			final Message m;
+			final boolean more;
+
+			synchronized (outbox) {
+				m = closed ? null : dequeue();
+				if (m == null) {
+					writing = false;
+					return false;
+				}
+				more = !isOutboxEmpty();
+			}
+
+			synchronized (dos) {
+				if (closed) {
+					return false;
+				}
+				try {
+					sendPrivate(m, more);
+				} catch (IOException e) {
+					Log.ln("[CN] connection broken", e);
+					downPrivate();
+					notifyDisconnected("Connection broken",
+						"IO Error while sending data.", e);
+					return false;
+				}
+			}
 		}
 
+		return true;
+	}
+
+	/**
+	 * This method blocks until the <i>HELLO</i> message has been received, but
+	 * waiting time is limited to {@link #HELLO_TIMEOUT}. Reading starts
+	 * immediately - on timeout, the socket gets closed by a watchdog task which
+	 * aborts the pending read (this works with any {@link ISocket}, regardless
+	 * of read timeout support of the underlying transport).
+	 * <p>
+	 * When this method returns, {@link Message}s can be sent and received with
+	 * {@link #send(Message)} and {@link #recv(Message)}.
+	 * 
+	 * @throws UserException
+	 *             if connecting fails
+	 */
+	private PlayerInfo up() throws UserException {
+
 		// ////// read hello message ////// //
 
+		final TimerTask watchdog = new HelloTimeoutTask();
+
+		MainLoop.schedule(MainLoop.LANE_PERIODIC, watchdog, HELLO_TIMEOUT);
+
 		try {
 
 			if (readAndCompare(PREFIX) < 0) {
@@ -558,17 +1177,36 @@ public final class Connection implements Runnable {
 		} catch (IOException e) {
 			Log.ln("[CN] rx'ing hello msg failed", e);
 			downPrivate();
+			if (helloTimedOut) {
+				throw new UserException("Connecting failed",
+						"Timeout while waiting for the hello message.");
+			}
 			throw new UserException("Connecting failed",
 					"IO error while receiving the hello message.", e);
+		} finally {
+			synchronized (watchdog) {
+				helloReceived = true;
+			}
+			watchdog.cancel();
 		}
 
 		final Message msgCI = new Message();
 
 		msgCI.id = Message.CONN_CINFO;
-		msgCI.data = Serial.out(initialClientInfo);
+		msgCI.obj = initialClientInfo;
+
+		if (resume != null) {
+			initialClientInfo.setSession(resume.getSession(),
+				resume.item.getId());
+		} else {
+			initialClientInfo.setSession(null, null);
+		}
 
 		try {
-			sendPrivate(msgCI);
+			synchronized (dos) {
+				sendPrivate(msgCI, false);
+				flushPrivate(); // don't delay the handshake
+			}
 		} catch (IOException e) {
 			downPrivate();
 			throw new UserException("Connecting failed",
@@ -577,6 +1215,18 @@ public final class Connection implements Runnable {
 
 		final Message msgPI = recv();
 
+		if (msgPI.id == Message.IGNORE) { // skipped, not enough memory
+			downPrivate();
+			throw new UserException("Connecting failed",
+					"Received player description is too large.");
+		}
+
+		if (msgPI.data == null) {
+			downPrivate();
+			throw new UserException("Connecting failed",
+					"Received player description is missing.");
+		}
+
 		final PlayerInfo pinfo = new PlayerInfo();
 
 		try {
@@ -0,0 +1,296 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ * 
+ *   This file is part of Remuco.
+ * 
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ * 
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ * 
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.io;
+
+import java.util.Vector;
+
+import remuco.client.common.MainLoop;
+import remuco.client.common.io.Connection.IThreadFactory;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.util.Log;
+
+/**
+ * Shares threads and buffers among many connections, e.g. the connections of
+ * a {@link PlayerPool}. Without a runtime, each {@link Connection} uses its
+ * own receiver and writer thread and a {@link Reconnector} creates sockets in
+ * the {@link MainLoop}'s I/O lane. Connections using a runtime share:
+ * <ul>
+ * <li><b>connect threads</b> - reconnectors create sockets in one of these
+ * threads, so a blocking connect to an unreachable server neither blocks
+ * connects to other servers nor the main loop's I/O lane,</li>
+ * <li><b>writer threads</b> - connections with queued messages take turns in
+ * writing them, so the number of threads does not grow with the number of
+ * connections,</li>
+ * <li><b>receiving</b> - blocking reads on an {@link ISocket} need a thread
+ * per connection (there is no readiness notification in CLDC), so by default
+ * each connection still has its own receiver thread; a
+ * {@link IReceiveDriver} may instead receive for all connections with a few
+ * threads, e.g. using a selector on platforms which have one,</li>
+ * <li><b>receive buffers</b> - inputs for messages decoded while receiving
+ * belong to the receiving thread: a connection's own receiver thread keeps
+ * one input, threads of a receive driver borrow one from the runtime for
+ * each message, so there are never more inputs than threads receiving
+ * concurrently. Players decode dispatched messages with their own input.</li>
+ * </ul>
+ * A runtime's threads are created on demand (up to the configured maximum)
+ * and end on {@link #shutdown()}.
+ */
+public final class ConnectionRuntime {
+
+	/**
+	 * Interface for classes which receive messages for connections without
+	 * using a thread per connection.
+	 */
+	public interface IReceiveDriver {
+
+		/**
+		 * Start receiving for a new connection. The driver must call
+		 * {@link Connection#setUp()} once and then, as long as it returns
+		 * <code>true</code>, {@link Connection#receive()} whenever a complete
+		 * message is available on the connection's socket (or the socket has
+		 * been closed by the other side). Calls for one connection must not
+		 * overlap, calls for different connections may run concurrently.
+		 * <p>
+		 * Note that setting up a connection blocks until the server has sent
+		 * its hello message and player info (or the hello timeout passed).
+		 * Receiving does not block on a full inbox (see
+		 * {@link MessageQueue}).
+		 * 
+		 * @param conn
+		 *            the new connection
+		 * @param sock
+		 *            the connection's socket (as passed to the connection)
+		 */
+		public void start(Connection conn, ISocket sock);
+
+	}
+
+	/** Runs jobs from a queue until the runtime shuts down. */
+	private class Worker implements Runnable {
+
+		private final int index;
+
+		private final Vector jobs;
+
+		public Worker(Vector jobs) {
+			this.jobs = jobs;
+			this.index = jobs == writes ? 1 : 0;
+		}
+
+		public void run() {
+
+			while (true) {
+
+				final Object job;
+
+				synchronized (jobs) {
+					while (!down && jobs.isEmpty()) {
+						idle[index]++;
+						try {
+							jobs.wait();
+						} catch (InterruptedException e) {
+						}
+						idle[index]--;
+					}
+					if (down) {
+						return;
+					}
+					job = jobs.elementAt(0);
+					jobs.removeElementAt(0);
+				}
+
+				try {
+					if (job instanceof Connection) {
+						final Connection conn = (Connection) job;
+						if (conn.write(WRITE_BATCH)) {
+							enqueue(writes, conn, maxWriters, "remuco-writer");
+						}
+					} else {
+						((Runnable) job).run();
+					}
+				} catch (RuntimeException e) {
+					Log.ln("[RT] job failed", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maximum number of messages a connection writes before other connections
+	 * get their turn.
+	 */
+	private static final int WRITE_BATCH = 16;
+
+	/** Queued connect jobs ({@link Runnable}s). */
+	private final Vector connects = new Vector();
+
+	private volatile boolean down = false;
+
+	private final IReceiveDriver driver;
+
+	/** Number of idle connect and writer threads (guarded by the queues). */
+	private final int idle[] = { 0, 0 };
+
+	/** Inputs for request replies which currently are not in use. */
+	private final Vector inputs = new Vector();
+
+	private final int maxConnecters, maxWriters;
+
+	/** Number of running connect and writer threads (guarded by the queues). */
+	private final int threads[] = { 0, 0 };
+
+	private final IThreadFactory threadFactory;
+
+	/** Connections with messages to write ({@link Connection}s). */
+	private final Vector writes = new Vector();
+
+	/**
+	 * Create a new runtime.
+	 * 
+	 * @param connecters
+	 *            maximum number of concurrent connect attempts
+	 * @param writers
+	 *            maximum number of threads writing messages
+	 * @param factory
+	 *            factory for the runtime's threads and receiver threads (if
+	 *            <code>null</code>, the factory set with
+	 *            {@link Connection#setThreadFactory(IThreadFactory)} is used)
+	 * @param driver
+	 *            receives for all connections (if <code>null</code>, each
+	 *            connection uses its own receiver thread)
+	 */
+	public ConnectionRuntime(int connecters, int writers,
+			IThreadFactory factory, IReceiveDriver driver) {
+
+		this.maxConnecters = Math.max(connecters, 1);
+		this.maxWriters = Math.max(writers, 1);
+		this.threadFactory = factory;
+		this.driver = driver;
+	}
+
+	/**
+	 * Run a connect job in one of the runtime's connect threads. Jobs get
+	 * queued if all connect threads are busy.
+	 * 
+	 * @param job
+	 *            the job to run
+	 */
+	public void execute(Runnable job) {
+		enqueue(connects, job, maxConnecters, "remuco-connect");
+	}
+
+	/**
+	 * Shut down the runtime. Idle threads end immediately, busy threads when
+	 * their current job is done. Connections using this runtime should be
+	 * closed before.
+	 */
+	public void shutdown() {
+
+		synchronized (connects) {
+			down = true;
+			connects.removeAllElements();
+			connects.notifyAll();
+		}
+		synchronized (writes) {
+			down = true;
+			writes.removeAllElements();
+			writes.notifyAll();
+		}
+	}
+
+	/**
+	 * Get an input for a message to decode while receiving it in a thread of
+	 * the receive driver. Return it with {@link #releaseInput(BaIn)} once the
+	 * message has been received.
+	 */
+	BaIn borrowInput() {
+
+		synchronized (inputs) {
+			if (!inputs.isEmpty()) {
+				final BaIn in = (BaIn) inputs.lastElement();
+				inputs.removeElementAt(inputs.size() - 1);
+				return in;
+			}
+		}
+		return new BaIn(false);
+	}
+
+	/** Get the receive driver (<code>null</code> if there is none). */
+	IReceiveDriver getDriver() {
+		return driver;
+	}
+
+	/**
+	 * Create a thread using the runtime's thread factory (or the connections'
+	 * default thread factory).
+	 */
+	Thread newThread(Runnable r, String name) {
+
+		if (threadFactory != null) {
+			return threadFactory.newThread(r, name);
+		} else {
+			return Connection.newThread(r, name);
+		}
+	}
+
+	/** Return an input borrowed with {@link #borrowInput()}. */
+	void releaseInput(BaIn in) {
+
+		synchronized (inputs) {
+			inputs.addElement(in);
+		}
+	}
+
+	/**
+	 * Let a connection write its queued messages in one of the runtime's
+	 * writer threads.
+	 */
+	void write(Connection conn) {
+		enqueue(writes, conn, maxWriters, "remuco-writer");
+	}
+
+	/**
+	 * Queue a job and wake up an idle thread - or start a new one if there is
+	 * no idle thread and the maximum number of threads has not been reached.
+	 */
+	private void enqueue(Vector jobs, Object job, int max, String name) {
+
+		final int i = jobs == writes ? 1 : 0;
+
+		synchronized (jobs) {
+			if (down) {
+				return;
+			}
+			jobs.addElement(job);
+			if (jobs.size() <= idle[i]) {
+				jobs.notify();
+				return;
+			}
+			if (threads[i] == max) {
+				return; // picked up by the next thread getting idle
+			}
+			threads[i]++;
+		}
+
+		newThread(new Worker(jobs), name).start();
+	}
+
+}
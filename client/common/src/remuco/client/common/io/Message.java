@@ -20,6 +20,7 @@
  */
 package remuco.client.common.io;
 
+import remuco.client.common.serial.ISerializable;
 import remuco.client.common.serial.Serial;
 
 /**
@@ -56,6 +57,7 @@ public final class Message {
 	public static final int CTRL_SHUFFLE = CTRL + 6;
 	public static final int CTRL_FULLSCREEN = CTRL + 7;
 	public static final int CTRL_RATE = CTRL + 8;
+	public static final int CTRL_VOLUME_SET = CTRL + 9;
 	public static final int CTRL_TAG = CTRL + 30;
 	public static final int CTRL_NAVIGATE = CTRL + 40;
 	public static final int CTRL_SHUTDOWN = CTRL + 90;
@@ -77,10 +79,25 @@ public final class Message {
 	public static final int REQ_FILES = REQ + 4;
 	public static final int REQ_SEARCH = REQ + 5;
 
+	/** Priority of connection, control and action messages (highest). */
+	public static final int PRIO_CONTROL = 0;
+
+	/** Priority of request messages. */
+	public static final int PRIO_REQUEST = 1;
+
+	/** Priority of background messages (lowest). */
+	public static final int PRIO_BACKGROUND = 2;
+
 	public static boolean isRequest(int id) {
 		return id >= REQ && id < REQ + 100;
 	}
-	
+
+	/**
+	 * Flag for messages to send with {@link #PRIO_BACKGROUND} regardless of
+	 * their ID (e.g. prefetching requests).
+	 */
+	public boolean background = false;
+
 	/**
 	 * ID / type of the message. See constants <code>ID_...</code>
 	 */
@@ -94,10 +111,38 @@ public final class Message {
 	 */
 	public byte[] data = null;
 
+	/**
+	 * Message data in deserialized form. This is set instead of {@link #data}
+	 * for received messages which have been deserialized directly while
+	 * receiving them. For messages to send, this may be set instead of
+	 * {@link #data} to get the data serialized directly into the connection's
+	 * send buffer.
+	 */
+	public ISerializable obj = null;
+
 	/** Creates a new message with id {@link #IGNORE} and no data. */
 	public Message() {
 	}
 
+	/**
+	 * Get the priority of this message when sending it. Connection related
+	 * messages (e.g. a client info, which affects replies to subsequent
+	 * requests), controls and actions are sent first, then requests, then
+	 * background messages (pings and messages flagged as {@link #background}).
+	 * 
+	 * @return one of the <code>PRIO_...</code> constants
+	 */
+	public int getPriority() {
+
+		if (background || id == IGNORE) {
+			return PRIO_BACKGROUND;
+		}
+		if (isRequest(id)) {
+			return PRIO_REQUEST;
+		}
+		return PRIO_CONTROL;
+	}
+
 	public String toString() {
 		int len = data == null ? 0 : data.length;
 		return "(id: " + id + ", data: " + len + ")";
@@ -0,0 +1,462 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.io;
+
+import java.util.Vector;
+
+import remuco.client.common.serial.SerialAtom;
+
+/**
+ * Queue passing received messages from a connection's receiver thread
+ * (the only producer) to the thread dispatching them (the only consumer).
+ * <p>
+ * The queue is a ring buffer which works without locks: the producer only
+ * writes {@link #tail}, the consumer only writes {@link #head} and both
+ * indices are volatile, so a message stored in the ring is visible to the
+ * consumer once the producer has moved on the tail.
+ * <p>
+ * The producer never blocks, so a slow consumer cannot stall receiving (and
+ * with it the connection's watchdogs or other connections served by the same
+ * receive driver). If the ring is full, messages go to an overflow list
+ * (guarded by a lock) until the consumer has taken all of them. Within the
+ * overflow list, synchronization messages get conflated when they are added,
+ * so the list only grows with messages which cannot be superseded, like
+ * request replies.
+ * <p>
+ * Synchronization messages (player state, progress and current item) only
+ * describe the latest state of the player, so they are superseded by newer
+ * messages of the same kind (conflation): when the consumer takes such a
+ * message and there already is a newer message of the same kind in the
+ * queue, the message is not dispatched - without deserializing it. This saves
+ * decoding images of items which have been skipped quickly.
+ * <p>
+ * State and progress messages may be in delta format, where fields missing
+ * in a message keep their previous values (see
+ * {@link remuco.client.common.data.State}). Such a message gets merged into
+ * the newer message (fields of the newer message win), so no field change
+ * gets lost.
+ */
+final class MessageQueue {
+
+	/** Maximum number of fields in a message in delta format. */
+	private static final int DELTA_FIELDS_MAX = 16;
+
+	/**
+	 * Merge two messages in full or delta format into one message in delta
+	 * format. Supports messages whose fields are of a fixed size only.
+	 * 
+	 * @param older
+	 *            the older message's data
+	 * @param newer
+	 *            the newer message's data
+	 * @return the merged data (fields of the newer message win), or
+	 *         <code>null</code> if the data cannot be merged
+	 */
+	static byte[] merge(byte older[], byte newer[]) {
+
+		final int offNewer[] = new int[DELTA_FIELDS_MAX];
+		final int maskNewer = parse(newer, offNewer);
+
+		if (maskNewer < 0) {
+			return null;
+		}
+		if (newer[0] != SerialAtom.TYPE_N) {
+			return newer; // full format, contains all fields
+		}
+
+		final int offOlder[] = new int[DELTA_FIELDS_MAX];
+		final int maskOlder = parse(older, offOlder);
+
+		if (maskOlder < 0) {
+			return null;
+		}
+
+		final int mask = maskOlder | maskNewer;
+
+		int len = 3;
+		for (int i = 0; i < DELTA_FIELDS_MAX; i++) {
+			if ((maskNewer & (1 << i)) != 0) {
+				len += sizeOf(newer[offNewer[i]]);
+			} else if ((maskOlder & (1 << i)) != 0) {
+				len += sizeOf(older[offOlder[i]]);
+			}
+		}
+
+		final byte merged[] = new byte[len];
+
+		merged[0] = SerialAtom.TYPE_N;
+		merged[1] = (byte) (mask >> 8);
+		merged[2] = (byte) mask;
+
+		int off = 3;
+		for (int i = 0; i < DELTA_FIELDS_MAX; i++) {
+			final byte src[];
+			final int srcOff;
+			if ((maskNewer & (1 << i)) != 0) {
+				src = newer;
+				srcOff = offNewer[i];
+			} else if ((maskOlder & (1 << i)) != 0) {
+				src = older;
+				srcOff = offOlder[i];
+			} else {
+				continue;
+			}
+			final int size = sizeOf(src[srcOff]);
+			System.arraycopy(src, srcOff, merged, off, size);
+			off += size;
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Locate the fields of a message in full or delta format.
+	 * 
+	 * @param data
+	 *            the message data
+	 * @param offsets
+	 *            receives the offset of each field present (indexed by field
+	 *            number)
+	 * @return bit mask of the fields present, or -1 if the data is malformed
+	 *         or contains fields of variable size
+	 */
+	private static int parse(byte data[], int offsets[]) {
+
+		if (data == null || data.length == 0) {
+			return -1;
+		}
+
+		int off = 0;
+		int mask;
+
+		if (data[0] == SerialAtom.TYPE_N) {
+			if (data.length < 3) {
+				return -1;
+			}
+			mask = ((data[1] & 0xff) << 8 | (data[2] & 0xff)) & 0xffff;
+			off = 3;
+		} else {
+			mask = -1; // full format, all fields until the end
+		}
+
+		int present = 0;
+
+		for (int i = 0; i < DELTA_FIELDS_MAX && off < data.length; i++) {
+			if ((mask & (1 << i)) == 0) {
+				continue;
+			}
+			final int size = sizeOf(data[off]);
+			if (size < 0 || off + size > data.length) {
+				return -1;
+			}
+			offsets[i] = off;
+			present |= 1 << i;
+			off += size;
+		}
+
+		if (off != data.length) {
+			return -1; // too many fields or fields missing
+		}
+		if (mask != -1 && present != mask) {
+			return -1;
+		}
+
+		return present;
+	}
+
+	/**
+	 * Get the size of a serialized field of a fixed size type (including the
+	 * type code).
+	 * 
+	 * @return the size or -1 if the type has no fixed size
+	 */
+	private static int sizeOf(int type) {
+
+		switch (type) {
+		case SerialAtom.TYPE_Y:
+		case SerialAtom.TYPE_B:
+			return 2;
+		case SerialAtom.TYPE_N:
+			return 3;
+		case SerialAtom.TYPE_I:
+			return 5;
+		case SerialAtom.TYPE_X:
+			return 9;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Number of conflated item messages. Like the other counters, written by
+	 * the consumer only (so incrementing needs no lock) and read by any
+	 * thread.
+	 */
+	private volatile int conflatedItems = 0;
+
+	private volatile int conflatedProgress = 0;
+
+	private volatile int conflatedStates = 0;
+
+	/** Index of the next message to take (written by the consumer only). */
+	private volatile int head = 0;
+
+	private final int mask;
+
+	/**
+	 * Messages put while the ring was full, oldest first. Also used as lock
+	 * for the list and for {@link #overflowConflated}.
+	 */
+	private final Vector overflow = new Vector();
+
+	/**
+	 * Number of messages conflated in the {@link #overflow} list (written by
+	 * the producer).
+	 */
+	private int overflowConflated = 0;
+
+	/**
+	 * Whether there are messages in the {@link #overflow} list. Set by the
+	 * producer, cleared by the consumer once it has taken all of them (both
+	 * with the lock on the list held).
+	 */
+	private volatile boolean overflowing = false;
+
+	private final Message ring[];
+
+	/** Index of the next free slot (written by the producer only). */
+	private volatile int tail = 0;
+
+	/**
+	 * Create a new queue.
+	 * 
+	 * @param capacity
+	 *            the number of messages the ring holds before messages go to
+	 *            the overflow list (rounded up to a power of 2)
+	 */
+	public MessageQueue(int capacity) {
+
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		ring = new Message[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Get the number of messages of a specific type not dispatched because
+	 * they have been superseded by newer messages of the same type (state and
+	 * progress messages in delta format count once merged into the newer
+	 * message).
+	 * 
+	 * @param id
+	 *            the message type ({@link Message#SYNC_ITEM},
+	 *            {@link Message#SYNC_PROGRESS} or {@link Message#SYNC_STATE})
+	 */
+	public int getConflated(int id) {
+
+		switch (id) {
+		case Message.SYNC_ITEM:
+			return conflatedItems;
+		case Message.SYNC_PROGRESS:
+			return conflatedProgress;
+		case Message.SYNC_STATE:
+			return conflatedStates;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Get the number of messages dropped because they have been superseded by
+	 * newer messages.
+	 */
+	public int getDropped() {
+
+		final int n;
+		synchronized (overflow) {
+			n = overflowConflated;
+		}
+		return conflatedItems + conflatedProgress + conflatedStates + n;
+	}
+
+	/** Check if the queue is empty. */
+	public boolean isEmpty() {
+		return head == tail && !overflowing;
+	}
+
+	/**
+	 * Take the next message which has not been superseded. To be called by the
+	 * consumer.
+	 * 
+	 * @return the message or <code>null</code> if the queue is empty
+	 */
+	public Message poll() {
+
+		while (true) {
+
+			final int h = head;
+			final int t = tail;
+
+			if (h == t) {
+				return overflowing ? pollOverflow() : null;
+			}
+
+			final Message m = ring[h & mask];
+
+			final boolean superseded = conflate(m, h + 1, t);
+
+			ring[h & mask] = null;
+			head = h + 1;
+
+			if (!superseded) {
+				return m;
+			}
+		}
+	}
+
+	/**
+	 * Put a message into the queue. Never blocks - if the ring is full, the
+	 * message goes to the overflow list. To be called by the producer.
+	 */
+	public void put(Message m) {
+
+		final int t = tail;
+
+		if (!overflowing && t - head < ring.length) {
+			ring[t & mask] = m;
+			tail = t + 1;
+			return;
+		}
+
+		synchronized (overflow) {
+			conflateOverflow(m);
+			overflow.addElement(m);
+			overflowing = true;
+		}
+	}
+
+	/**
+	 * Conflate a message to add to the overflow list with an older message of
+	 * the same kind in the list. Must be called with the lock on
+	 * {@link #overflow} held.
+	 */
+	private void conflateOverflow(Message m) {
+
+		if (m.id != Message.SYNC_ITEM && m.id != Message.SYNC_PROGRESS
+				&& m.id != Message.SYNC_STATE) {
+			return;
+		}
+
+		for (int i = overflow.size() - 1; i >= 0; i--) {
+			final Message older = (Message) overflow.elementAt(i);
+			if (older.id != m.id) {
+				continue;
+			}
+			if (m.id != Message.SYNC_ITEM) {
+				final byte merged[] = merge(older.data, m.data);
+				if (merged == null) {
+					return; // keep both
+				}
+				m.data = merged;
+			}
+			overflow.removeElementAt(i);
+			overflowConflated++;
+			return;
+		}
+	}
+
+	/**
+	 * Take the oldest message from the overflow list. To be called by the
+	 * consumer once the ring is empty.
+	 */
+	private Message pollOverflow() {
+
+		synchronized (overflow) {
+			if (overflow.isEmpty()) {
+				overflowing = false;
+				return null;
+			}
+			final Message m = (Message) overflow.elementAt(0);
+			overflow.removeElementAt(0);
+			if (overflow.isEmpty()) {
+				overflowing = false;
+			}
+			return m;
+		}
+	}
+
+	/**
+	 * Check if a message has been superseded by a newer message of the same
+	 * kind in the queue. A superseded message in delta format gets merged into
+	 * the newer message. Superseded messages are counted.
+	 * 
+	 * @param m
+	 *            the message to check
+	 * @param from
+	 *            index of the first message after <em>m</em>
+	 * @param to
+	 *            index after the last message in the queue
+	 * @return <code>true</code> if the message is to be dropped
+	 */
+	private boolean conflate(Message m, int from, int to) {
+
+		if (m.id != Message.SYNC_ITEM && m.id != Message.SYNC_PROGRESS
+				&& m.id != Message.SYNC_STATE) {
+			return false;
+		}
+
+		Message newer = null;
+		for (int i = from; i != to; i++) {
+			if (ring[i & mask].id == m.id) {
+				newer = ring[i & mask];
+				break;
+			}
+		}
+
+		if (newer == null) {
+			return false;
+		}
+
+		switch (m.id) {
+		case Message.SYNC_ITEM:
+			conflatedItems++;
+			return true;
+		case Message.SYNC_PROGRESS:
+		case Message.SYNC_STATE:
+			final byte merged[] = merge(m.data, newer.data);
+			if (merged == null) {
+				return false; // dispatch both
+			}
+			newer.data = merged;
+			if (m.id == Message.SYNC_STATE) {
+				conflatedStates++;
+			} else {
+				conflatedProgress++;
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,312 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.io;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import remuco.client.common.MainLoop;
+import remuco.client.common.UserException;
+import remuco.client.common.data.ClientInfo;
+import remuco.client.common.io.Connection.IConnectionListener;
+import remuco.client.common.io.Reconnector.ISocketFactory;
+import remuco.client.common.player.Player;
+import remuco.client.common.util.Log;
+
+/**
+ * Manages connections to several servers at once, e.g. for monitoring many
+ * players. Each server is identified by a key (typically a host name) and
+ * gets its own {@link Reconnector}, so broken connections are re-established
+ * per server.
+ * <p>
+ * All connections share the {@link MainLoop}, where connection events of all
+ * servers get dispatched in its dispatch lane, and a {@link ConnectionRuntime},
+ * which provides connect and writer threads as well as decode buffers. Connect
+ * attempts do not block each other (up to the runtime's number of connect
+ * threads). Each connection buffers received messages in its own bounded
+ * inbox, so a slow or flooding server only stalls receiving from itself.
+ * <p>
+ * Methods of this class may be called by any thread.
+ */
+public final class PlayerPool {
+
+	/** Interface for classes interested in the connections of a pool. */
+	public interface IPoolListener {
+
+		/**
+		 * Notifies a successful (re)connect to a server.
+		 * 
+		 * @param key
+		 *            the server's key
+		 * @param player
+		 *            the connected player
+		 */
+		public void notifyConnected(String key, Player player);
+
+		/**
+		 * Notifies a disconnect from a server which could not be recovered by
+		 * reconnecting. The server remains in the pool until removed with
+		 * {@link PlayerPool#remove(String)} or reconnected with
+		 * {@link PlayerPool#reconnect(String)}.
+		 * 
+		 * @param key
+		 *            the server's key
+		 * @param reason
+		 *            the user exception describing the disconnect reason
+		 */
+		public void notifyDisconnected(String key, UserException reason);
+
+	}
+
+	/** A server in the pool. */
+	private class Host implements IConnectionListener {
+
+		private final String key;
+
+		private Player player = null;
+
+		private final Reconnector reconnector;
+
+		public Host(String key, ISocketFactory factory) {
+			this.key = key;
+			reconnector = new Reconnector(factory, this, ping, clientInfo,
+					runtime);
+		}
+
+		public void notifyConnected(Player player) {
+
+			synchronized (PlayerPool.this) {
+				if (hosts.get(key) != this) {
+					return; // removed meanwhile
+				}
+				this.player = player;
+			}
+
+			listener.notifyConnected(key, player);
+		}
+
+		public void notifyDisconnected(ISocket sock, UserException reason) {
+
+			synchronized (PlayerPool.this) {
+				if (hosts.get(key) != this) {
+					return; // removed meanwhile
+				}
+				player = null;
+			}
+
+			Log.ln("[PP] " + key + " disconnected: " + reason.getDetails());
+
+			listener.notifyDisconnected(key, reason);
+		}
+	}
+
+	/** Number of connect threads of a runtime created by the pool. */
+	private static final int CONNECT_THREADS = 8;
+
+	/** Number of writer threads of a runtime created by the pool. */
+	private static final int WRITER_THREADS = 2;
+
+	private final ClientInfo clientInfo;
+
+	/** Servers in the pool ({@link Host}), mapped by their key. */
+	private final Hashtable hosts = new Hashtable();
+
+	private final IPoolListener listener;
+
+	/** Whether {@link #runtime} has been created by the pool. */
+	private final boolean ownRuntime;
+
+	private final int ping;
+
+	private final ConnectionRuntime runtime;
+
+	/**
+	 * Create a new pool with its own runtime (with 8 connect threads, 2 writer
+	 * threads and a receiver thread per connection).
+	 * 
+	 * @param listener
+	 *            listener for connection events of all servers
+	 * @param ping
+	 *            initial ping interval for all connections (see
+	 *            {@link Connection#Connection(ISocket, IConnectionListener, int, ClientInfo)}
+	 *            )
+	 * @param ci
+	 *            client info to send to the servers when connecting
+	 */
+	public PlayerPool(IPoolListener listener, int ping, ClientInfo ci) {
+
+		this(listener, ping, ci, new ConnectionRuntime(CONNECT_THREADS,
+				WRITER_THREADS, null, null), true);
+	}
+
+	/**
+	 * Create a new pool using the given runtime for its connections, e.g. a
+	 * runtime with a receive driver. The runtime is not shut down by
+	 * {@link #close()}.
+	 * 
+	 * @param runtime
+	 *            the runtime for all connections
+	 */
+	public PlayerPool(IPoolListener listener, int ping, ClientInfo ci,
+			ConnectionRuntime runtime) {
+
+		this(listener, ping, ci, runtime, false);
+	}
+
+	private PlayerPool(IPoolListener listener, int ping, ClientInfo ci,
+			ConnectionRuntime runtime, boolean ownRuntime) {
+
+		this.listener = listener;
+		this.ping = ping;
+		this.clientInfo = ci;
+		this.runtime = runtime;
+		this.ownRuntime = ownRuntime;
+	}
+
+	/**
+	 * Add a server to the pool and start connecting to it. If there already is
+	 * a server with the same key, that server gets removed first.
+	 * 
+	 * @param key
+	 *            the key identifying the server
+	 * @param factory
+	 *            creates sockets to connect to the server
+	 */
+	public synchronized void add(String key, ISocketFactory factory) {
+
+		remove(key);
+
+		final Host host = new Host(key, factory);
+
+		hosts.put(key, host);
+
+		host.reconnector.start();
+	}
+
+	/**
+	 * Remove all servers from the pool and close their connections. The pool
+	 * may be used further.
+	 */
+	public synchronized void clear() {
+
+		final Enumeration e = hosts.elements();
+
+		while (e.hasMoreElements()) {
+			((Host) e.nextElement()).reconnector.stop();
+		}
+
+		hosts.clear();
+	}
+
+	/**
+	 * Remove all servers from the pool, close their connections and shut down
+	 * the pool's runtime (if the pool has created it). The pool must not be
+	 * used afterwards.
+	 */
+	public synchronized void close() {
+
+		clear();
+
+		if (ownRuntime) {
+			runtime.shutdown();
+		}
+	}
+
+	/** Get the number of servers with an established connection. */
+	public synchronized int getConnectedCount() {
+
+		int n = 0;
+
+		final Enumeration e = hosts.elements();
+
+		while (e.hasMoreElements()) {
+			if (((Host) e.nextElement()).player != null) {
+				n++;
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * Get the player of a server.
+	 * 
+	 * @return the player or <code>null</code> if the server is not in the pool
+	 *         or currently not connected
+	 */
+	public synchronized Player getPlayer(String key) {
+
+		final Host host = (Host) hosts.get(key);
+
+		return host != null ? host.player : null;
+	}
+
+	/** Get the keys of all servers in the pool (as {@link String}s). */
+	public synchronized Enumeration keys() {
+
+		// copy, so that the enumeration is not affected by later changes
+		final Hashtable copy = new Hashtable(hosts.size());
+
+		final Enumeration e = hosts.keys();
+
+		while (e.hasMoreElements()) {
+			final Object key = e.nextElement();
+			copy.put(key, key);
+		}
+
+		return copy.keys();
+	}
+
+	/**
+	 * Connect to a server again, e.g. after it has been reported as
+	 * disconnected. Does nothing if the server is not in the pool.
+	 */
+	public synchronized void reconnect(String key) {
+
+		final Host host = (Host) hosts.get(key);
+
+		if (host != null) {
+			host.reconnector.stop();
+			host.player = null;
+			host.reconnector.start();
+		}
+	}
+
+	/**
+	 * Remove a server from the pool and close its connection. There will be no
+	 * connection events for the server after a call to this method. Does
+	 * nothing if the server is not in the pool.
+	 */
+	public synchronized void remove(String key) {
+
+		final Host host = (Host) hosts.remove(key);
+
+		if (host != null) {
+			host.reconnector.stop();
+		}
+	}
+
+	/** Get the number of servers in the pool. */
+	public synchronized int size() {
+		return hosts.size();
+	}
+
+}
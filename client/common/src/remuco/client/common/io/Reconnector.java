@@ -0,0 +1,354 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.io;
+
+import java.util.TimerTask;
+
+import remuco.client.common.MainLoop;
+import remuco.client.common.UserException;
+import remuco.client.common.data.ClientInfo;
+import remuco.client.common.io.Connection.IConnectionListener;
+import remuco.client.common.player.Player;
+import remuco.client.common.util.Log;
+
+/**
+ * A reconnector sets up a {@link Connection} and automatically reconnects when
+ * the connection breaks unexpectedly (e.g. due to a short network outage).
+ * <p>
+ * Reconnect attempts are delayed using an exponential back-off, starting with
+ * {@link #DELAY_MIN} and doubling up to {@link #DELAY_MAX}. New connections
+ * resume the session of the previous connection's player (see
+ * {@link Connection#Connection(ISocket, IConnectionListener, int, ClientInfo, Player)}
+ * ), so listeners registered at the previous player remain registered and the
+ * server may skip sending data the client already has.
+ * <p>
+ * Sockets get created in the {@link MainLoop}'s I/O lane or, if the
+ * reconnector uses a {@link ConnectionRuntime}, in one of the runtime's
+ * connect threads.
+ * <p>
+ * Reconnecting only happens after a connection has been set up successfully
+ * once. The listener given to a reconnector gets notified about every
+ * successful (re)connect, but about a disconnect only if reconnecting is not
+ * possible or all reconnect attempts failed.
+ */
+public final class Reconnector implements IConnectionListener {
+
+	/** Interface for classes which create sockets to (re)connect with. */
+	public interface ISocketFactory {
+
+		/**
+		 * Create a new socket connected to the server.
+		 * 
+		 * @throws UserException
+		 *             if creating the socket fails
+		 */
+		public ISocket createSocket() throws UserException;
+
+	}
+
+	private class ConnectTask extends TimerTask {
+
+		public void run() {
+			if (runtime == null) {
+				connect(this);
+			} else {
+				final TimerTask task = this;
+				runtime.execute(new Runnable() {
+					public void run() {
+						connect(task);
+					}
+				});
+			}
+		}
+	}
+
+	/** Initial delay in milliseconds before trying to reconnect. */
+	private static final int DELAY_MIN = 250;
+
+	/** Maximum delay in milliseconds between reconnect attempts. */
+	private static final int DELAY_MAX = 16000;
+
+	/** Number of failed reconnect attempts before giving up. */
+	private static final int MAX_ATTEMPTS = 10;
+
+	/**
+	 * Get the delay before a reconnect attempt.
+	 * 
+	 * @param attempt
+	 *            the number of failed attempts so far
+	 * @return the delay in milliseconds, doubled with each attempt up to
+	 *         {@link #DELAY_MAX}
+	 */
+	static int getDelay(int attempt) {
+
+		int delay = DELAY_MIN;
+
+		for (int i = 0; i < attempt && delay < DELAY_MAX; i++) {
+			delay <<= 1;
+		}
+
+		return Math.min(delay, DELAY_MAX);
+	}
+
+	private int attempts = 0;
+
+	private final ClientInfo clientInfo;
+
+	private Connection conn = null;
+
+	private final ISocketFactory factory;
+
+	private final IConnectionListener listener;
+
+	private final int ping;
+
+	/** The latest connected player (session to resume on reconnects). */
+	private Player player = null;
+
+	/** The pending connect attempt (the only one allowed to connect). */
+	private TimerTask retry = null;
+
+	/** Runtime for connections (may be <code>null</code>). */
+	private final ConnectionRuntime runtime;
+
+	/** Socket of the current connection. */
+	private ISocket sock = null;
+
+	private boolean stopped = false;
+
+	/**
+	 * Create a new reconnector.
+	 * 
+	 * @param factory
+	 *            creates sockets for the initial connection and reconnects
+	 * @param listener
+	 *            connection event listener
+	 * @param ping
+	 *            initial ping interval (see
+	 *            {@link Connection#Connection(ISocket, IConnectionListener, int, ClientInfo)}
+	 *            )
+	 * @param ci
+	 *            client info to send to the server when connecting
+	 */
+	public Reconnector(ISocketFactory factory, IConnectionListener listener,
+			int ping, ClientInfo ci) {
+
+		this(factory, listener, ping, ci, null);
+	}
+
+	/**
+	 * Create a new reconnector whose connections use a runtime shared with
+	 * other connections. Works like
+	 * {@link #Reconnector(ISocketFactory, IConnectionListener, int, ClientInfo)}
+	 * but sockets get created in the runtime's connect threads.
+	 * 
+	 * @param runtime
+	 *            the runtime to use (see
+	 *            {@link Connection#Connection(ISocket, IConnectionListener, int, ClientInfo, Player, ConnectionRuntime)}
+	 *            )
+	 */
+	public Reconnector(ISocketFactory factory, IConnectionListener listener,
+			int ping, ClientInfo ci, ConnectionRuntime runtime) {
+
+		this.factory = factory;
+		this.listener = listener;
+		this.ping = ping;
+		this.clientInfo = ci;
+		this.runtime = runtime;
+	}
+
+	/**
+	 * Set up the initial connection. The socket gets created in the
+	 * {@link MainLoop}'s I/O lane (or a connect thread of the runtime), so
+	 * this method returns immediately.
+	 * <p>
+	 * If the reconnector has been started before, a pending reconnect attempt
+	 * gets cancelled, the current connection gets closed (without notifying
+	 * the listener) and the back-off starts again from {@link #DELAY_MIN}.
+	 */
+	public synchronized void start() {
+
+		stopped = false;
+
+		reset();
+
+		schedule(0);
+	}
+
+	/**
+	 * Stop reconnecting and close the current connection, if any. There will
+	 * be no connection events for the listener after a call to this method.
+	 */
+	public synchronized void stop() {
+
+		stopped = true;
+
+		reset();
+	}
+
+	public void notifyConnected(Player player) {
+
+		synchronized (this) {
+			if (stopped || player.getConnection() != conn) {
+				return;
+			}
+			this.player = player;
+			attempts = 0;
+		}
+
+		listener.notifyConnected(player);
+	}
+
+	public void notifyDisconnected(ISocket sock, UserException reason) {
+
+		synchronized (this) {
+			if (stopped || !isCurrent(sock)) {
+				return;
+			}
+			conn = null;
+			this.sock = null;
+			if (sock != null && retry(reason)) {
+				return;
+			}
+		}
+
+		listener.notifyDisconnected(sock, reason);
+	}
+
+	/**
+	 * Create a socket and a connection. Runs in the main loop's I/O lane or in
+	 * a connect thread of the runtime.
+	 * 
+	 * @param task
+	 *            the connect attempt - if it is not the pending attempt
+	 *            anymore (because of a {@link #stop()} and {@link #start()}
+	 *            meanwhile), its result gets discarded
+	 */
+	private void connect(TimerTask task) {
+
+		final ISocket sock;
+
+		try {
+			sock = factory.createSocket();
+		} catch (final UserException e) {
+			synchronized (this) {
+				if (stopped || retry != task) {
+					return;
+				}
+				retry = null;
+				if (retry(e)) {
+					return;
+				}
+			}
+			MainLoop.schedule(new TimerTask() {
+				public void run() {
+					listener.notifyDisconnected(null, e);
+				}
+			});
+			return;
+		}
+
+		synchronized (this) {
+			if (stopped || retry != task) {
+				sock.close();
+				return;
+			}
+			retry = null;
+			this.sock = sock;
+			conn = new Connection(sock, this, ping, clientInfo, player, runtime);
+		}
+	}
+
+	/**
+	 * Check if a disconnect notification belongs to the current connection
+	 * (and not to a previous connection which has been replaced by a
+	 * {@link #stop()} and {@link #start()}). Must be called with the lock on
+	 * this reconnector held.
+	 * 
+	 * @param sock
+	 *            the socket passed with the notification
+	 */
+	private boolean isCurrent(ISocket sock) {
+
+		if (conn == null) {
+			return false; // no connection or still connecting
+		}
+		if (sock != null) {
+			return sock == this.sock;
+		}
+		// without a socket only the current connection itself can tell, it
+		// already is closed when it notifies a disconnect
+		return conn.isClosed();
+	}
+
+	/**
+	 * Schedules a reconnect attempt if there has been a connection before and
+	 * the maximum number of attempts has not been reached yet.
+	 * 
+	 * @return <code>true</code> if a reconnect is scheduled,
+	 *         <code>false</code> if giving up
+	 */
+	private boolean retry(UserException reason) {
+
+		if (player == null || attempts >= MAX_ATTEMPTS) {
+			Log.ln("[RC] giving up");
+			return false;
+		}
+
+		final int delay = getDelay(attempts);
+
+		attempts++;
+
+		Log.ln("[RC] disconnected (" + reason.getDetails() + "), attempt "
+				+ attempts + " in " + delay + "ms");
+
+		schedule(delay);
+
+		return true;
+	}
+
+	/**
+	 * Cancel a pending connect attempt, close the current connection and
+	 * reset the back-off. Must be called with the lock on this reconnector
+	 * held.
+	 */
+	private void reset() {
+
+		attempts = 0;
+
+		if (retry != null) {
+			retry.cancel();
+			retry = null;
+		}
+		if (conn != null) {
+			conn.close();
+			conn = null;
+			sock = null;
+		}
+	}
+
+	private void schedule(int delay) {
+
+		retry = new ConnectTask();
+		MainLoop.schedule(MainLoop.LANE_IO, retry, delay);
+	}
+
+}
@@ -0,0 +1,51 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.player;
+
+import remuco.client.common.data.ItemList;
+
+/**
+ * Extension of {@link IRequester} for requesters which want to show items of a
+ * requested item list while the list is still being received.
+ */
+public interface IPartialRequester extends IRequester {
+
+	/**
+	 * Handle a part of a requested item list. The given list is a snapshot of
+	 * the partially received list which does not change anymore. It provides
+	 * the list's path and nested lists as well as the items up to
+	 * <em>to</em> - 1, where the items from <em>from</em> on are new. Other
+	 * data of the list (e.g. page information and actions) is not available.
+	 * Once the list is complete, it gets passed to the corresponding
+	 * <code>handle...()</code> method of {@link IRequester}.
+	 * <p>
+	 * Chunks of a list are passed in order and never after the complete list.
+	 * 
+	 * @param list
+	 *            snapshot of the partially received list
+	 * @param from
+	 *            index of the first new item
+	 * @param to
+	 *            index of the last new item plus 1
+	 */
+	public void handlePartialList(ItemList list, int from, int to);
+
+}
@@ -20,8 +20,14 @@
  */
 package remuco.client.common.player;
 
+import remuco.client.common.data.Progress;
+
 public interface IProgressListener {
 
+	/**
+	 * Notifies a progress change. Use {@link Progress#getChanged()} to find
+	 * out which parts of the progress have changed.
+	 */
 	public void notifyProgressChanged();
 	
 }
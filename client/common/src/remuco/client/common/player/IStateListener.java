@@ -20,8 +20,14 @@
  */
 package remuco.client.common.player;
 
+import remuco.client.common.data.State;
+
 public interface IStateListener {
 
+	/**
+	 * Notifies a state change. Use {@link State#getChanged()} to find out
+	 * which parts of the state have changed.
+	 */
 	public void notifyStateChanged();
 	
 }
@@ -0,0 +1,290 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ * 
+ *   This file is part of Remuco.
+ * 
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ * 
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ * 
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.player;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import remuco.client.common.data.ItemList;
+
+/**
+ * Cache for item list pages received as request replies. Pages are identified
+ * by list type, path and page number. The cache is bounded by the number of
+ * pages and by the approximate memory used by the pages (see
+ * {@link ItemList#getSizeEstimate()}) - if one of the bounds is exceeded,
+ * the least recently used pages get evicted.
+ * <p>
+ * The cache is used by the {@link Player} to answer requests from memory.
+ * Methods of this class may be called by any thread.
+ */
+public final class ListCache {
+
+	/** A cached page. */
+	static final class Entry {
+
+		final String key;
+
+		final ItemList list;
+
+		final int size;
+
+		/** Time when the page has been received. */
+		final long time;
+
+		private Entry(String key, ItemList list) {
+			this.key = key;
+			this.list = list;
+			this.size = list.getSizeEstimate();
+			this.time = System.currentTimeMillis();
+		}
+
+		/** Get the age of the page in milliseconds. */
+		long getAge() {
+			final long age = System.currentTimeMillis() - time;
+			return age < 0 ? 0 : age;
+		}
+	}
+
+	/**
+	 * Get the cache key for a page.
+	 * 
+	 * @param type
+	 *            the list type (one of the <code>TYPE_...</code> constants in
+	 *            {@link ItemList})
+	 * @param path
+	 *            the list's path (may be <code>null</code> for root lists)
+	 * @param page
+	 *            the page number
+	 */
+	static String key(int type, String path[], int page) {
+
+		final StringBuffer sb = new StringBuffer();
+
+		sb.append(type).append(':').append(page);
+
+		if (path != null) {
+			for (int i = 0; i < path.length; i++) {
+				sb.append('\0').append(path[i]);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private int bytes = 0;
+
+	/**
+	 * Number of invalidations so far. Pages requested before an invalidation
+	 * are not cached when their reply arrives after the invalidation.
+	 */
+	private int generation = 0;
+
+	/** Cached pages ({@link Entry}), mapped by their key. */
+	private final Hashtable entries = new Hashtable();
+
+	private int hits = 0, misses = 0;
+
+	/** Keys of cached pages, least recently used first. */
+	private final Vector lru = new Vector();
+
+	private int maxBytes, maxEntries;
+
+	/**
+	 * Create a new cache.
+	 * 
+	 * @param maxEntries
+	 *            maximum number of pages to cache
+	 * @param maxBytes
+	 *            maximum approximate number of bytes used by cached pages
+	 */
+	public ListCache(int maxEntries, int maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/** Get the approximate number of bytes used by cached pages. */
+	public synchronized int getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Get the cache's generation, which changes with each invalidation. Pass
+	 * the generation at the time a page gets requested to
+	 * {@link #put(ItemList, int)} when the page has been received.
+	 */
+	public synchronized int getGeneration() {
+		return generation;
+	}
+
+	/** Get the number of requests answered from the cache. */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/** Get the number of requests which could not be answered from the cache. */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/** Get the number of cached pages. */
+	public synchronized int getSize() {
+		return lru.size();
+	}
+
+	/**
+	 * Remove all pages from the cache. Pages requested before are not cached
+	 * anymore when they arrive.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		entries.clear();
+		lru.removeAllElements();
+		bytes = 0;
+	}
+
+	/**
+	 * Remove all pages of a specific list type from the cache. Pages requested
+	 * before are not cached anymore when they arrive (regardless of their
+	 * type).
+	 * 
+	 * @param type
+	 *            the list type (one of the <code>TYPE_...</code> constants in
+	 *            {@link ItemList})
+	 */
+	public synchronized void invalidate(int type) {
+
+		generation++;
+
+		final String prefix = type + ":";
+
+		for (int i = lru.size() - 1; i >= 0; i--) {
+			final String key = (String) lru.elementAt(i);
+			if (key.startsWith(prefix)) {
+				remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Change the bounds of the cache. Pages get evicted if needed.
+	 * 
+	 * @param maxEntries
+	 *            maximum number of pages to cache
+	 * @param maxBytes
+	 *            maximum approximate number of bytes used by cached pages
+	 */
+	public synchronized void setLimits(int maxEntries, int maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Check if a page is cached. In contrast to
+	 * {@link #get(int, String[], int)}, this neither marks the page as used
+	 * nor counts as a hit or miss.
+	 * 
+	 * @param key
+	 *            the page's key as returned by
+	 *            {@link #key(int, String[], int)}
+	 */
+	synchronized boolean contains(String key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * Look up a page and mark it as most recently used.
+	 * 
+	 * @return the cached page or <code>null</code> if the page is not cached
+	 */
+	synchronized Entry get(int type, String path[], int page) {
+
+		final String key = key(type, path, page);
+
+		final Entry e = (Entry) entries.get(key);
+
+		if (e == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+
+		lru.removeElement(key);
+		lru.addElement(key);
+
+		return e;
+	}
+
+	/**
+	 * Put a page into the cache. A page with the same type, path and page
+	 * number gets replaced. Least recently used pages get evicted if needed.
+	 * 
+	 * @param generation
+	 *            the cache's generation when the page has been requested (see
+	 *            {@link #getGeneration()}) - if the cache has been invalidated
+	 *            since then, the page is outdated and does not get cached
+	 */
+	synchronized void put(ItemList list, int generation) {
+
+		if (generation != this.generation) {
+			return;
+		}
+
+		final Entry e = new Entry(key(list.getType(), list.getPath(), list
+				.getPage()), list);
+
+		final int i = lru.indexOf(e.key);
+		if (i >= 0) {
+			remove(i);
+		}
+
+		if (e.size > maxBytes) {
+			return; // would evict everything else
+		}
+
+		entries.put(e.key, e);
+		lru.addElement(e.key);
+		bytes += e.size;
+
+		evict();
+	}
+
+	/** Evict least recently used pages until the cache is within bounds. */
+	private void evict() {
+
+		while (lru.size() > 0 && (lru.size() > maxEntries || bytes > maxBytes)) {
+			remove(0);
+		}
+	}
+
+	private void remove(int i) {
+
+		final Entry e = (Entry) entries.remove(lru.elementAt(i));
+
+		lru.removeElementAt(i);
+
+		if (e != null) {
+			bytes -= e.size;
+		}
+	}
+
+}
@@ -20,6 +20,12 @@
  */
 package remuco.client.common.player;
 
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.TimerTask;
+import java.util.Vector;
+
+import remuco.client.common.MainLoop;
 import remuco.client.common.data.ActionParam;
 import remuco.client.common.data.ControlParam;
 import remuco.client.common.data.Item;
@@ -31,10 +37,13 @@ import remuco.client.common.data.State;
 import remuco.client.common.data.Tagging;
 import remuco.client.common.io.Connection;
 import remuco.client.common.io.Message;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
 import remuco.client.common.serial.BinaryDataExecption;
 import remuco.client.common.serial.ISerializable;
 import remuco.client.common.serial.Serial;
 import remuco.client.common.util.Log;
+import remuco.client.common.util.Tools;
 
 /**
  * A player mirrors the state of a remote player and provides methods to control
@@ -43,6 +52,162 @@ import remuco.client.common.util.Log;
  */
 public final class Player {
 
+	/**
+	 * Forwards chunks of item lists, which are being deserialized, to the
+	 * current requester.
+	 */
+	private class ChunkForwarder implements ItemList.IChunkListener {
+
+		public void notifyItemsRead(final ItemList list, int from,
+				final int to) {
+
+			MainLoop.schedule(new TimerTask() {
+				public void run() {
+					handleChunk(list, to);
+				}
+			});
+		}
+
+	}
+
+	/**
+	 * A control whose parameter accumulates while its message waits to get
+	 * sent. The parameter is serialized when the connection writes the
+	 * message, so repeated controls issued while the connection is busy result
+	 * in a single message.
+	 * <p>
+	 * Relative controls only accumulate values of the same direction (the sum
+	 * must not become 0, which means <em>mute</em> for volume controls).
+	 * Absolute controls keep the last value.
+	 */
+	private static class CoalescedControl implements ISerializable {
+
+		private final boolean absolute;
+
+		private final Message m = new Message();
+
+		private int param;
+
+		/** Whether the message has not yet been written. */
+		private boolean queued = true;
+
+		public CoalescedControl(int id, int param, boolean absolute) {
+			this.param = param;
+			this.absolute = absolute;
+			m.id = id;
+			m.obj = this;
+		}
+
+		/**
+		 * Merge a value into the parameter of the queued message.
+		 * 
+		 * @return <code>false</code> if the value could not be merged because
+		 *         the message has already been written or the direction
+		 *         differs
+		 */
+		public synchronized boolean merge(int value) {
+
+			if (!queued) {
+				return false;
+			}
+
+			if (absolute) {
+				param = value;
+			} else if ((value > 0) == (param > 0)) {
+				param += value;
+			} else {
+				return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Never called - like {@link ControlParam}, controls only get sent to
+		 * the server, the server never sends them back.
+		 */
+		public void read(BaIn bis) throws BinaryDataExecption {
+			Log.bug("Oct 18, 2026.2:21:36 PM");
+		}
+
+		public synchronized void write(BaOut bos) {
+			bos.writeI(param);
+			queued = false;
+		}
+
+	}
+
+	/**
+	 * An outstanding request. Gets scheduled as a task in the main loop to
+	 * expire the request if there is no reply within {@link #REQUEST_TIMEOUT}.
+	 */
+	private class Request extends TimerTask {
+
+		private final int id;
+
+		/**
+		 * Number of items of the request's reply which have already been
+		 * passed to the requester as a partial list.
+		 */
+		private int itemsDelivered = 0;
+
+		/**
+		 * Cached page passed to the requester while the request is still
+		 * outstanding (revalidation of a cached page).
+		 */
+		private ItemList cached = null;
+
+		/**
+		 * Cache key of the requested page or <code>null</code> if the request
+		 * is not for an item list page.
+		 */
+		private final String key;
+
+		/** List cache generation when the request has been sent. */
+		private final int generation;
+
+		/** The requester or <code>null</code> if this is a prefetch. */
+		private IRequester requester;
+
+		public Request(int id, IRequester requester, String key) {
+			this.id = id;
+			this.requester = requester;
+			this.key = key;
+			this.generation = listCache.getGeneration();
+		}
+
+		public void run() {
+			synchronized (requests) {
+				if (requests.remove(new Integer(id)) == null) {
+					return;
+				}
+			}
+			Log.ln("[PL] request " + id + " timed out");
+		}
+
+	}
+
+	/** Number of items per chunk when passing partial lists to requesters. */
+	private static final int CHUNK_SIZE = 50;
+
+	/** Time in ms to wait for the reply to a request. */
+	private static final int REQUEST_TIMEOUT = 30000;
+
+	/** Default maximum approximate number of bytes in the list cache. */
+	private static final int LIST_CACHE_BYTES = 128 * 1024;
+
+	/** Default maximum number of pages in the list cache. */
+	private static final int LIST_CACHE_ENTRIES = 32;
+
+	/**
+	 * Age in ms after which cached media library, files and search pages get
+	 * revalidated in the background when used.
+	 */
+	private static final int LIST_CACHE_REFRESH = 60000;
+
+	/** Number of string cache slots used for incoming messages. */
+	private static final int STRING_CACHE_SIZE = 256;
+
 	/** Do not alter outside {@link Player}! */
 	public final PlayerInfo info;
 
@@ -52,19 +217,67 @@ public final class Player {
 	/** Do not alter outside {@link Player}! */
 	public final Progress progress;
 
+	/** Extrapolated progress, kept up to date by the player. */
+	public final ProgressModel progressModel;
+
 	/** Do not alter outside {@link Player}! */
 	public final State state;
 
+	/**
+	 * Input stream reused for all incoming messages decoded in the main loop's
+	 * dispatch lane (owned by this player, never shared with other players).
+	 * Zero-copy mode is safe because message data buffers are never reused by
+	 * the connection.
+	 */
+	private final BaIn bis;
+
+	private final ChunkForwarder chunkForwarder = new ChunkForwarder();
+
 	private final Connection conn;
 
+	/** Last coalesced seek control (may have been sent already). */
+	private CoalescedControl ctrlSeek = null;
+
+	/** Last coalesced volume control (may have been sent already). */
+	private CoalescedControl ctrlVolume = null;
+
+	/** Cache for item list pages received as request replies. */
+	private final ListCache listCache = new ListCache(LIST_CACHE_ENTRIES,
+			LIST_CACHE_BYTES);
+
+	/**
+	 * Number of bytes of stale request replies discarded so far (written by
+	 * the receiver thread only).
+	 */
+	private volatile int discardedBytes = 0;
+
+	/**
+	 * Number of stale request replies discarded so far (written by the
+	 * receiver thread only).
+	 */
+	private volatile int discardedReplies = 0;
+
 	private IItemListener itemListener;
 
+	private boolean prefetchPrevious = false;
+
 	private IProgressListener progressListener = null;
 
-	private IRequester reqCaller;
+	/**
+	 * Outstanding requests ({@link Request}), mapped by their request ID. Used
+	 * to detect if incoming request replies are still up to date. Accessed by
+	 * the main loop, the connection's receiver thread and by any thread
+	 * sending requests. Also used as lock for the requests, which must be held
+	 * when looking up, adding, changing or removing requests. Requesters get
+	 * notified without holding the lock.
+	 */
+	private final Hashtable requests = new Hashtable();
 
-	/** Used to detect if incoming request replies are still up to date. */
-	private int reqID = -1;
+	/**
+	 * Token identifying the client session. Remains the same for players which
+	 * resume a previous player's session.
+	 */
+	private final String session;
 
 	private IStateListener stateListener;
 
@@ -83,10 +296,46 @@ public final class Player {
 
 		state = new State();
 		progress = new Progress();
+		progressModel = new ProgressModel();
 		item = new Item();
 
-		reqCaller = null;
+		session = Integer.toHexString(Tools.RANDOM.nextInt())
+				+ Integer.toHexString(Tools.RANDOM.nextInt());
+
+		bis = newDecodeBuffer();
+
+	}
+
+	/**
+	 * Create a new player which resumes the session of a previous player
+	 * (after a reconnect). The new player continues to use the item, state and
+	 * progress objects and the listeners of the previous player, so the
+	 * previous player state remains valid until updated by the server.
+	 * 
+	 * @param conn
+	 *            the new connection to the remote player
+	 * @param info
+	 *            information about the remote player
+	 * @param previous
+	 *            the player whose session to resume
+	 */
+	public Player(Connection conn, PlayerInfo info, Player previous) {
+
+		this.conn = conn;
+		this.info = info;
+
+		state = previous.state;
+		progress = previous.progress;
+		progressModel = previous.progressModel;
+		item = previous.item;
 
+		session = previous.session;
+
+		itemListener = previous.itemListener;
+		progressListener = previous.progressListener;
+		stateListener = previous.stateListener;
+
+		bis = newDecodeBuffer();
 	}
 
 	public void actionFiles(ActionParam a) {
@@ -139,12 +388,20 @@ public final class Player {
 		ctrl(Message.CTRL_RATE, rating);
 	}
 
-	public void ctrlSeek(int direction) {
+	/**
+	 * Seek forward or backward. Seek controls issued while a previous seek
+	 * control is still waiting to get sent are merged into that control.
+	 * 
+	 * @param direction
+	 *            number of steps to seek (positive for forward, negative for
+	 *            backward)
+	 */
+	public synchronized void ctrlSeek(int direction) {
 
 		// not issued by PlayerScreen -> still need a feature check
 
-		if (info.supports(Feature.CTRL_SEEK)) {
-			ctrl(Message.CTRL_SEEK, direction);
+		if (info.supports(Feature.CTRL_SEEK) && direction != 0) {
+			ctrlSeek = ctrlCoalesced(ctrlSeek, Message.CTRL_SEEK, direction);
 		}
 	}
 
@@ -175,9 +432,42 @@ public final class Player {
 		ctrl(Message.CTRL_SHUFFLE);
 	}
 
-	public void ctrlVolume(int direction) {
+	/**
+	 * Adjust the volume. Volume controls issued while a previous volume control
+	 * is still waiting to get sent are merged into that control.
+	 * 
+	 * @param direction
+	 *            number of steps to increase (positive) or decrease (negative)
+	 *            the volume, or 0 to mute
+	 */
+	public synchronized void ctrlVolume(int direction) {
+
+		if (direction == 0) {
+			ctrlVolume = null; // later controls must not get merged into
+			ctrl(Message.CTRL_VOLUME, 0); // controls sent before muting
+		} else {
+			ctrlVolume = ctrlCoalesced(ctrlVolume, Message.CTRL_VOLUME,
+				direction);
+		}
+	}
+
+	/**
+	 * Set the volume. Only the last of several volume values set while the
+	 * connection is busy gets sent. If the server does not support setting the
+	 * volume, the volume gets adjusted by one step in the direction of the
+	 * given volume.
+	 * 
+	 * @param volume
+	 *            the volume in percent
+	 */
+	public synchronized void ctrlVolumeSet(int volume) {
 
-		ctrl(Message.CTRL_VOLUME, direction);
+		if (info.supports(Feature.CTRL_VOLUME_SET)) {
+			ctrlVolume = ctrlCoalesced(ctrlVolume, Message.CTRL_VOLUME_SET,
+				volume);
+		} else if (volume != state.getVolume()) {
+			ctrlVolume(volume > state.getVolume() ? 1 : -1);
+		}
 	}
 
 	public void ctrlNavigate(int action) {
@@ -185,6 +475,120 @@ public final class Player {
 		ctrl(Message.CTRL_NAVIGATE, action);
 	}
 
+	/**
+	 * Deserialize an item message, which is too large to be received as a
+	 * whole, while it is being received. The item's image gets skipped, only
+	 * the metadata is kept. Like in {@link #decodeReply(Message, BaIn)}, the
+	 * resulting item gets set as {@link Message#obj}.
+	 * <p>
+	 * This method gets called by the connection's receiver thread.
+	 * 
+	 * @param m
+	 *            the message to deserialize the item for (only the ID is set)
+	 * @param stream
+	 *            the stream providing the message data
+	 * @throws BinaryDataExecption
+	 *             if the message data is malformed or if reading the data
+	 *             fails
+	 */
+	public void decodeItemDegraded(Message m, BaIn stream)
+			throws BinaryDataExecption {
+
+		final Item degraded = new Item();
+
+		degraded.setSkipImage(true);
+		Serial.in(degraded, stream);
+
+		m.obj = degraded;
+	}
+
+	/**
+	 * Deserialize a request reply while it is being received.
+	 * <p>
+	 * This method gets called by the connection's receiver thread. The reply
+	 * gets set as {@link Message#obj} and is handled as usual once the message
+	 * gets passed to {@link #handleMessage(Message)}. If the requester is an
+	 * {@link IPartialRequester}, items of the reply are passed to the
+	 * requester in chunks while the rest of the reply is still being
+	 * received.
+	 * <p>
+	 * Replies to requests which are not outstanding anymore (cancelled,
+	 * superseded or timed out) are discarded without deserializing them and
+	 * the message ID gets set to {@link Message#IGNORE}.
+	 * 
+	 * @param m
+	 *            the message to deserialize the reply for (only the ID is set)
+	 * @param stream
+	 *            the stream providing the message data
+	 * @throws BinaryDataExecption
+	 *             if the message data is malformed or if reading the data
+	 *             fails
+	 */
+	public void decodeReply(Message m, BaIn stream)
+			throws BinaryDataExecption {
+
+		final ItemList list = newReplyList(m.id);
+
+		if (list == null) {
+			stream.discard();
+			return;
+		}
+
+		final int id = stream.peekI();
+
+		if (!requests.containsKey(new Integer(id))) {
+			final int skipped = stream.discard();
+			discardedBytes += skipped;
+			discardedReplies++;
+			Log.ln("[PL] drop stale reply " + id + " (" + skipped + "B)");
+			m.id = Message.IGNORE;
+			return;
+		}
+
+		list.setChunkListener(chunkForwarder, CHUNK_SIZE);
+		Serial.in(list, stream);
+		list.setChunkListener(null, 0);
+
+		m.obj = list;
+	}
+
+	/**
+	 * Get the number of bytes of stale request replies which have been
+	 * discarded without deserializing them.
+	 * 
+	 * @see #decodeReply(Message, BaIn)
+	 */
+	public int getDiscardedBytes() {
+		return discardedBytes;
+	}
+
+	/**
+	 * Get the number of stale request replies which have been discarded
+	 * without deserializing them.
+	 * 
+	 * @see #decodeReply(Message, BaIn)
+	 */
+	public int getDiscardedReplies() {
+		return discardedReplies;
+	}
+
+	/**
+	 * Get the cache used to answer item list requests from memory. Clients
+	 * may adjust its limits or invalidate it.
+	 */
+	public ListCache getListCache() {
+		return listCache;
+	}
+
+	/**
+	 * Get the token identifying this player's session.
+	 * 
+	 * @see #Player(Connection, PlayerInfo, Player)
+	 */
+	public String getSession() {
+		return session;
+	}
+
 	/** Get the connection used by this player. */
 	public Connection getConnection() {
 		return conn;
@@ -197,8 +601,16 @@ public final class Player {
 	 * {@link IMessageListener} (though it does the same, except the possibly
 	 * thrown exception).
 	 * <p>
-	 * Note: Synchronizing this method is not needed, since it only gets called
-	 * by the conncetion thread.
+	 * Threading: This method gets called in the {@link MainLoop}'s dispatch
+	 * lane, one message at a time. Request replies however get deserialized
+	 * before by {@link #decodeReply(Message, BaIn)} in the connection's
+	 * receiver thread, and requests may be sent (<code>req...()</code>) and
+	 * cancelled by any thread, e.g. a UI thread. All these threads use the
+	 * table of outstanding requests, so every access to that table, including
+	 * check-then-act sequences like superseding a requester's request, is
+	 * synchronized on the table. An entry found by the receiver thread may
+	 * still have been removed (timed out or cancelled) when the reply gets
+	 * dispatched here.
 	 * 
 	 * @param m
 	 *            the message
@@ -207,16 +619,15 @@ public final class Player {
 	 */
 	public void handleMessage(Message m) throws BinaryDataExecption {
 
-		if (Message.isRequest(m.id) && reqCaller == null) {
-			// ignore outdated request replies
-			return;
-		}
-
 		switch (m.id) {
 
 		case Message.SYNC_ITEM:
 
-			Serial.in(item, m.data);
+			if (m.obj != null) { // degraded item
+				item.set((Item) m.obj);
+			} else {
+				Serial.in(item, bis.wrap(m.data));
+			}
 
 			if (itemListener != null) {
 				itemListener.notifyItemChanged();
@@ -226,9 +637,11 @@ public final class Player {
 
 		case Message.SYNC_STATE:
 
-			Serial.in(state, m.data);
+			Serial.in(state, bis.wrap(m.data));
+
+			progressModel.setPlaying(state.getPlayback() == State.PLAYBACK_PLAY);
 
-			if (stateListener != null) {
+			if (stateListener != null && state.getChanged() != 0) {
 				stateListener.notifyStateChanged();
 			}
 
@@ -236,9 +649,11 @@ public final class Player {
 
 		case Message.SYNC_PROGRESS:
 
-			Serial.in(progress, m.data);
+			Serial.in(progress, bis.wrap(m.data));
 
-			if (progressListener != null) {
+			progressModel.sync(progress);
+
+			if (progressListener != null && progress.getChanged() != 0) {
 				progressListener.notifyProgressChanged();
 			}
 
@@ -246,76 +661,28 @@ public final class Player {
 
 		case Message.REQ_ITEM:
 
+			// item replies do not contain a request ID
+			reqDoneItems();
+
 			// maybe used later
 			// final Item item = new Item();
 			//
 			// Serial.in(item, m.data);
 			//
-			// if (item.getId().equals(reqID)) {
-			// reqCaller.handleItem(item);
-			// reqCaller = null;
-			// reqID = -1;
+			// final Request r = reqDone(...);
+			// if (r != null) {
+			// r.requester.handleItem(item);
 			// }
 
 			break;
 
 		case Message.REQ_PLAYLIST:
-
-			final ItemList playlist = new ItemList(ItemList.TYPE_PLAYLIST);
-			Serial.in(playlist, m.data);
-			if (reqID == playlist.getRequestID()) {
-				reqCaller.handlePlaylist(playlist);
-				reqCaller = null;
-				reqID = -1;
-			}
-
-			break;
-
 		case Message.REQ_QUEUE:
-
-			final ItemList queue = new ItemList(ItemList.TYPE_QUEUE);
-			Serial.in(queue, m.data);
-			if (reqID == queue.getRequestID()) {
-				reqCaller.handleQueue(queue);
-				reqCaller = null;
-				reqID = -1;
-			}
-
-			break;
-
 		case Message.REQ_MLIB:
-
-			final ItemList mlib = new ItemList(ItemList.TYPE_MLIB);
-			Serial.in(mlib, m.data);
-			if (reqID == mlib.getRequestID()) {
-				reqCaller.handleLibrary(mlib);
-				reqCaller = null;
-				reqID = -1;
-			}
-
-			break;
-
 		case Message.REQ_FILES:
-
-			final ItemList files = new ItemList(info.getFileActions());
-			Serial.in(files, m.data);
-			if (reqID == files.getRequestID()) {
-				reqCaller.handleFiles(files);
-				reqCaller = null;
-				reqID = -1;
-			}
-
-			break;
-
 		case Message.REQ_SEARCH:
 
-			final ItemList search = new ItemList(ItemList.TYPE_SEARCH);
-			Serial.in(search, m.data);
-			if (reqID == search.getRequestID()) {
-				reqCaller.handleSearch(search);
-				reqCaller = null;
-				reqID = -1;
-			}
+			handleReply(replyList(m));
 
 			break;
 
@@ -325,9 +692,40 @@ public final class Player {
 		}
 	}
 
+	/** Cancel all outstanding requests. Replies to them will be ignored. */
 	public void reqCancel() {
-		reqID = -1;
-		reqCaller = null;
+
+		synchronized (requests) {
+			final Enumeration e = requests.elements();
+			while (e.hasMoreElements()) {
+				((Request) e.nextElement()).cancel();
+			}
+			requests.clear();
+		}
+	}
+
+	/**
+	 * Cancel all outstanding requests of a requester. Replies to them will be
+	 * ignored. Requests of other requesters are not affected.
+	 */
+	public void reqCancel(IRequester rc) {
+
+		final Vector cancelled = new Vector();
+
+		synchronized (requests) {
+
+			final Enumeration e = requests.elements();
+			while (e.hasMoreElements()) {
+				final Request r = (Request) e.nextElement();
+				if (r.requester == rc) {
+					cancelled.addElement(r);
+				}
+			}
+
+			for (int i = 0; i < cancelled.size(); i++) {
+				reqDone(((Request) cancelled.elementAt(i)).id);
+			}
+		}
 	}
 
 	public void reqFiles(IRequester lr, String path[], int page) {
@@ -340,6 +738,44 @@ public final class Player {
 		req(ir, Message.REQ_ITEM, new RequestParam(id));
 	}
 
+	/**
+	 * Request a page of an item list of any type.
+	 * 
+	 * @param lr
+	 *            the requester
+	 * @param type
+	 *            the list type (one of the <code>TYPE_...</code> constants in
+	 *            {@link ItemList})
+	 * @param path
+	 *            the list's path or the query if requesting a search result
+	 *            list (ignored for playlist and queue)
+	 * @param page
+	 *            the page to request
+	 */
+	public void reqList(IRequester lr, int type, String path[], int page) {
+
+		switch (type) {
+		case ItemList.TYPE_PLAYLIST:
+			reqPlaylist(lr, page);
+			break;
+		case ItemList.TYPE_QUEUE:
+			reqQueue(lr, page);
+			break;
+		case ItemList.TYPE_MLIB:
+			reqMLib(lr, path, page);
+			break;
+		case ItemList.TYPE_FILES:
+			reqFiles(lr, path, page);
+			break;
+		case ItemList.TYPE_SEARCH:
+			reqSearch(lr, path, page);
+			break;
+		default:
+			Log.bug("Oct 18, 2026.1:07:44 PM");
+			break;
+		}
+	}
+
 	public void reqMLib(IRequester lr, String path[], int page) {
 
 		req(lr, Message.REQ_MLIB, new RequestParam(path, page));
@@ -360,6 +796,16 @@ public final class Player {
 		req(lr, Message.REQ_SEARCH, new RequestParam(query, page));
 	}
 
+	/**
+	 * Set whether to prefetch the previous page too, when a page of an item
+	 * list has been passed to a requester. The next page is always
+	 * prefetched. Prefetched pages are kept in the {@link #getListCache()
+	 * list cache}.
+	 */
+	public void setPrefetchPrevious(boolean prefetchPrevious) {
+		this.prefetchPrevious = prefetchPrevious;
+	}
+
 	/**
 	 * Registers <em>il</em> to get notified when the current item has changed.
 	 * 
@@ -394,9 +840,41 @@ public final class Player {
 		final Message m = new Message();
 
 		m.id = msgID;
-		m.data = Serial.out(action);
+		m.obj = action;
 
-		conn.send(m);
+		// actions may change any list, e.g. by removing or adding items - the
+		// invalidation also keeps replies to requests sent before the action
+		// out of the cache, sending the action while holding the request lock
+		// ensures requests sent after the invalidation follow the action
+
+		synchronized (requests) {
+			listCache.invalidate();
+			conn.send(m);
+		}
+	}
+
+	/**
+	 * Merge a control into a previous control, if possible, otherwise send
+	 * the control as a new coalesced control.
+	 * 
+	 * @param cc
+	 *            the previous control (may be <code>null</code>)
+	 * @return the control to merge subsequent controls into
+	 */
+	private CoalescedControl ctrlCoalesced(CoalescedControl cc, int id,
+			int param) {
+
+		final boolean absolute = id == Message.CTRL_VOLUME_SET;
+
+		if (cc != null && cc.m.id == id && cc.merge(param)) {
+			return cc;
+		}
+
+		cc = new CoalescedControl(id, param, absolute);
+
+		conn.send(cc.m);
+
+		return cc;
 	}
 
 	private void ctrl(int id) {
@@ -415,24 +893,402 @@ public final class Player {
 
 		m.id = id;
 
-		if (ser != null) {
-			m.data = Serial.out(ser);
-		}
+		m.obj = ser;
 
 		conn.send(m);
 	}
 
-	private void req(IRequester rc, int msgID, RequestParam req) {
+	/**
+	 * Passes a chunk of a request reply, which is still being received, to the
+	 * requester. Items possibly skipped due to out-of-order chunks are passed
+	 * too.
+	 */
+	private void handleChunk(ItemList list, int to) {
+
+		final IPartialRequester pr;
+		final int from;
+
+		synchronized (requests) {
+
+			final Request r = (Request) requests.get(new Integer(list
+					.getRequestID()));
+
+			if (r == null || !(r.requester instanceof IPartialRequester)) {
+				return; // outdated or complete or not interested
+			}
+
+			if (r.cached != null) {
+				return; // requester already has the cached version of the list
+			}
+
+			if (to <= r.itemsDelivered) {
+				return;
+			}
+
+			pr = (IPartialRequester) r.requester;
+			from = r.itemsDelivered;
+
+			r.itemsDelivered = to;
+		}
+
+		pr.handlePartialList(list, from, to);
+	}
+
+	/**
+	 * Passes a cached page to the requester of an outstanding request. If the
+	 * page gets revalidated, the request remains outstanding.
+	 */
+	private void handleCached(int id, boolean revalidate) {
+
+		final IRequester rc;
+		final ItemList cached;
+
+		synchronized (requests) {
+
+			final Request r;
+
+			if (revalidate) {
+				r = (Request) requests.get(new Integer(id));
+			} else {
+				r = reqDone(id);
+			}
+
+			if (r == null) {
+				return;
+			}
+
+			rc = r.requester;
+			cached = r.cached;
+		}
+
+		notifyRequester(rc, cached);
+		prefetch(cached);
+	}
+
+	/**
+	 * Handles a request reply. If the request is still outstanding, the list
+	 * gets cached (unless the cache has been invalidated since the request has
+	 * been sent) and passed to the requester. If the requester already got an
+	 * equal cached version of the list, the list is not passed again. Replies
+	 * to prefetches only get cached.
+	 */
+	private void handleReply(ItemList list) {
+
+		final IRequester rc;
+		final ItemList cached;
+
+		// finishing and caching is atomic with respect to req(), which either
+		// adopts the outstanding prefetch or finds its reply in the cache
+
+		synchronized (requests) {
+
+			final Request r = reqDone(list.getRequestID());
+
+			if (r == null) {
+				return; // outdated
+			}
+
+			listCache.put(list, r.generation);
+
+			if (r.requester == null) {
+				return; // prefetched
+			}
+
+			rc = r.requester;
+			cached = r.cached;
+		}
+
+		if (cached == null || !cached.hasSameContent(list)) {
+			notifyRequester(rc, list);
+		}
+
+		prefetch(list);
+	}
+
+	/** Create the input to decode incoming messages with. */
+	private static BaIn newDecodeBuffer() {
+
+		final BaIn bis = new BaIn(true);
+		bis.setStringCache(STRING_CACHE_SIZE);
+		return bis;
+	}
+
+	/**
+	 * Create an empty item list for a request reply.
+	 * 
+	 * @return the list or <code>null</code> if the reply is not an item list
+	 */
+	private ItemList newReplyList(int msgID) {
+
+		switch (msgID) {
+		case Message.REQ_PLAYLIST:
+			return new ItemList(ItemList.TYPE_PLAYLIST);
+		case Message.REQ_QUEUE:
+			return new ItemList(ItemList.TYPE_QUEUE);
+		case Message.REQ_MLIB:
+			return new ItemList(ItemList.TYPE_MLIB);
+		case Message.REQ_FILES:
+			return new ItemList(info.getFileActions());
+		case Message.REQ_SEARCH:
+			return new ItemList(ItemList.TYPE_SEARCH);
+		default:
+			return null;
+		}
+	}
+
+	private void notifyRequester(IRequester rc, ItemList list) {
+
+		if (list.isPlaylist()) {
+			rc.handlePlaylist(list);
+		} else if (list.isQueue()) {
+			rc.handleQueue(list);
+		} else if (list.isMediaLib()) {
+			rc.handleLibrary(list);
+		} else if (list.isFiles()) {
+			rc.handleFiles(list);
+		} else if (list.isSearch()) {
+			rc.handleSearch(list);
+		} else {
+			Log.bug("Oct 18, 2026.11:42:17 AM");
+		}
+	}
 
-		reqCaller = rc;
-		reqID = req.getRequestID();
+	/**
+	 * Get the item list of a request reply message. Deserializes the list if
+	 * it has not already been deserialized while receiving the message.
+	 */
+	private ItemList replyList(Message m) throws BinaryDataExecption {
+
+		if (m.obj != null) {
+			return (ItemList) m.obj;
+		}
+
+		final ItemList list = newReplyList(m.id);
+		Serial.in(list, bis.wrap(m.data));
+		return list;
+	}
+
+	/**
+	 * Prefetch pages adjacent to a page of an item list which has just been
+	 * passed to a requester.
+	 */
+	private void prefetch(ItemList list) {
+
+		final int page = list.getPage();
+
+		if (page < list.getPageMax()) {
+			prefetch(list, page + 1);
+		}
+		if (prefetchPrevious && page > 0) {
+			prefetch(list, page - 1);
+		}
+	}
+
+	/**
+	 * Request a page of an item list in the background, unless the page is
+	 * already cached or requested. The reply only gets cached.
+	 */
+	private void prefetch(ItemList list, int page) {
+
+		final int type = list.getType();
+		final String key = ListCache.key(type, list.getPath(), page);
+
+		if (listCache.contains(key)) {
+			return;
+		}
+
+		final RequestParam req;
+		if (list.isPlaylist() || list.isQueue()) {
+			req = new RequestParam(page);
+		} else {
+			req = new RequestParam(list.getPath(), page);
+		}
 
 		final Message m = new Message();
 
-		m.id = msgID;
-		m.data = Serial.out(req);
+		m.id = type;
+		m.obj = req;
+		m.background = true;
 
-		conn.send(m);
+		synchronized (requests) {
+
+			final Enumeration e = requests.elements();
+			while (e.hasMoreElements()) {
+				if (key.equals(((Request) e.nextElement()).key)) {
+					return;
+				}
+			}
+
+			final Request r = new Request(req.getRequestID(), null, key);
+
+			requests.put(new Integer(r.id), r);
+
+			MainLoop.schedule(r, REQUEST_TIMEOUT);
+
+			conn.send(m);
+		}
+	}
+
+	/**
+	 * Cancel outstanding prefetches, except a prefetch of a specific page. Must
+	 * be called with the lock on {@link #requests} held.
+	 * 
+	 * @param key
+	 *            cache key of the page whose prefetch to keep (may be
+	 *            <code>null</code>)
+	 * @return the kept prefetch or <code>null</code> if there is no
+	 *         outstanding prefetch of the page
+	 */
+	private Request prefetchCancel(String key) {
+
+		final Vector cancelled = new Vector();
+
+		Request kept = null;
+
+		final Enumeration e = requests.elements();
+		while (e.hasMoreElements()) {
+			final Request r = (Request) e.nextElement();
+			if (r.requester != null) {
+				continue;
+			}
+			if (key != null && key.equals(r.key)) {
+				kept = r;
+			} else {
+				cancelled.addElement(r);
+			}
+		}
+
+		for (int i = 0; i < cancelled.size(); i++) {
+			reqDone(((Request) cancelled.elementAt(i)).id);
+		}
+
+		return kept;
+	}
+
+	/**
+	 * Finish an outstanding request. Must be called with the lock on
+	 * {@link #requests} held.
+	 * 
+	 * @param id
+	 *            the request ID
+	 * @return the request or <code>null</code> if there is no outstanding
+	 *         request with the given ID
+	 */
+	private Request reqDone(int id) {
+
+		final Request r = (Request) requests.remove(new Integer(id));
+
+		if (r != null) {
+			r.cancel();
+		}
+
+		return r;
+	}
+
+	/**
+	 * Remove all outstanding item requests. Item replies do not contain the
+	 * ID of the request they answer, but there is at most one outstanding item
+	 * request per requester and requesters get no item replies passed anyway.
+	 */
+	private void reqDoneItems() {
+
+		final Vector done = new Vector();
+
+		synchronized (requests) {
+
+			final Enumeration e = requests.elements();
+			while (e.hasMoreElements()) {
+				final Request r = (Request) e.nextElement();
+				if (r.key == null) {
+					done.addElement(r);
+				}
+			}
+
+			for (int i = 0; i < done.size(); i++) {
+				reqDone(((Request) done.elementAt(i)).id);
+			}
+		}
+	}
+
+	/**
+	 * Send a request. Outstanding requests of the same requester are
+	 * superseded by the new request, requests of other requesters remain
+	 * outstanding.
+	 * <p>
+	 * Requests for item list pages are answered from the {@link #listCache} if
+	 * possible. Cached playlist and queue pages, as well as other pages older
+	 * than {@link #LIST_CACHE_REFRESH}, get revalidated in the background.
+	 * <p>
+	 * Once a page has been passed to the requester, the next page (and
+	 * optionally the previous one, see {@link #setPrefetchPrevious(boolean)})
+	 * gets prefetched into the cache. A new request cancels outstanding
+	 * prefetches, unless one of them is for the requested page - then the
+	 * prefetch's reply is passed to the requester. If the prefetch's reply
+	 * has already arrived, it is found in the cache instead.
+	 * <p>
+	 * May be called by any thread, the whole sequence runs with the lock on
+	 * {@link #requests} held.
+	 */
+	private void req(IRequester rc, int msgID, RequestParam req) {
+
+		final String key;
+		if (msgID == Message.REQ_ITEM) {
+			key = null;
+		} else {
+			key = ListCache.key(msgID, req.getPath(), req.getPage());
+		}
+
+		synchronized (requests) {
+
+			reqCancel(rc);
+
+			final Request prefetch = prefetchCancel(key);
+
+			final Request r;
+
+			if (prefetch != null) {
+				r = prefetch;
+				r.requester = rc;
+			} else {
+				r = new Request(req.getRequestID(), rc, key);
+				requests.put(new Integer(r.id), r);
+			}
+
+			final ListCache.Entry cached = key == null ? null : listCache
+					.get(msgID, req.getPath(), req.getPage());
+
+			if (cached != null) {
+
+				final boolean revalidate = msgID == Message.REQ_PLAYLIST
+						|| msgID == Message.REQ_QUEUE
+						|| cached.getAge() > LIST_CACHE_REFRESH;
+
+				r.cached = cached.list;
+
+				MainLoop.schedule(new TimerTask() {
+					public void run() {
+						handleCached(r.id, revalidate);
+					}
+				});
+
+				if (!revalidate) {
+					return;
+				}
+			}
+
+			if (prefetch != null) {
+				return; // reply already requested
+			}
+
+			MainLoop.schedule(r, REQUEST_TIMEOUT);
+
+			final Message m = new Message();
+
+			m.id = msgID;
+			m.obj = req;
+
+			conn.send(m);
+		}
 	}
 
 }
@@ -0,0 +1,178 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.player;
+
+import remuco.client.common.data.Progress;
+import remuco.client.common.util.Tools;
+
+/**
+ * Extrapolates the progress of the current item between progress syncs from
+ * the server.
+ * <p>
+ * The model gets updated by the {@link Player} whenever a progress or
+ * playback state change has been received. In between, the progress grows
+ * with the time passed while playing. When a progress sync arrives, the
+ * extrapolated progress is replaced by the real one (the difference is
+ * available as {@link #getDrift()}).
+ * <p>
+ * This allows clients to display a running progress without the need for
+ * frequent progress syncs (see
+ * {@link remuco.client.common.data.ClientInfo#setProgressInterval(int)}).
+ * Time is measured with {@link System#currentTimeMillis()} (the only clock
+ * available on all platforms) - negative time differences, caused by clock
+ * adjustments, are treated as no time passed.
+ */
+public final class ProgressModel {
+
+	/** Progress in milliseconds at {@link #since}. */
+	private long base = 0;
+
+	private int drift = 0;
+
+	private int length = 0;
+
+	private boolean playing = false;
+
+	/** Time when {@link #base} has been set. */
+	private long since = System.currentTimeMillis();
+
+	/**
+	 * Get the difference between the real and the extrapolated progress as
+	 * detected on the last progress sync.
+	 * 
+	 * @return drift in seconds (positive if the extrapolation was behind)
+	 */
+	public int getDrift() {
+		return drift;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public String getLengthFormatted() {
+		return Tools.formatTime(length);
+	}
+
+	/**
+	 * Get the time until the progress as returned by {@link #getProgress()}
+	 * changes next. Clients may use this to schedule progress display updates
+	 * exactly when needed.
+	 * 
+	 * @return milliseconds until the next progress change or -1 if progress
+	 *         does not change (not playing or end of item reached)
+	 */
+	public long getMillisToNextChange() {
+
+		if (!playing || base < 0) {
+			return -1;
+		}
+
+		final long now = millis();
+
+		if (length > 0 && now >= length * 1000L) {
+			return -1;
+		}
+
+		return 1000 - now % 1000;
+	}
+
+	/**
+	 * Get the extrapolated progress.
+	 * 
+	 * @return progress in seconds (negative if unknown)
+	 */
+	public int getProgress() {
+
+		if (base < 0) {
+			return -1;
+		}
+
+		final long now = millis();
+
+		if (length > 0 && now > length * 1000L) {
+			return length;
+		}
+
+		return (int) (now / 1000);
+	}
+
+	public String getProgressFormatted() {
+		return Tools.formatTime(getProgress());
+	}
+
+	public boolean isPlaying() {
+		return playing;
+	}
+
+	/**
+	 * Set whether the player is playing. The progress only grows while
+	 * playing.
+	 */
+	public void setPlaying(boolean playing) {
+
+		if (this.playing == playing) {
+			return;
+		}
+
+		rebase(millis());
+
+		this.playing = playing;
+	}
+
+	/**
+	 * Synchronize with a real progress.
+	 * 
+	 * @param p
+	 *            the progress received from the server
+	 */
+	public void sync(Progress p) {
+
+		if (base >= 0 && p.getProgress() >= 0 && p.getLength() == length) {
+			drift = p.getProgress() - getProgress();
+		} else {
+			drift = 0;
+		}
+
+		length = p.getLength();
+		base = p.getProgress() < 0 ? -1 : p.getProgress() * 1000L;
+		since = System.currentTimeMillis();
+	}
+
+	/** Current progress in milliseconds. */
+	private long millis() {
+
+		if (!playing || base < 0) {
+			return base;
+		}
+
+		final long elapsed = System.currentTimeMillis() - since;
+
+		return elapsed > 0 ? base + elapsed : base;
+	}
+
+	private void rebase(long progress) {
+
+		base = progress;
+		since = System.currentTimeMillis();
+	}
+
+}
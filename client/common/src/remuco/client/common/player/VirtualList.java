@@ -0,0 +1,405 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ * 
+ *   This file is part of Remuco.
+ * 
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ * 
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ * 
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.player;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import remuco.client.common.data.Item;
+import remuco.client.common.data.ItemList;
+
+/**
+ * Presents all pages of an item list as one logical sequence of rows. Each
+ * page consists of the page's nested lists followed by its items (the server
+ * puts nested lists on the first pages, followed by items).
+ * <p>
+ * Pages get requested on demand when a row is accessed which is not yet
+ * available. Only a bounded number of pages is kept in memory, least recently
+ * used pages get dropped (and requested again when needed). The first page is
+ * always kept since it provides the list's path and actions.
+ * <p>
+ * The number of rows is known once the first page has been received. Until
+ * the last page has been received, the number of rows is estimated, assuming
+ * the last page is full.
+ * <p>
+ * Listeners get notified by the main loop, other methods may be called by any
+ * thread.
+ */
+public final class VirtualList {
+
+	/** Interface for classes interested in rows becoming available. */
+	public interface IListener {
+
+		/**
+		 * Notifies that rows have become available or that the number of rows
+		 * has changed.
+		 * 
+		 * @param list
+		 *            the list whose rows changed
+		 */
+		public void notifyRowsChanged(VirtualList list);
+
+	}
+
+	/** A resident (possibly partially received) page. */
+	private static class Page {
+
+		private ItemList list;
+
+		/** Number of rows of the page already available. */
+		private int rows;
+
+		private Page(ItemList list, int rows) {
+			this.list = list;
+			this.rows = rows;
+		}
+	}
+
+	/** Requester for a single page. */
+	private class PageRequester implements IPartialRequester {
+
+		private final int page;
+
+		public PageRequester(int page) {
+			this.page = page;
+		}
+
+		public void handleFiles(ItemList files) {
+			handlePage(this, files);
+		}
+
+		public void handleItem(Item item) {
+			// not used
+		}
+
+		public void handleLibrary(ItemList library) {
+			handlePage(this, library);
+		}
+
+		public void handlePartialList(ItemList list, int from, int to) {
+			handlePartialPage(this, list, to);
+		}
+
+		public void handlePlaylist(ItemList playlist) {
+			handlePage(this, playlist);
+		}
+
+		public void handleQueue(ItemList queue) {
+			handlePage(this, queue);
+		}
+
+		public void handleSearch(ItemList search) {
+			handlePage(this, search);
+		}
+
+	}
+
+	private Page first = null;
+
+	/** Page number of the last page if it has been received, otherwise -1. */
+	private int lastPage = -1;
+
+	/** Number of rows on the last page (if {@link #lastPage} is set). */
+	private int lastPageRows = 0;
+
+	private IListener listener = null;
+
+	/**
+	 * Page numbers ({@link Integer}) of resident pages, least recently used
+	 * first.
+	 */
+	private final Vector lru = new Vector();
+
+	private final int maxPages;
+
+	private int pageMax = 0, pageSize = 0;
+
+	private final String path[];
+
+	/** Requesters of requested pages, mapped by page number. */
+	private final Hashtable pending = new Hashtable();
+
+	/** Page numbers ({@link Integer}) of requested pages, oldest first. */
+	private final Vector pendingOrder = new Vector();
+
+	private final Player player;
+
+	/** Resident pages ({@link Page}) except the first one, mapped by number. */
+	private final Hashtable resident = new Hashtable();
+
+	private final int type;
+
+	/**
+	 * Create a new virtual list. The first page gets requested immediately.
+	 * 
+	 * @param player
+	 *            the player to use for requesting pages
+	 * @param type
+	 *            the list type (one of the <code>TYPE_...</code> constants in
+	 *            {@link ItemList})
+	 * @param path
+	 *            the list's path, the query if this is a search result list
+	 *            or <code>null</code> for root lists
+	 * @param maxPages
+	 *            maximum number of pages to keep in memory
+	 */
+	public VirtualList(Player player, int type, String path[], int maxPages) {
+
+		this.player = player;
+		this.type = type;
+		this.path = path;
+		this.maxPages = Math.max(maxPages, 2);
+
+		request(0);
+	}
+
+	/** Cancel all outstanding page requests. */
+	public synchronized void cancel() {
+
+		for (int i = 0; i < pendingOrder.size(); i++) {
+			player.reqCancel((IRequester) pending.get(pendingOrder.elementAt(i)));
+		}
+		pending.clear();
+		pendingOrder.removeAllElements();
+	}
+
+	/**
+	 * Get the first page of the list. The first page provides list properties
+	 * like path and actions.
+	 * 
+	 * @return the first page or <code>null</code> if it has not yet been
+	 *         received
+	 */
+	public synchronized ItemList getFirstPage() {
+		return first != null ? first.list : null;
+	}
+
+	/**
+	 * Get the index of a row within its page. The row is a nested list if the
+	 * index is less than {@link ItemList#getNumNested()} of the page,
+	 * otherwise it is an item (subtract the number of nested lists to get the
+	 * item index).
+	 * 
+	 * @see #getPage(int)
+	 */
+	public synchronized int getIndex(int row) {
+		return pageSize > 0 ? row % pageSize : row;
+	}
+
+	/**
+	 * Get the number of rows. The number is exact once the last page has been
+	 * received, before that it may be higher than the real number of rows.
+	 */
+	public synchronized int getNumRows() {
+
+		if (first == null) {
+			return 0;
+		}
+		if (pageMax == 0) {
+			return first.rows;
+		}
+		if (lastPage >= 0) {
+			return pageMax * pageSize + lastPageRows;
+		}
+		return (pageMax + 1) * pageSize;
+	}
+
+	/**
+	 * Get the page containing a row. If the row is not available, the page
+	 * containing it gets requested and the listener gets notified once the row
+	 * is available.
+	 * 
+	 * @param row
+	 *            the row number
+	 * @return the page or <code>null</code> if the row is not available
+	 */
+	public synchronized ItemList getPage(int row) {
+
+		final int page = pageSize > 0 ? row / pageSize : 0;
+
+		final Page p;
+		if (page == 0) {
+			p = first;
+		} else {
+			final Integer key = new Integer(page);
+			p = (Page) resident.get(key);
+			if (p != null) {
+				lru.removeElement(key);
+				lru.addElement(key);
+			}
+		}
+
+		if (p != null && getIndex(row) < p.rows) {
+			return p.list;
+		}
+
+		if (page <= pageMax) {
+			request(page);
+		}
+
+		return null;
+	}
+
+	/** Get the list type (see {@link ItemList#getType()}). */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Set the listener to notify when rows become available.
+	 * 
+	 * @param listener
+	 *            the listener (<code>null</code> for no listener)
+	 */
+	public synchronized void setListener(IListener listener) {
+		this.listener = listener;
+	}
+
+	private void handlePage(PageRequester pr, ItemList list) {
+
+		final IListener l;
+
+		synchronized (this) {
+
+			if (pending.get(new Integer(pr.page)) != pr) {
+				return; // cancelled
+			}
+			done(pr.page);
+
+			final int rows = list.getNumNested() + list.getNumItems();
+			final int page = list.getPage(); // may differ from requested one
+
+			if (page == 0) {
+				pageMax = list.getPageMax();
+				if (pageMax > 0) {
+					pageSize = rows;
+				}
+				first = new Page(list, rows);
+			} else {
+				pageMax = list.getPageMax(); // list may have changed
+				store(page, list, rows);
+			}
+
+			if (page == pageMax) {
+				lastPage = page;
+				lastPageRows = rows;
+			}
+
+			l = listener;
+		}
+
+		if (l != null) {
+			l.notifyRowsChanged(this);
+		}
+	}
+
+	private void handlePartialPage(PageRequester pr, ItemList list, int to) {
+
+		final IListener l;
+
+		synchronized (this) {
+
+			if (pending.get(new Integer(pr.page)) != pr) {
+				return; // cancelled
+			}
+
+			final int rows = list.getNumNested() + to;
+
+			if (pr.page == 0) {
+				if (first == null) {
+					first = new Page(list, rows);
+				} else {
+					first.list = list;
+					first.rows = rows;
+				}
+			} else if (pageSize > 0) {
+				store(pr.page, list, rows);
+			}
+
+			l = listener;
+		}
+
+		if (l != null) {
+			l.notifyRowsChanged(this);
+		}
+	}
+
+	/** Forget about a page request. */
+	private void done(int page) {
+
+		final Integer key = new Integer(page);
+
+		pending.remove(key);
+		pendingOrder.removeElement(key);
+	}
+
+	/**
+	 * Request a page, unless already requested. If there are more outstanding
+	 * requests than pages to keep in memory, the oldest request gets
+	 * cancelled (its rows are probably not of interest anymore).
+	 */
+	private void request(int page) {
+
+		final Integer key = new Integer(page);
+
+		if (pending.containsKey(key)) {
+			return;
+		}
+
+		if (pendingOrder.size() >= maxPages) {
+			final Integer oldest = (Integer) pendingOrder.elementAt(0);
+			player.reqCancel((IRequester) pending.get(oldest));
+			done(oldest.intValue());
+		}
+
+		final PageRequester pr = new PageRequester(page);
+
+		pending.put(key, pr);
+		pendingOrder.addElement(key);
+
+		player.reqList(pr, type, path, page);
+	}
+
+	/** Keep a page in memory, dropping the least recently used if needed. */
+	private void store(int page, ItemList list, int rows) {
+
+		final Integer key = new Integer(page);
+
+		final Page p = (Page) resident.get(key);
+
+		if (p != null) {
+			p.list = list;
+			p.rows = rows;
+			lru.removeElement(key);
+			lru.addElement(key);
+			return;
+		}
+
+		resident.put(key, new Page(list, rows));
+		lru.addElement(key);
+
+		while (lru.size() > maxPages - 1) { // first page is kept separately
+			resident.remove(lru.elementAt(0));
+			lru.removeElementAt(0);
+		}
+	}
+
+}
@@ -22,6 +22,7 @@ package remuco.client.common.serial;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -30,12 +31,62 @@ import java.io.UnsupportedEncodingException;
  * <p>
  * The string related parts may fail if {@link Serial#ENCODING} is not
  * supported.
+ * <p>
+ * Besides reading from a byte array, a {@link BaIn} may also read data
+ * directly from another input stream (see {@link #wrap(InputStream, int)}).
+ * In that case the underlying byte array is a window which gets refilled from
+ * the other input stream as needed.
  * 
  * @see Serial
  * @see BaOut
  */
 public final class BaIn extends ByteArrayInputStream {
 
+	private static final byte[] EMPTY = new byte[0];
+
+	/** Maximum length (in bytes) of strings to put into the string cache. */
+	private static final int STRING_CACHE_MAX_LEN = 64;
+
+	/** Default size of the window used when reading from an input stream. */
+	private static final int WINDOW_SIZE = 4096;
+
+	private int ayOff, ayLen;
+
+	private byte cacheKeys[][];
+
+	private String cacheStrings[];
+
+	/**
+	 * Strings read from the current data, used for back-references (allocated
+	 * on first use, see {@link SerialAtom#STRING_REFS_MAX}).
+	 */
+	private String refs[] = null;
+
+	private int refsNum = 0;
+
+	/** Input stream to read from if not reading from a byte array. */
+	private InputStream src = null;
+
+	/** Number of bytes left to read from {@link #src}. */
+	private int srcRemaining = 0;
+
+	/** Reusable window buffer used when reading from {@link #src}. */
+	private byte window[] = null;
+
+	private boolean zeroCopy = false;
+
+	/**
+	 * Create an input stream without data, supposed to get reused for multiple
+	 * messages. Use {@link #wrap(byte[])} to set the data to read.
+	 * 
+	 * @param zeroCopy
+	 *            see {@link #setZeroCopy(boolean)}
+	 */
+	public BaIn(boolean zeroCopy) {
+		super(EMPTY);
+		this.zeroCopy = zeroCopy;
+	}
+
 	protected BaIn(byte[] ba) {
 		super(ba);
 	}
@@ -53,14 +104,21 @@ public final class BaIn extends ByteArrayInputStream {
 
 		checkType(SerialAtom.TYPE_AB);
 
-		final byte ay[] = readBytes();
+		final int len = readInt(); // num booleans
 
-		final boolean ab[] = new boolean[ay.length];
+		require(len, 1);
 
-		for (int i = 0; i < ab.length; i++) {
-			ab[i] = ay[i] == 0 ? false : true;
+		final boolean ab[] = new boolean[len];
+
+		final byte b[] = buf;
+		int p = pos;
+
+		for (int i = 0; i < len; i++) {
+			ab[i] = b[p++] != 0;
 		}
 
+		pos = p;
+
 		return ab;
 	}
 
@@ -80,12 +138,21 @@ public final class BaIn extends ByteArrayInputStream {
 
 		final int len = readInt(); // num ints
 
+		require(len, 4);
+
 		final int ai[] = new int[len];
 
+		final byte b[] = buf;
+		int p = pos;
+
 		for (int i = 0; i < len; i++) {
-			ai[i] = readInt();
+			ai[i] = ((b[p] & 0xff) << 24) | ((b[p + 1] & 0xff) << 16)
+					| ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+			p += 4;
 		}
 
+		pos = p;
+
 		return ai;
 	}
 
@@ -104,12 +171,20 @@ public final class BaIn extends ByteArrayInputStream {
 
 		final int len = readInt(); // num shorts
 
+		require(len, 2);
+
 		final short an[] = new short[len];
 
+		final byte b[] = buf;
+		int p = pos;
+
 		for (int i = 0; i < len; i++) {
-			an[i] = readShort();
+			an[i] = (short) (((b[p] & 0xff) << 8) | (b[p + 1] & 0xff));
+			p += 2;
 		}
 
+		pos = p;
+
 		return an;
 	}
 
@@ -124,9 +199,7 @@ public final class BaIn extends ByteArrayInputStream {
 	 */
 	public String[] readAS() throws BinaryDataExecption {
 
-		checkType(SerialAtom.TYPE_AS);
-
-		final int len = readInt(); // num strings
+		final int len = readASBegin();
 
 		final String as[] = new String[len];
 
@@ -137,8 +210,46 @@ public final class BaIn extends ByteArrayInputStream {
 		return as;
 	}
 
+	/**
+	 * Starts reading a string array element by element. Reads the type code
+	 * and the length value of the string array. The elements must then be
+	 * read with {@link #readASNext()}.
+	 * 
+	 * @see #readAS()
+	 * 
+	 * @return the number of strings in the array
+	 * @throws BinaryDataExecption
+	 */
+	public int readASBegin() throws BinaryDataExecption {
+
+		checkType(SerialAtom.TYPE_AS);
+
+		final int len = readInt(); // num strings
+
+		require(len, 2); // each string has at least a length value
+
+		return len;
+	}
+
+	/**
+	 * Reads the next element of a string array (see {@link #readASBegin()}).
+	 * 
+	 * @return the string (never <code>null</code>)
+	 * @throws BinaryDataExecption
+	 */
+	public String readASNext() throws BinaryDataExecption {
+
+		return readString();
+	}
+
 	/**
 	 * Reads a byte array which is prefixed by a type code and a length value.
+	 * <p>
+	 * In zero-copy mode (see {@link #setZeroCopy(boolean)}) the returned array
+	 * is the underlying data buffer of this stream. Use
+	 * {@link #getAYOffset()} and {@link #getAYLength()} to locate the byte
+	 * array within the returned array. Otherwise the byte array gets copied
+	 * and offset and length are <code>0</code> and the array's length.
 	 * 
 	 * @see BaOut#writeAY(byte[])
 	 * 
@@ -149,7 +260,97 @@ public final class BaIn extends ByteArrayInputStream {
 
 		checkType(SerialAtom.TYPE_AY);
 
-		return readBytes();
+		if (!zeroCopy || src != null) { // window content is not persistent
+			final byte ay[] = readBytes();
+			ayOff = 0;
+			ayLen = ay.length;
+			return ay;
+		}
+
+		final int len = readInt();
+
+		require(len, 1);
+
+		ayOff = pos;
+		ayLen = len;
+
+		pos += len;
+
+		return buf;
+	}
+
+	/**
+	 * Get the type code of the next atom without consuming it. This allows to
+	 * distinguish alternative message formats.
+	 * 
+	 * @return the type code (one of the <code>TYPE_...</code> constants in
+	 *         {@link SerialAtom})
+	 * @throws BinaryDataExecption
+	 *             if there is no more data
+	 */
+	public int nextType() throws BinaryDataExecption {
+
+		require(1, 1);
+
+		return buf[pos] & 0xff;
+	}
+
+	/**
+	 * Get the next int without consuming it. This allows to inspect a leading
+	 * int value (e.g. an ID) before deciding how to read the rest of the data.
+	 * 
+	 * @see #readI()
+	 * 
+	 * @return the int
+	 * @throws BinaryDataExecption
+	 *             if the next atom is not an int or if there is not enough
+	 *             data
+	 */
+	public int peekI() throws BinaryDataExecption {
+
+		require(1, 5);
+
+		final byte b[] = buf;
+		final int p = pos;
+
+		if ((b[p] & 0xff) != SerialAtom.TYPE_I)
+			throw new BinaryDataExecption("type mismatch (exp: "
+					+ SerialAtom.TYPE_I + ", real: " + (b[p] & 0xff) + ")");
+
+		return ((b[p + 1] & 0xff) << 24) | ((b[p + 2] & 0xff) << 16)
+				| ((b[p + 3] & 0xff) << 8) | (b[p + 4] & 0xff);
+	}
+
+	/**
+	 * Skip the next byte array. In contrast to {@link #readAY()}, the byte
+	 * array data is never held in memory as a whole, i.e. skipping works
+	 * with constant memory even for very large arrays read from an input
+	 * stream (see {@link #wrap(InputStream, int)}).
+	 * 
+	 * @throws BinaryDataExecption
+	 *             if there is not enough data
+	 */
+	public void skipAY() throws BinaryDataExecption {
+
+		checkType(SerialAtom.TYPE_AY);
+
+		int len = readInt();
+
+		if (len < 0 || len > available())
+			throw new BinaryDataExecption("not enough data");
+
+		while (true) {
+			final int n = Math.min(len, count - pos);
+			pos += n;
+			len -= n;
+			if (len == 0) {
+				break;
+			}
+			fill(Math.min(len, buf.length));
+		}
+
+		ayOff = 0;
+		ayLen = 0;
 	}
 
 	/**
@@ -166,15 +367,9 @@ public final class BaIn extends ByteArrayInputStream {
 
 		checkType(SerialAtom.TYPE_B);
 
-		if (pos + 1 > count)
-			throw new BinaryDataExecption("not enough data");
-
-		final int b = read();
+		require(1, 1);
 
-		if (b == 0)
-			return false;
-		else
-			return true;
+		return buf[pos++] != 0;
 
 	}
 
@@ -240,13 +435,10 @@ public final class BaIn extends ByteArrayInputStream {
 
 		checkType(SerialAtom.TYPE_X);
 
-		if (pos + 8 > count)
-			throw new BinaryDataExecption("not enough data");
+		final long hi = readInt() & 0xffffffffL;
+		final long lo = readInt() & 0xffffffffL;
 
-		return ((((long) read() & 0xff) << 56) | (((long) read() & 0xff) << 48)
-				| (((long) read() & 0xff) << 40)
-				| (((long) read() & 0xff) << 32) | ((read() & 0xff) << 24)
-				| ((read() & 0xff) << 16) | ((read() & 0xff) << 8) | (read() & 0xff));
+		return (hi << 32) | lo;
 
 	}
 
@@ -264,11 +456,215 @@ public final class BaIn extends ByteArrayInputStream {
 
 		checkType(SerialAtom.TYPE_Y);
 
-		if (pos + 1 > count)
+		require(1, 1);
+
+		return buf[pos++];
+
+	}
+
+	/**
+	 * Returns the number of bytes left to read, including bytes not yet read
+	 * from the input stream given by {@link #wrap(InputStream, int)}.
+	 */
+	public int available() {
+		return count - pos + srcRemaining;
+	}
+
+	/**
+	 * Skips all data left to read. When reading from an input stream, the
+	 * remaining data gets read from that stream and is discarded.
+	 * 
+	 * @return the number of bytes skipped
+	 * @throws BinaryDataExecption
+	 *             if reading from the input stream fails
+	 */
+	public int discard() throws BinaryDataExecption {
+
+		final int skipped = available();
+
+		pos = count;
+
+		while (srcRemaining > 0) {
+			fill(Math.min(srcRemaining, buf.length));
+			pos = count;
+		}
+
+		return skipped;
+	}
+
+	/**
+	 * Get the length of the byte array data read by the last call to
+	 * {@link #readAY()}.
+	 */
+	public int getAYLength() {
+		return ayLen;
+	}
+
+	/**
+	 * Get the offset of the byte array data read by the last call to
+	 * {@link #readAY()} within the array returned by that call.
+	 */
+	public int getAYOffset() {
+		return ayOff;
+	}
+
+	/**
+	 * Set a string cache. Strings read by this stream are cached, keyed by
+	 * their binary representation. When the same binary string gets read
+	 * again (possibly from another message), the cached string instance gets
+	 * returned instead of decoding a new string. Only short strings (like
+	 * meta information keys, artist and album names) are cached.
+	 * 
+	 * @param size
+	 *            the number of cache slots (rounded down to a power of 2),
+	 *            <code>0</code> disables the cache
+	 */
+	public void setStringCache(int size) {
+
+		if (size <= 0) {
+			cacheKeys = null;
+			cacheStrings = null;
+			return;
+		}
+
+		int slots = 1;
+		while (slots <= size / 2) {
+			slots <<= 1;
+		}
+
+		cacheKeys = new byte[slots][];
+		cacheStrings = new String[slots];
+	}
+
+	/**
+	 * Set zero-copy mode. In zero-copy mode, byte arrays read with
+	 * {@link #readAY()} refer to the data buffer of this stream instead of
+	 * being copied. This is only safe if the data buffer does not
+	 * get altered as long as the atoms are in use.
+	 * 
+	 * @param zeroCopy
+	 *            whether to enable or disable zero-copy mode
+	 */
+	public void setZeroCopy(boolean zeroCopy) {
+		this.zeroCopy = zeroCopy;
+	}
+
+	/**
+	 * Set the data to read. Any previous data is discarded and reading starts
+	 * at the beginning of <em>ba</em>. The data is not copied.
+	 * 
+	 * @param ba
+	 *            the data to read (<code>null</code> is handled like an empty
+	 *            array)
+	 * @return this stream
+	 */
+	public BaIn wrap(byte[] ba) {
+
+		buf = ba != null ? ba : EMPTY;
+		pos = 0;
+		mark = 0;
+		count = buf.length;
+
+		src = null;
+		srcRemaining = 0;
+
+		clearRefs();
+
+		return this;
+	}
+
+	/**
+	 * Set an input stream to read data from. Any previous data is discarded.
+	 * Data gets read from <em>is</em> only as needed and never more than
+	 * <em>len</em> bytes. Byte arrays are always copied in this mode (see
+	 * {@link #setZeroCopy(boolean)}).
+	 * <p>
+	 * Errors while reading from <em>is</em> are reported as
+	 * {@link BinaryDataExecption}s by the read methods of this stream. In
+	 * that case <em>is</em> is in an undefined state.
+	 * 
+	 * @param is
+	 *            the input stream to read from
+	 * @param len
+	 *            number of bytes to read from <em>is</em>
+	 * @return this stream
+	 */
+	public BaIn wrap(InputStream is, int len) {
+
+		if (window == null || window.length > WINDOW_SIZE) {
+			window = new byte[WINDOW_SIZE];
+		}
+
+		buf = window;
+		pos = 0;
+		mark = 0;
+		count = 0;
+
+		src = is;
+		srcRemaining = len;
+
+		clearRefs();
+
+		return this;
+	}
+
+	private void clearRefs() {
+
+		if (refsNum > 0) {
+			for (int i = 0; i < refsNum; i++) {
+				refs[i] = null;
+			}
+			refsNum = 0;
+		}
+	}
+
+	/**
+	 * Makes sure at least <em>n</em> bytes are available in the underlying
+	 * buffer by reading from the input stream set by
+	 * {@link #wrap(InputStream, int)}. Unread data gets moved to the beginning
+	 * of the buffer, the buffer grows if needed.
+	 * 
+	 * @throws BinaryDataExecption
+	 *             if there is not enough data left or if reading fails
+	 */
+	private void fill(int n) throws BinaryDataExecption {
+
+		final int avail = count - pos;
+
+		if (avail >= n) {
+			return;
+		}
+
+		if (n - avail > srcRemaining)
 			throw new BinaryDataExecption("not enough data");
 
-		return (byte) read();
+		if (n > buf.length) {
+			final byte grown[] = new byte[Math.max(n, buf.length * 2)];
+			System.arraycopy(buf, pos, grown, 0, avail);
+			buf = grown;
+			window = grown;
+		} else if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, avail);
+		}
+
+		pos = 0;
+		count = avail;
 
+		try {
+			while (count < n) {
+				final int num = src.read(buf, count, Math.min(buf.length
+						- count, srcRemaining));
+				if (num < 0) {
+					srcRemaining = 0;
+					throw new BinaryDataExecption("end of stream");
+				}
+				count += num;
+				srcRemaining -= num;
+			}
+		} catch (IOException e) {
+			srcRemaining = 0;
+			throw new BinaryDataExecption("IO error (" + e.getMessage() + ")");
+		}
 	}
 
 	/**
@@ -281,10 +677,9 @@ public final class BaIn extends ByteArrayInputStream {
 	 */
 	private void checkType(int exptected) throws BinaryDataExecption {
 
-		if (pos + 1 > count)
-			throw new BinaryDataExecption("not enough data");
+		require(1, 1);
 
-		final int real = read();
+		final int real = buf[pos++] & 0xff;
 
 		if (real != exptected)
 			throw new BinaryDataExecption("type mismatch (exp: " + exptected
@@ -294,27 +689,15 @@ public final class BaIn extends ByteArrayInputStream {
 	/** Same as {@link #readAY()} but without reading a type code. */
 	private byte[] readBytes() throws BinaryDataExecption {
 
-		// check if size can be read
-
-		if (pos + 4 > count)
-			throw new BinaryDataExecption("not enough data");
-
 		final int len = readInt();
 
-		// check if there is enough data
-
-		if (pos + len > count)
-			throw new BinaryDataExecption("not enough data");
-
-		// read the byte array
+		require(len, 1);
 
 		final byte ay[] = new byte[len];
 
-		try {
-			read(ay);
-		} catch (IOException e) {
-			// should not happen on a ByteArrayInputStream
-		}
+		System.arraycopy(buf, pos, ay, 0, len);
+
+		pos += len;
 
 		return ay;
 	}
@@ -322,22 +705,56 @@ public final class BaIn extends ByteArrayInputStream {
 	/** Like {@link #readI()} but without reading a type code before. */
 	private int readInt() throws BinaryDataExecption {
 
-		if (pos + 4 > count)
-			throw new BinaryDataExecption("not enough data");
+		require(1, 4);
+
+		final byte b[] = buf;
+		final int p = pos;
 
-		return (((read() & 0xff) << 24) | ((read() & 0xff) << 16)
-				| ((read() & 0xff) << 8) | (read() & 0xff));
+		pos += 4;
+
+		return ((b[p] & 0xff) << 24) | ((b[p + 1] & 0xff) << 16)
+				| ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
 
 	}
 
 	/** Like {@link #readN()} but without reading a type code before. */
 	private short readShort() throws BinaryDataExecption {
 
-		if (pos + 2 > count)
+		require(1, 2);
+
+		final int p = pos;
+
+		pos += 2;
+
+		return (short) (((buf[p] & 0xff) << 8) | (buf[p + 1] & 0xff));
+
+	}
+
+	/**
+	 * Checks if there is enough data left to read a number of elements. Used
+	 * to check array lengths once before reading the elements directly from
+	 * the underlying buffer. When reading from an input stream, the required
+	 * data gets read into the underlying buffer.
+	 * 
+	 * @param num
+	 *            number of elements to read
+	 * @param size
+	 *            (minimum) size of an element in bytes
+	 * @throws BinaryDataExecption
+	 *             if <em>num</em> is negative or if there is not enough data
+	 */
+	private void require(int num, int size) throws BinaryDataExecption {
+
+		if (num < 0)
 			throw new BinaryDataExecption("not enough data");
 
-		return (short) (((read() & 0xff) << 8) | (read() & 0xff));
+		if (num <= (count - pos) / size)
+			return;
 
+		if (num > (count - pos + srcRemaining) / size)
+			throw new BinaryDataExecption("not enough data");
+
+		fill(num * size);
 	}
 
 	/**
@@ -351,8 +768,43 @@ public final class BaIn extends ByteArrayInputStream {
 
 		final int len = readShort(); // len string
 
-		if (pos + len > count)
-			throw new BinaryDataExecption("not enough data");
+		if (len == SerialAtom.STRING_REF) {
+			return readStringRef();
+		}
+
+		require(len, 1);
+
+		final String s;
+
+		if (len == 0) {
+			s = "";
+		} else if (cacheKeys != null && len <= STRING_CACHE_MAX_LEN) {
+			s = readStringCached(len);
+		} else {
+			s = decodeString(len);
+		}
+
+		pos += len;
+
+		if (refsNum < SerialAtom.STRING_REFS_MAX) {
+			if (refs == null) {
+				refs = new String[16];
+			} else if (refsNum == refs.length) {
+				final String grown[] = new String[refsNum * 2];
+				System.arraycopy(refs, 0, grown, 0, refsNum);
+				refs = grown;
+			}
+			refs[refsNum++] = s;
+		}
+
+		return s;
+	}
+
+	/**
+	 * Decodes a string from the underlying buffer, starting at the current
+	 * position. The position does not get changed.
+	 */
+	private String decodeString(int len) {
 
 		String s = null;
 
@@ -368,9 +820,56 @@ public final class BaIn extends ByteArrayInputStream {
 			}
 		}
 
-		pos += len;
+		return s;
+	}
+
+	/**
+	 * Like {@link #decodeString(int)} but looks up the string in the string
+	 * cache first.
+	 */
+	private String readStringCached(int len) {
+
+		final byte b[] = buf;
+		final int p = pos;
+
+		int h = 0;
+		for (int i = 0; i < len; i++) {
+			h = 31 * h + b[p + i];
+		}
+		final int slot = (h ^ (h >>> 16)) & (cacheKeys.length - 1);
+
+		final byte key[] = cacheKeys[slot];
+
+		if (key != null && key.length == len) {
+			int i = 0;
+			while (i < len && key[i] == b[p + i]) {
+				i++;
+			}
+			if (i == len) {
+				return cacheStrings[slot];
+			}
+		}
+
+		final String s = decodeString(len);
+
+		final byte newKey[] = new byte[len];
+		System.arraycopy(b, p, newKey, 0, len);
+
+		cacheKeys[slot] = newKey;
+		cacheStrings[slot] = s;
 
 		return s;
 	}
 
+	/** Reads the index of a string back-reference and resolves it. */
+	private String readStringRef() throws BinaryDataExecption {
+
+		final int index = readInt();
+
+		if (index < 0 || index >= refsNum)
+			throw new BinaryDataExecption("invalid string reference");
+
+		return refs[index];
+	}
+
 }
@@ -21,9 +21,10 @@
 package remuco.client.common.serial;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
+import remuco.client.common.util.Log;
+
 /**
  * Extends {@link ByteArrayOutputStream} by some methods for convenient writing
  * of Remuco specific basic data types.
@@ -36,20 +37,83 @@ import java.io.UnsupportedEncodingException;
  */
 public final class BaOut extends ByteArrayOutputStream {
 
-	protected BaOut(int size) {
+	/** Size of a message header (message ID and data length). */
+	private static final int HEADER_LEN = 6;
+
+	/** Position of the header of the message currently being written. */
+	private int msgStart = 0;
+
+	public BaOut(int size) {
 		super(size);
 	}
 
+	/**
+	 * Starts a new message by reserving room for the message header. Message
+	 * data can be written afterwards, e.g. with
+	 * {@link Serial#out(ISerializable, BaOut)}. Once all data has been
+	 * written, {@link #endMessage()} must be called.
+	 * <p>
+	 * This allows to reuse one output stream for all messages to send, which
+	 * then can be written including their header with a single call to
+	 * {@link #writeTo(java.io.OutputStream)}. Messages started without a
+	 * previous {@link #reset()} get appended to already written messages.
+	 * 
+	 * @param id
+	 *            the message ID
+	 */
+	public void beginMessage(int id) {
+
+		msgStart = count;
+
+		writeShort((short) id);
+		writeInt(0); // set in endMessage()
+	}
+
+	/**
+	 * Ends a message started with {@link #beginMessage(int)} by setting the
+	 * data length in the message header.
+	 * 
+	 * @return the length of the message data (excluding the header)
+	 */
+	public int endMessage() {
+
+		if (count < msgStart + HEADER_LEN) {
+			Log.bug("Oct 18, 2026.9:12:40 AM");
+			return 0;
+		}
+
+		final int end = count;
+		final int len = end - msgStart - HEADER_LEN;
+
+		count = msgStart + 2;
+		writeInt(len);
+		count = end;
+
+		return len;
+	}
+
+	/**
+	 * Overrides {@link ByteArrayOutputStream#reset()}. Does the same but
+	 * without synchronization.
+	 */
+	public void reset() {
+
+		count = 0;
+		msgStart = 0;
+	}
+
 	/**
 	 * Overrides {@link ByteArrayOutputStream#write(byte[])}. Does exactly the
-	 * same but catches the senseless {@link IOException}.
+	 * same but without synchronization and without the senseless
+	 * <code>IOException</code>.
 	 */
 	public void write(byte[] ab) {
-		try {
-			super.write(ab);
-		} catch (IOException e) {
-			// should not happen on a ByteArrayOutputStream
-		}
+
+		ensure(ab.length);
+
+		System.arraycopy(ab, 0, buf, count, ab.length);
+
+		count += ab.length;
 	}
 
 	/**
@@ -62,16 +126,25 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeAB(boolean[] ab) {
 
-		write(SerialAtom.TYPE_AB);
+		writeByte(SerialAtom.TYPE_AB);
 
 		if (ab == null) {
 			writeInt(0);
-		} else {
-			writeInt(ab.length);
-			for (int i = 0; i < ab.length; i++) {
-				write(ab[i] ? 1 : 0);
-			}
+			return;
 		}
+
+		writeInt(ab.length);
+
+		ensure(ab.length);
+
+		final byte b[] = buf;
+		int c = count;
+
+		for (int i = 0; i < ab.length; i++) {
+			b[c++] = (byte) (ab[i] ? 1 : 0);
+		}
+
+		count = c;
 	}
 
 	/**
@@ -84,7 +157,7 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeAI(int[] ai) {
 
-		write(SerialAtom.TYPE_AI);
+		writeByte(SerialAtom.TYPE_AI);
 
 		if (ai == null) {
 			writeInt(0); // num ints
@@ -93,9 +166,21 @@ public final class BaOut extends ByteArrayOutputStream {
 
 		writeInt(ai.length); // num ints
 
+		ensure(ai.length * 4);
+
+		final byte b[] = buf;
+		int c = count;
+
 		for (int i = 0; i < ai.length; i++) { // ints
-			writeInt(ai[i]);
+			final int v = ai[i];
+			b[c] = (byte) (v >> 24);
+			b[c + 1] = (byte) (v >> 16);
+			b[c + 2] = (byte) (v >> 8);
+			b[c + 3] = (byte) v;
+			c += 4;
 		}
+
+		count = c;
 	}
 
 	/**
@@ -108,7 +193,7 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeAN(short[] an) {
 
-		write(SerialAtom.TYPE_AN);
+		writeByte(SerialAtom.TYPE_AN);
 
 		if (an == null) {
 			writeInt(0); // num shorts
@@ -117,9 +202,19 @@ public final class BaOut extends ByteArrayOutputStream {
 
 		writeInt(an.length); // num shorts
 
-		for (int i = 0; i < an.length; i++) { // ints
-			writeShort(an[i]);
+		ensure(an.length * 2);
+
+		final byte b[] = buf;
+		int c = count;
+
+		for (int i = 0; i < an.length; i++) { // shorts
+			final short v = an[i];
+			b[c] = (byte) (v >> 8);
+			b[c + 1] = (byte) v;
+			c += 2;
 		}
+
+		count = c;
 	}
 
 	/**
@@ -132,7 +227,7 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeAS(String[] as) {
 
-		write(SerialAtom.TYPE_AS);
+		writeByte(SerialAtom.TYPE_AS);
 
 		if (as == null) {
 			writeInt(0); // num strings
@@ -156,7 +251,7 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeAY(byte[] ay) {
 
-		write(SerialAtom.TYPE_AY);
+		writeByte(SerialAtom.TYPE_AY);
 
 		if (ay == null) {
 			writeInt(0);
@@ -176,8 +271,8 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeB(boolean b) {
 
-		write(SerialAtom.TYPE_B);
-		write(b ? 1 : 0);
+		writeByte(SerialAtom.TYPE_B);
+		writeByte(b ? 1 : 0);
 
 	}
 
@@ -191,7 +286,7 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeI(int i) {
 
-		write(SerialAtom.TYPE_I);
+		writeByte(SerialAtom.TYPE_I);
 		writeInt(i);
 	}
 
@@ -205,7 +300,7 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeN(short i) {
 
-		write(SerialAtom.TYPE_N);
+		writeByte(SerialAtom.TYPE_N);
 		writeShort(i);
 	}
 
@@ -219,7 +314,7 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeS(String s) {
 
-		write(SerialAtom.TYPE_S);
+		writeByte(SerialAtom.TYPE_S);
 		write(s);
 
 	}
@@ -234,16 +329,10 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeX(long x) {
 
-		write(SerialAtom.TYPE_X);
+		writeByte(SerialAtom.TYPE_X);
 
-		write((int) (x >> 56) & 0xff);
-		write((int) (x >> 48) & 0xff);
-		write((int) (x >> 40) & 0xff);
-		write((int) (x >> 32) & 0xff);
-		write((int) (x >> 24) & 0xff);
-		write((int) (x >> 16) & 0xff);
-		write((int) (x >> 8) & 0xff);
-		write((int) x & 0xff);
+		writeInt((int) (x >> 32));
+		writeInt((int) x);
 	}
 
 	/**
@@ -256,8 +345,8 @@ public final class BaOut extends ByteArrayOutputStream {
 	 */
 	public void writeY(byte y) {
 
-		write(SerialAtom.TYPE_Y);
-		write(y);
+		writeByte(SerialAtom.TYPE_Y);
+		writeByte(y);
 
 	}
 
@@ -291,43 +380,57 @@ public final class BaOut extends ByteArrayOutputStream {
 	/** Same as {@link #writeI(int)} but without a prefixed type code. */
 	private void writeInt(int i) {
 
-		write((i >> 24) & 0xff);
-		write((i >> 16) & 0xff);
-		write((i >> 8) & 0xff);
-		write(i & 0xff);
+		ensure(4);
+
+		final byte b[] = buf;
+		final int c = count;
+
+		b[c] = (byte) (i >> 24);
+		b[c + 1] = (byte) (i >> 16);
+		b[c + 2] = (byte) (i >> 8);
+		b[c + 3] = (byte) i;
+
+		count += 4;
 	}
 
 	/** Same as {@link #writeN(int)} but without a prefixed type code. */
 	private void writeShort(short n) {
 
-		write((n >> 8) & 0xff);
-		write(n & 0xff);
+		ensure(2);
+
+		buf[count] = (byte) (n >> 8);
+		buf[count + 1] = (byte) n;
+
+		count += 2;
+	}
+
+	/**
+	 * Writes a single byte (e.g. a type code). Same as {@link #write(int)} but
+	 * without synchronization.
+	 */
+	private void writeByte(int y) {
+
+		ensure(1);
+
+		buf[count++] = (byte) y;
 	}
 
-	// /**
-	// * Writes an int as {@link #writeInt(int)} but here at a specific position
-	// * into the underlying byte array.
-	// *
-	// * @param i
-	// * the int
-	// * @param at
-	// * the position to write to
-	// */
-	// private void writeIntAt(int i, int at) {
-	//
-	// if (at + 4 > count) {
-	// Log.bug("Feb 22, 2009.6:27:49 PM");
-	// return;
-	// }
-	//
-	// int tmp = count;
-	//
-	// count = at;
-	//
-	// writeInt(i);
-	//
-	// count = tmp;
-	//
-	// }
+	/**
+	 * Makes sure the underlying buffer has room for at least <em>n</em>
+	 * additional bytes. Used to check capacity once before writing array
+	 * elements directly to the buffer.
+	 */
+	private void ensure(int n) {
+
+		if (count + n <= buf.length) {
+			return;
+		}
+
+		final byte grown[] = new byte[Math.max(buf.length << 1, count + n)];
+
+		System.arraycopy(buf, 0, grown, 0, count);
+
+		buf = grown;
+	}
 
 }
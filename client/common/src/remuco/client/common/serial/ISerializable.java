@@ -23,22 +23,31 @@ package remuco.client.common.serial;
 /**
  * Interface for classes supposed to get (de)serialized, i.e. send to and
  * received from the server.
+ * <p>
+ * Each serializable reads and writes its data fields directly in the order
+ * and with the types expected by the server (see {@link SerialAtom} for the
+ * available types).
  */
 public interface ISerializable {
 
 	/**
-	 * Get the serial atoms of this serializable, i.e. all data fields to
-	 * (de)serialize.
+	 * Read all data fields of this serializable from an input stream, i.e.
+	 * update this object with received binary data.
+	 * 
+	 * @param bis
+	 *            the input stream to read from
+	 * @throws BinaryDataExecption
+	 *             if the binary data is malformed, either syntactically or
+	 *             semantically
 	 */
-	public SerialAtom[] getAtoms();
+	public void read(BaIn bis) throws BinaryDataExecption;
 
 	/**
-	 * Notifies that the serial atoms has been updated, i.e. some data has been
-	 * received and deserialized into the serial atoms of this object.
+	 * Write all data fields of this serializable to an output stream.
 	 * 
-	 * @throws BinaryDataExecption
-	 *             if the data in the atoms is semantically malformed
+	 * @param bos
+	 *            the output stream to write to
 	 */
-	public void notifyAtomsUpdated() throws BinaryDataExecption;
+	public void write(BaOut bos);
 
 }
@@ -20,8 +20,6 @@
  */
 package remuco.client.common.serial;
 
-import remuco.client.common.util.Log;
-
 /** Serial (de)serializes {@link ISerializable}s. */
 public final class Serial {
 
@@ -30,8 +28,10 @@ public final class Serial {
 	/**
 	 * Updates a {@link ISerializable} with binary data.
 	 * 
-	 * @param m
-	 *            the message
+	 * @param s
+	 *            the serializable to update
+	 * @param data
+	 *            the binary data
 	 * @throws BinaryDataExecption
 	 *             if binary data is somehow malformed (e.g. incompatible to the
 	 *             atoms of the {@link ISerializable})
@@ -39,55 +39,26 @@ public final class Serial {
 	public static void in(ISerializable s, byte[] data)
 			throws BinaryDataExecption {
 
-		final BaIn bis = new BaIn(data);
-
-		final SerialAtom atoms[] = s.getAtoms();
-
-		final int len = atoms.length;
-
-		for (int i = 0; i < len; i++) {
-
-			switch (atoms[i].type) {
-			case SerialAtom.TYPE_Y:
-				atoms[i].y = bis.readY();
-				break;
-			case SerialAtom.TYPE_B:
-				atoms[i].b = bis.readB();
-				break;
-			case SerialAtom.TYPE_N:
-				atoms[i].n = bis.readN();
-				break;
-			case SerialAtom.TYPE_I:
-				atoms[i].i = bis.readI();
-				break;
-			case SerialAtom.TYPE_X:
-				atoms[i].x = bis.readX();
-				break;
-			case SerialAtom.TYPE_S:
-				atoms[i].s = bis.readS();
-				break;
-			case SerialAtom.TYPE_AB:
-				atoms[i].ab = bis.readAB();
-				break;
-			case SerialAtom.TYPE_AY:
-				atoms[i].ay = bis.readAY();
-				break;
-			case SerialAtom.TYPE_AN:
-				atoms[i].an = bis.readAN();
-				break;
-			case SerialAtom.TYPE_AI:
-				atoms[i].ai = bis.readAI();
-				break;
-			case SerialAtom.TYPE_AS:
-				atoms[i].as = bis.readAS();
-				break;
-			default:
-				Log.bug("Feb 22, 2009.6:25:57 PM");
-				break;
-			}
-		}
+		in(s, new BaIn(data));
+	}
 
-		s.notifyAtomsUpdated();
+	/**
+	 * Updates a {@link ISerializable} with binary data provided by an input
+	 * stream. Using this method, input streams can be reused for multiple
+	 * messages (see {@link BaIn#wrap(byte[])}).
+	 * 
+	 * @param s
+	 *            the serializable to update
+	 * @param bis
+	 *            the input stream providing the binary data
+	 * @throws BinaryDataExecption
+	 *             if binary data is somehow malformed (e.g. incompatible to the
+	 *             atoms of the {@link ISerializable})
+	 */
+	public static void in(ISerializable s, BaIn bis)
+			throws BinaryDataExecption {
+
+		s.read(bis);
 
 		if (bis.available() > 0) {
 			throw new BinaryDataExecption(bis.available() + " unused bytes");
@@ -112,54 +83,28 @@ public final class Serial {
 
 		final BaOut bos = new BaOut(256); // should be enough for most messages
 
-		final SerialAtom atoms[] = s.getAtoms();
-
-		final int len = atoms.length;
-
-		for (int i = 0; i < len; i++) {
-
-			switch (atoms[i].type) {
-			case SerialAtom.TYPE_Y:
-				bos.writeY(atoms[i].y);
-				break;
-			case SerialAtom.TYPE_B:
-				bos.writeB(atoms[i].b);
-				break;
-			case SerialAtom.TYPE_N:
-				bos.writeN(atoms[i].n);
-				break;
-			case SerialAtom.TYPE_I:
-				bos.writeI(atoms[i].i);
-				break;
-			case SerialAtom.TYPE_X:
-				bos.writeX(atoms[i].x);
-				break;
-			case SerialAtom.TYPE_S:
-				bos.writeS(atoms[i].s);
-				break;
-			case SerialAtom.TYPE_AB:
-				bos.writeAB(atoms[i].ab);
-				break;
-			case SerialAtom.TYPE_AY:
-				bos.writeAY(atoms[i].ay);
-				break;
-			case SerialAtom.TYPE_AN:
-				bos.writeAN(atoms[i].an);
-				break;
-			case SerialAtom.TYPE_AI:
-				bos.writeAI(atoms[i].ai);
-				break;
-			case SerialAtom.TYPE_AS:
-				bos.writeAS(atoms[i].as);
-				break;
-			default:
-				Log.bug("Feb 22, 2009.6:26:09 PM");
-				break;
-			}
-		}
+		s.write(bos);
 
 		return bos.toByteArray();
 
 	}
 
+	/**
+	 * Writes the given {@link ISerializable} to an output stream. In contrast
+	 * to {@link #out(ISerializable)} no intermediate byte array is created,
+	 * which allows to reuse <em>bos</em> for multiple messages (see
+	 * {@link BaOut#beginMessage(int)}).
+	 * 
+	 * @param s
+	 *            the serializable (may be <code>null</code>)
+	 * @param bos
+	 *            the output stream to write to
+	 */
+	public static void out(ISerializable s, BaOut bos) {
+
+		if (s != null) {
+			s.write(bos);
+		}
+	}
+
 }
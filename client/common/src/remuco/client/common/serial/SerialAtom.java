@@ -20,7 +20,8 @@
  */
 package remuco.client.common.serial;
 
-public class SerialAtom {
+/** Data types of serialized data fields (atoms). */
+public final class SerialAtom {
 
 	/** Data type: byte **/
 	public static final int TYPE_Y = 1;
@@ -55,43 +56,24 @@ public class SerialAtom {
 	/** Data type: array of boolean **/
 	public static final int TYPE_AB = 11;
 
-	public static SerialAtom[] build(int fmt[]) {
-
-		final SerialAtom atoms[] = new SerialAtom[fmt.length];
-
-		for (int i = 0; i < atoms.length; i++) {
-			atoms[i] = new SerialAtom(fmt[i]);
-		}
-
-		return atoms;
-	}
-
-	public final int type;
-
-	public int i;
-
-	public short n;
-
-	public long x;
-
-	public String s;
-
-	public String[] as;
-
-	public int[] ai;
-
-	public short[] an;
-
-	public byte y;
-
-	public boolean b;
-
-	public byte[] ay;
-
-	public boolean[] ab;
-
-	private SerialAtom(int type) {
-		this.type = type;
+	/**
+	 * String length value which marks a back-reference to a string already
+	 * contained in the same message. The marker is followed by an int value
+	 * which is the index of the referenced string, counting all strings in
+	 * the message which are not back-references themselves (starting from 0).
+	 * Back-references may be used by the server if the client announces
+	 * support for them in its {@link remuco.client.common.data.ClientInfo}.
+	 **/
+	public static final short STRING_REF = -1;
+
+	/**
+	 * Maximum number of strings per message which may be referenced by
+	 * {@link #STRING_REF back-references}. Only the first strings of a
+	 * message (up to this number) are remembered for back-references.
+	 **/
+	public static final int STRING_REFS_MAX = 256;
+
+	private SerialAtom() {
 	}
 
 }
@@ -0,0 +1,364 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm.io;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.Iterator;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import remuco.client.common.MainLoop;
+import remuco.client.common.UserException;
+import remuco.client.common.io.Connection;
+import remuco.client.common.io.ConnectionRuntime;
+import remuco.client.common.io.ISocket;
+import remuco.client.common.io.PlayerPool;
+import remuco.client.common.io.Reconnector.ISocketFactory;
+import remuco.client.common.util.Log;
+
+/**
+ * Receive driver which serves many connections with one selector thread and a
+ * few receive threads, e.g. for a {@link PlayerPool} monitoring hundreds of
+ * servers:
+ * 
+ * <pre>
+ * driver = new SelectorDriver(4);
+ * runtime = new ConnectionRuntime(4, 2, null, driver);
+ * pool = new PlayerPool(listener, ping, clientInfo, runtime);
+ * pool.add(host, driver.socketFactory(host, port));
+ * </pre>
+ * 
+ * The selector thread connects sockets (non-blocking) and reads incoming data
+ * into per-socket buffers. Once a complete message is buffered, a receive
+ * thread lets the socket's connection receive it - which does not block
+ * because the data is already there. Only connections created with sockets
+ * of this driver can be driven by it.
+ */
+public final class SelectorDriver implements ConnectionRuntime.IReceiveDriver,
+		Runnable {
+
+	/** Time in milliseconds after which pending connects get aborted. */
+	private static final int CONNECT_TIMEOUT = 10000;
+
+	/** Changes of selection interests to apply in the selector thread. */
+	private final ConcurrentLinkedQueue<Runnable> changes =
+		new ConcurrentLinkedQueue<Runnable>();
+
+	private volatile boolean down = false;
+
+	private final Selector selector;
+
+	private final ExecutorService workers;
+
+	/**
+	 * Create a new driver and start its selector thread.
+	 * 
+	 * @param threads
+	 *            number of threads receiving messages
+	 * @throws IOException
+	 *             if opening the selector fails
+	 */
+	public SelectorDriver(int threads) throws IOException {
+
+		selector = Selector.open();
+
+		workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "remuco-receive");
+			}
+		});
+
+		new Thread(this, "remuco-selector").start();
+	}
+
+	/**
+	 * Create a socket connected (or connecting) to a server. Connecting
+	 * happens in the selector thread, so this method only blocks for
+	 * resolving the host name.
+	 * 
+	 * @param host
+	 *            host name or IP address
+	 * @param port
+	 *            port number
+	 * @throws UserException
+	 *             if setting up the socket fails
+	 */
+	public ISocket connect(String host, int port) throws UserException {
+
+		final SocketChannel channel;
+
+		try {
+			channel = SocketChannel.open();
+		} catch (IOException e) {
+			throw new UserException("Connection Error",
+					"IO error while setting up the connection");
+		}
+
+		final SelectorSocket sock = new SelectorSocket(this, channel);
+		final boolean connected;
+
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			connected = channel.connect(new InetSocketAddress(host, port));
+		} catch (UnresolvedAddressException e) {
+			sock.close();
+			throw new UserException("Connection Error",
+					"Given host name is unknown.");
+		} catch (UnknownHostException e) {
+			sock.close();
+			throw new UserException("Connection Error",
+					"Given host name is unknown.");
+		} catch (IOException e) {
+			sock.close();
+			throw new UserException("Connection Error",
+					"IO error while setting up the connection");
+		}
+
+		if (connected) {
+			sock.connected();
+		}
+
+		change(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sock.channel.register(selector,
+						connected ? SelectionKey.OP_READ
+								: SelectionKey.OP_CONNECT, sock);
+				} catch (ClosedChannelException e) {
+					// closed meanwhile, check() notices
+				}
+			}
+		});
+
+		MainLoop.schedule(MainLoop.LANE_PERIODIC, new TimerTask() {
+			@Override
+			public void run() {
+				if (sock.isConnecting()) {
+					Log.ln("[SD] connect timeout: " + sock);
+					sock.close();
+					check(sock);
+				}
+			}
+		}, CONNECT_TIMEOUT);
+
+		return sock;
+	}
+
+	@Override
+	public void run() {
+
+		while (!down) {
+
+			try {
+				selector.select();
+			} catch (IOException e) {
+				Log.ln("[SD] select failed", e);
+				break;
+			}
+
+			Runnable change;
+			while ((change = changes.poll()) != null) {
+				change.run();
+			}
+
+			final Iterator<SelectionKey> keys = selector.selectedKeys()
+					.iterator();
+
+			while (keys.hasNext()) {
+
+				final SelectionKey key = keys.next();
+				final SelectorSocket sock = (SelectorSocket) key.attachment();
+
+				keys.remove();
+
+				try {
+					if (key.isConnectable()) {
+						sock.channel.finishConnect();
+						key.interestOps(SelectionKey.OP_READ);
+						sock.connected();
+					}
+					if (key.isReadable() && !sock.fill()) {
+						key.interestOps(key.interestOps()
+								& ~SelectionKey.OP_READ);
+					}
+					if (key.isWritable()) {
+						key.interestOps(key.interestOps()
+								& ~SelectionKey.OP_WRITE);
+						sock.writable();
+					}
+				} catch (CancelledKeyException e) {
+					// socket closed, check() notices
+				} catch (IOException e) {
+					key.cancel();
+					sock.failed(e);
+				}
+
+				check(sock);
+			}
+		}
+
+		try {
+			selector.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Stop the selector and receive threads. Connections using this driver
+	 * should be closed before.
+	 */
+	public void shutdown() {
+
+		down = true;
+		selector.wakeup();
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Create a socket factory for a {@link PlayerPool} or a reconnector, which
+	 * creates sockets using {@link #connect(String, int)}.
+	 */
+	public ISocketFactory socketFactory(final String host, final int port) {
+
+		return new ISocketFactory() {
+			@Override
+			public ISocket createSocket() throws UserException {
+				return connect(host, port);
+			}
+		};
+	}
+
+	@Override
+	public void start(Connection conn, ISocket sock) {
+
+		final SelectorSocket ss = (SelectorSocket) sock;
+
+		synchronized (ss) {
+			ss.conn = conn;
+		}
+
+		check(ss);
+	}
+
+	/**
+	 * Wait for a socket's channel to become writable. Returns immediately,
+	 * the socket gets notified by the selector thread.
+	 */
+	void awaitWritable(SelectorSocket sock) {
+		interest(sock, SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * Resume reading from a socket's channel after it has been paused because
+	 * of a full receive buffer.
+	 */
+	void resume(SelectorSocket sock) {
+		interest(sock, SelectionKey.OP_READ);
+	}
+
+	/** Run a change in the selector thread. */
+	private void change(Runnable r) {
+		changes.add(r);
+		selector.wakeup();
+	}
+
+	/**
+	 * Let a receive thread serve a socket's connection if it is ready to get
+	 * served (see {@link SelectorSocket#isReady()}).
+	 */
+	private void check(final SelectorSocket sock) {
+
+		synchronized (sock) {
+			if (!sock.isReady()) {
+				return;
+			}
+			sock.busy = true;
+		}
+
+		try {
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					serve(sock);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// shut down
+		}
+	}
+
+	/** Add a selection interest for a socket. */
+	private void interest(final SelectorSocket sock, final int op) {
+
+		change(new Runnable() {
+			@Override
+			public void run() {
+				final SelectionKey key = sock.channel.keyFor(selector);
+				if (key != null && key.isValid()) {
+					key.interestOps(key.interestOps() | op);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Set up a socket's connection or let it receive a message. Runs in a
+	 * receive thread.
+	 */
+	private void serve(SelectorSocket sock) {
+
+		final Connection conn;
+		final boolean up;
+
+		synchronized (sock) {
+			conn = sock.conn;
+			up = sock.up;
+		}
+
+		final boolean ok = up ? conn.receive() : conn.setUp();
+
+		synchronized (sock) {
+			sock.busy = false;
+			sock.up = ok;
+			if (!ok) {
+				sock.conn = null; // connection is down
+			}
+		}
+
+		check(sock);
+	}
+
+}
@@ -0,0 +1,351 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import remuco.client.common.io.Connection;
+import remuco.client.common.io.ISocket;
+
+/**
+ * Socket of a {@link SelectorDriver}. Data gets read from the non-blocking
+ * channel by the driver's selector thread and buffered until the
+ * {@link Connection} reads it, so a connection only gets served by a driver
+ * thread when a complete message is available. Writing waits for channel
+ * readiness signaled by the selector thread.
+ * <p>
+ * If more than {@link #IN_HIGH} bytes are buffered, reading from the channel
+ * pauses until the connection has read the buffer down to {@link #IN_LOW}
+ * bytes, so a flooding server gets throttled by TCP flow control instead of
+ * filling up memory.
+ */
+final class SelectorSocket implements ISocket {
+
+	/** Input stream reading from the receive buffer. */
+	private class BufferInputStream extends InputStream {
+
+		@Override
+		public int available() throws IOException {
+			synchronized (SelectorSocket.this) {
+				return inEnd - inStart;
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			final byte b[] = new byte[1];
+
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+
+			if (len == 0) {
+				return 0;
+			}
+
+			final boolean resume;
+
+			synchronized (SelectorSocket.this) {
+
+				while (inStart == inEnd && !eof && !closed && error == null) {
+					try {
+						SelectorSocket.this.wait();
+					} catch (InterruptedException e) {
+						throw new IOException("interrupted");
+					}
+				}
+				if (closed) {
+					throw new IOException("socket closed");
+				}
+				if (inStart == inEnd) {
+					if (error != null) {
+						throw error;
+					}
+					return -1;
+				}
+
+				len = Math.min(len, inEnd - inStart);
+				System.arraycopy(in, inStart, b, off, len);
+				inStart += len;
+
+				resume = paused && inEnd - inStart <= IN_LOW;
+				if (resume) {
+					paused = false;
+				}
+			}
+
+			if (resume) {
+				driver.resume(SelectorSocket.this);
+			}
+
+			return len;
+		}
+
+	}
+
+	/** Output stream writing to the channel. */
+	private class ChannelOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			final ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+
+			while (bb.hasRemaining()) {
+
+				synchronized (SelectorSocket.this) {
+					while (!writable && !closed && error == null) {
+						try {
+							SelectorSocket.this.wait();
+						} catch (InterruptedException e) {
+							throw new IOException("interrupted");
+						}
+					}
+					if (closed) {
+						throw new IOException("socket closed");
+					}
+					if (error != null) {
+						throw error;
+					}
+				}
+
+				if (channel.write(bb) == 0) {
+					synchronized (SelectorSocket.this) {
+						writable = false;
+					}
+					driver.awaitWritable(SelectorSocket.this);
+				}
+			}
+		}
+
+	}
+
+	/** Buffered bytes at which reading from the channel pauses. */
+	static final int IN_HIGH = 64 * 1024;
+
+	/** Buffered bytes at which reading from the channel resumes. */
+	static final int IN_LOW = 16 * 1024;
+
+	/** Minimum free space in the receive buffer when reading. */
+	private static final int MIN_READ = 1024;
+
+	/** Size of a message header (ID and data size). */
+	private static final int HEADER_SIZE = 6;
+
+	/** Size of the hello message. */
+	private static final int HELLO_SIZE = 9;
+
+	final SocketChannel channel;
+
+	/**
+	 * The connection using this socket (<code>null</code> until the driver
+	 * starts receiving and after the connection is down).
+	 */
+	Connection conn = null;
+
+	/** Whether a driver thread currently serves the connection. */
+	boolean busy = false;
+
+	/** Whether the connection has been set up. */
+	boolean up = false;
+
+	private boolean closed = false;
+
+	private boolean connected = false;
+
+	private final SelectorDriver driver;
+
+	private boolean eof = false;
+
+	private IOException error = null;
+
+	/** Receive buffer, data ranges from {@link #inStart} to {@link #inEnd}. */
+	private byte in[] = new byte[4096];
+
+	private int inStart = 0, inEnd = 0;
+
+	private final InputStream is = new BufferInputStream();
+
+	private final OutputStream os = new ChannelOutputStream();
+
+	/** Whether reading from the channel has been paused (buffer full). */
+	private boolean paused = false;
+
+	/** Whether the channel is connected and may be written to. */
+	private boolean writable = false;
+
+	SelectorSocket(SelectorDriver driver, SocketChannel channel) {
+		this.driver = driver;
+		this.channel = channel;
+	}
+
+	@Override
+	public void close() {
+
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return is;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return os;
+	}
+
+	@Override
+	public String toString() {
+		return "SelectorSocket(" + channel.socket().getInetAddress() + ":"
+				+ channel.socket().getPort() + ")";
+	}
+
+	/** Called by the selector thread when the channel has been connected. */
+	synchronized void connected() {
+		connected = true;
+		writable = true;
+		notifyAll();
+	}
+
+	/**
+	 * Called by the selector thread when connecting, reading or writing
+	 * failed.
+	 */
+	synchronized void failed(IOException e) {
+		error = e;
+		notifyAll();
+	}
+
+	/**
+	 * Read available data from the channel into the receive buffer. Called by
+	 * the selector thread when the channel is readable.
+	 * 
+	 * @return <code>false</code> if reading should pause (buffer full or end
+	 *         of stream), <code>true</code> otherwise
+	 */
+	boolean fill() throws IOException {
+
+		final byte buf[];
+		final int off;
+
+		synchronized (this) {
+			if (inStart == inEnd) {
+				inStart = inEnd = 0;
+			}
+			if (in.length - inEnd < MIN_READ) { // compact or grow
+				final int n = inEnd - inStart;
+				final byte b[] = in.length - n < MIN_READ ? new byte[2 * in.length]
+					: in;
+				System.arraycopy(in, inStart, b, 0, n);
+				in = b;
+				inStart = 0;
+				inEnd = n;
+			}
+			buf = in;
+			off = inEnd;
+		}
+
+		// the buffer is not touched by readers beyond inEnd, so read without
+		// holding the lock
+
+		final int n = channel.read(ByteBuffer.wrap(buf, off, buf.length - off));
+
+		synchronized (this) {
+			if (n < 0) {
+				eof = true;
+			} else {
+				inEnd += n;
+				paused = inEnd - inStart >= IN_HIGH;
+			}
+			notifyAll();
+			return !eof && !paused;
+		}
+	}
+
+	/** Check if the channel is still connecting (not connected, not down). */
+	synchronized boolean isConnecting() {
+		return !connected && !closed && error == null;
+	}
+
+	/**
+	 * Check if the connection should get served by a driver thread now, i.e.
+	 * if it is not served currently and a complete message (or the hello
+	 * message when setting up) is available, reading has been paused (message
+	 * larger than the buffer limit) or the socket is down. Must be called with
+	 * the lock on this socket held.
+	 */
+	boolean isReady() {
+
+		if (conn == null || busy) {
+			return false;
+		}
+		if (eof || closed || error != null) {
+			return true;
+		}
+
+		final int n = inEnd - inStart;
+
+		if (!up) {
+			return n >= HELLO_SIZE;
+		}
+		if (paused) {
+			return true; // only reading the buffer down resumes reading
+		}
+		if (n < HEADER_SIZE) {
+			return false;
+		}
+
+		final int i = inStart + 2;
+		final int size = ((in[i] & 0xff) << 24) | ((in[i + 1] & 0xff) << 16)
+				| ((in[i + 2] & 0xff) << 8) | (in[i + 3] & 0xff);
+
+		return n - HEADER_SIZE >= size;
+	}
+
+	/** Called by the selector thread when the channel is writable again. */
+	synchronized void writable() {
+		writable = true;
+		notifyAll();
+	}
+
+}
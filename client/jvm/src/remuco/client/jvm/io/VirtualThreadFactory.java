@@ -0,0 +1,111 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm.io;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import remuco.client.common.io.Connection;
+import remuco.client.common.io.ConnectionRuntime;
+import remuco.client.common.util.Log;
+
+/**
+ * Thread factory for connections which creates virtual threads on JVMs
+ * supporting them (Java 21 and later) and plain platform threads otherwise:
+ * 
+ * <pre>
+ * Connection.setThreadFactory(new VirtualThreadFactory());
+ * </pre>
+ * 
+ * Virtual threads make a receiver and a writer thread per connection cheap,
+ * so a {@link remuco.client.common.io.PlayerPool} may use them instead of a
+ * {@link SelectorDriver}. Virtual threads are looked up via reflection, so
+ * this class compiles and runs on older JVMs too.
+ * 
+ * @see Connection#setThreadFactory(Connection.IThreadFactory)
+ * @see ConnectionRuntime#ConnectionRuntime(int, int,
+ *      Connection.IThreadFactory, ConnectionRuntime.IReceiveDriver)
+ */
+public final class VirtualThreadFactory implements Connection.IThreadFactory {
+
+	/** <code>Thread.ofVirtual()</code> or <code>null</code> if unsupported. */
+	private final Method ofVirtual;
+
+	/** <code>Thread.Builder.name(String)</code>. */
+	private final Method builderName;
+
+	/** <code>Thread.Builder.unstarted(Runnable)</code>. */
+	private final Method builderUnstarted;
+
+	public VirtualThreadFactory() {
+
+		Method ov = null, n = null, u = null;
+
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ov = Thread.class.getMethod("ofVirtual");
+			n = builder.getMethod("name", String.class);
+			u = builder.getMethod("unstarted", Runnable.class);
+		} catch (ClassNotFoundException e) {
+			ov = null;
+		} catch (NoSuchMethodException e) {
+			ov = null;
+		}
+
+		ofVirtual = ov;
+		builderName = n;
+		builderUnstarted = u;
+
+		Log.ln("[VT] virtual threads " + (ov != null ? "" : "not ")
+				+ "supported");
+	}
+
+	/**
+	 * Check if this factory creates virtual threads.
+	 * 
+	 * @return <code>false</code> if the JVM does not support virtual threads
+	 *         and this factory creates platform threads
+	 */
+	public boolean isVirtual() {
+		return ofVirtual != null;
+	}
+
+	@Override
+	public Thread newThread(Runnable r, String name) {
+
+		if (ofVirtual == null) {
+			return new Thread(r, name);
+		}
+
+		try {
+			final Object builder = builderName.invoke(ofVirtual.invoke(null),
+				name);
+			return (Thread) builderUnstarted.invoke(builder, r);
+		} catch (IllegalAccessException e) {
+			Log.ln("[VT] creating a virtual thread failed", e);
+		} catch (InvocationTargetException e) {
+			Log.ln("[VT] creating a virtual thread failed", e);
+		}
+
+		return new Thread(r, name);
+	}
+
+}
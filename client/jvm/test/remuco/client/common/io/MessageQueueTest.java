@@ -0,0 +1,266 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.io;
+
+import java.util.Arrays;
+
+import remuco.client.common.data.State;
+import remuco.client.common.serial.BaOut;
+
+/**
+ * Behavioral checks of the {@link MessageQueue}: merging of messages in delta
+ * format, conflation of superseded synchronization messages in the ring and
+ * in the overflow list, and the order in which messages get taken.
+ * <p>
+ * Usage: <code>MessageQueueTest</code> (or <code>ant test</code>)
+ */
+public final class MessageQueueTest {
+
+	private static final int FIELD_PLAYBACK = 0, FIELD_VOLUME = 1;
+
+	public static void main(String[] args) {
+
+		merge();
+		conflateRing();
+		conflateOverflow();
+		keepUnmergeable();
+
+		System.out.println("MessageQueueTest: all checks passed");
+	}
+
+	/** Check that {@link MessageQueue#merge(byte[], byte[])} keeps fields. */
+	private static void merge() {
+
+		final byte play[] = delta(FIELD_PLAYBACK, State.PLAYBACK_PLAY);
+		final byte vol30[] = delta(FIELD_VOLUME, 30);
+		final byte vol40[] = delta(FIELD_VOLUME, 40);
+
+		// disjoint fields get combined
+		check(Arrays.equals(MessageQueue.merge(vol30, play), delta2(
+				State.PLAYBACK_PLAY, 30)), "merge disjoint fields");
+
+		// fields of the newer message win
+		check(Arrays.equals(MessageQueue.merge(vol30, vol40), vol40),
+				"merge overlapping fields");
+		check(Arrays.equals(MessageQueue.merge(delta2(State.PLAYBACK_STOP,
+				30), vol40), delta2(State.PLAYBACK_STOP, 40)),
+				"merge into a subset of fields");
+
+		// a full newer message contains all fields already
+		final byte full[] = full(State.PLAYBACK_PAUSE, 10);
+		check(MessageQueue.merge(vol30, full) == full, "merge into full");
+		check(Arrays.equals(MessageQueue.merge(full, vol40), delta(
+				new int[] { 0, 1, 2, 3, 4, 5 }, new byte[][] {
+						y(State.PLAYBACK_PAUSE), y(40), i(7), b(false),
+						b(true), b(false) })), "merge full into delta");
+
+		// fields of variable size cannot be merged
+		final BaOut out = new BaOut(16);
+		out.writeN((short) (1 << FIELD_VOLUME));
+		out.writeS("x");
+		check(MessageQueue.merge(vol30, out.toByteArray()) == null,
+				"merge variable size field");
+		check(MessageQueue.merge(new byte[0], vol30) == null,
+				"merge malformed data");
+
+		System.out.println("ok: merge");
+	}
+
+	/** Check conflation of messages taken from the ring. */
+	private static void conflateRing() {
+
+		final MessageQueue q = new MessageQueue(16);
+
+		q.put(message(Message.SYNC_STATE, delta(FIELD_PLAYBACK,
+				State.PLAYBACK_PLAY)));
+		q.put(message(Message.SYNC_ITEM, new byte[] { 1 }));
+		final Message reply = message(Message.REQ_PLAYLIST, new byte[] { 2 });
+		q.put(reply);
+		q.put(message(Message.SYNC_ITEM, new byte[] { 3 }));
+		q.put(message(Message.SYNC_STATE, delta(FIELD_VOLUME, 40)));
+
+		check(!q.isEmpty(), "ring not empty");
+
+		// the reply does not supersede anything and stays in order
+		check(q.poll() == reply, "reply first");
+
+		Message m = q.poll();
+		check(m.id == Message.SYNC_ITEM && m.data[0] == 3, "newest item");
+
+		m = q.poll();
+		check(m.id == Message.SYNC_STATE, "state");
+		check(Arrays.equals(m.data, delta2(State.PLAYBACK_PLAY, 40)),
+				"state merged");
+
+		check(q.poll() == null && q.isEmpty(), "ring empty");
+
+		check(q.getConflated(Message.SYNC_ITEM) == 1, "items conflated");
+		check(q.getConflated(Message.SYNC_STATE) == 1, "states conflated");
+		check(q.getConflated(Message.SYNC_PROGRESS) == 0,
+				"progress not conflated");
+		check(q.getDropped() == 2, "dropped in ring");
+
+		System.out.println("ok: conflate ring");
+	}
+
+	/**
+	 * Check that a full ring never blocks and that messages in the overflow
+	 * list get conflated and taken in order after the ring.
+	 */
+	private static void conflateOverflow() {
+
+		final MessageQueue q = new MessageQueue(2);
+
+		final Message r1 = message(Message.REQ_PLAYLIST, new byte[] { 1 });
+		final Message r2 = message(Message.REQ_QUEUE, new byte[] { 2 });
+		final Message r3 = message(Message.REQ_MLIB, new byte[] { 3 });
+
+		q.put(r1);
+		q.put(r2);
+
+		// ring is full now
+		q.put(message(Message.SYNC_STATE, delta(FIELD_PLAYBACK,
+				State.PLAYBACK_PAUSE)));
+		q.put(message(Message.SYNC_ITEM, new byte[] { 4 }));
+		q.put(r3);
+		q.put(message(Message.SYNC_STATE, delta(FIELD_VOLUME, 70)));
+		q.put(message(Message.SYNC_ITEM, new byte[] { 5 }));
+
+		check(q.getDropped() == 2, "dropped in overflow");
+
+		check(q.poll() == r1, "ring first");
+		check(q.poll() == r2, "ring second");
+
+		// new messages go to the overflow list too, so the order is kept
+		final Message r4 = message(Message.REQ_FILES, new byte[] { 6 });
+		q.put(r4);
+
+		check(q.poll() == r3, "overflow reply");
+
+		Message m = q.poll();
+		check(m.id == Message.SYNC_STATE, "overflow state");
+		check(Arrays.equals(m.data, delta2(State.PLAYBACK_PAUSE, 70)),
+				"overflow state merged");
+
+		m = q.poll();
+		check(m.id == Message.SYNC_ITEM && m.data[0] == 5,
+				"overflow newest item");
+
+		check(q.poll() == r4, "overflow last");
+		check(q.poll() == null && q.isEmpty(), "overflow empty");
+
+		// once drained, the ring is used again
+		q.put(r1);
+		check(!q.isEmpty() && q.poll() == r1 && q.isEmpty(), "ring again");
+
+		System.out.println("ok: conflate overflow");
+	}
+
+	/** Check that messages which cannot be merged are both dispatched. */
+	private static void keepUnmergeable() {
+
+		final MessageQueue q = new MessageQueue(4);
+
+		final Message p1 = message(Message.SYNC_PROGRESS, new byte[] { 42 });
+		final Message p2 = message(Message.SYNC_PROGRESS, delta(0, 5));
+
+		q.put(p1);
+		q.put(p2);
+
+		check(q.poll() == p1 && q.poll() == p2, "unmergeable kept");
+		check(q.getConflated(Message.SYNC_PROGRESS) == 0,
+				"unmergeable not counted");
+
+		System.out.println("ok: keep unmergeable");
+	}
+
+	private static byte[] b(boolean v) {
+		final BaOut out = new BaOut(2);
+		out.writeB(v);
+		return out.toByteArray();
+	}
+
+	private static void check(boolean condition, String what) {
+		if (!condition) {
+			throw new IllegalStateException("check failed: " + what);
+		}
+	}
+
+	/** Data of a state message in delta format with one byte field. */
+	private static byte[] delta(int field, int value) {
+		return delta(new int[] { field }, new byte[][] { y(value) });
+	}
+
+	/** Data in delta format with the given serialized fields. */
+	private static byte[] delta(int fields[], byte values[][]) {
+
+		int mask = 0;
+		for (int i = 0; i < fields.length; i++) {
+			mask |= 1 << fields[i];
+		}
+
+		final BaOut out = new BaOut(32);
+		out.writeN((short) mask);
+		for (int i = 0; i < values.length; i++) {
+			out.write(values[i]);
+		}
+		return out.toByteArray();
+	}
+
+	/** Data of a state message in delta format with playback and volume. */
+	private static byte[] delta2(int playback, int volume) {
+		return delta(new int[] { FIELD_PLAYBACK, FIELD_VOLUME }, new byte[][] {
+				y(playback), y(volume) });
+	}
+
+	/** Data of a state message in full format. */
+	private static byte[] full(int playback, int volume) {
+
+		final BaOut out = new BaOut(32);
+		out.writeY((byte) playback);
+		out.writeY((byte) volume);
+		out.writeI(7);
+		out.writeB(false);
+		out.writeB(true);
+		out.writeB(false);
+		return out.toByteArray();
+	}
+
+	private static byte[] i(int v) {
+		final BaOut out = new BaOut(5);
+		out.writeI(v);
+		return out.toByteArray();
+	}
+
+	private static Message message(int id, byte data[]) {
+		final Message m = new Message();
+		m.id = id;
+		m.data = data;
+		return m;
+	}
+
+	private static byte[] y(int v) {
+		final BaOut out = new BaOut(2);
+		out.writeY((byte) v);
+		return out.toByteArray();
+	}
+
+}
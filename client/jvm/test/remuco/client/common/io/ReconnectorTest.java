@@ -0,0 +1,62 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.io;
+
+/**
+ * Behavioral checks of the {@link Reconnector}'s exponential back-off.
+ * <p>
+ * Usage: <code>ReconnectorTest</code> (or <code>ant test</code>)
+ */
+public final class ReconnectorTest {
+
+	public static void main(String[] args) {
+
+		backoff();
+
+		System.out.println("ReconnectorTest: all checks passed");
+	}
+
+	/** Check that delays double with each attempt up to the maximum. */
+	private static void backoff() {
+
+		final int expected[] = { 250, 500, 1000, 2000, 4000, 8000, 16000,
+				16000, 16000, 16000 };
+
+		for (int i = 0; i < expected.length; i++) {
+			check(Reconnector.getDelay(i) == expected[i], "delay of attempt "
+					+ i);
+		}
+
+		// no overflow for attempt numbers beyond the shift width
+		check(Reconnector.getDelay(31) == 16000, "delay of attempt 31");
+		check(Reconnector.getDelay(Integer.MAX_VALUE) == 16000,
+				"delay of attempt " + Integer.MAX_VALUE);
+
+		System.out.println("ok: backoff");
+	}
+
+	private static void check(boolean condition, String what) {
+		if (!condition) {
+			throw new IllegalStateException("check failed: " + what);
+		}
+	}
+
+}
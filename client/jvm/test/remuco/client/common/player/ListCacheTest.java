@@ -0,0 +1,199 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.common.player;
+
+import remuco.client.common.data.ItemList;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
+import remuco.client.common.serial.BinaryDataExecption;
+import remuco.client.common.serial.Serial;
+
+/**
+ * Behavioral checks of the {@link ListCache}: least recently used eviction by
+ * number of pages and by size, invalidation by list type and dropping of
+ * pages requested before an invalidation.
+ * <p>
+ * Usage: <code>ListCacheTest</code> (or <code>ant test</code>)
+ */
+public final class ListCacheTest {
+
+	private static final String PATH[] = { "Artists", "Artist 1" };
+
+	public static void main(String[] args) throws BinaryDataExecption {
+
+		evictByEntries();
+		evictBySize();
+		invalidate();
+		generation();
+
+		System.out.println("ListCacheTest: all checks passed");
+	}
+
+	/** Check that the least recently used page gets evicted. */
+	private static void evictByEntries() throws BinaryDataExecption {
+
+		final ListCache c = new ListCache(2, Integer.MAX_VALUE);
+
+		c.put(page(ItemList.TYPE_MLIB, PATH, 0, 10), c.getGeneration());
+		c.put(page(ItemList.TYPE_MLIB, PATH, 1, 10), c.getGeneration());
+
+		// use page 0, so page 1 is the least recently used one
+		check(c.get(ItemList.TYPE_MLIB, PATH, 0) != null, "hit page 0");
+
+		c.put(page(ItemList.TYPE_MLIB, PATH, 2, 10), c.getGeneration());
+
+		check(c.getSize() == 2, "size bounded");
+		check(cached(c, ItemList.TYPE_MLIB, PATH, 0), "page 0 kept");
+		check(!cached(c, ItemList.TYPE_MLIB, PATH, 1), "page 1 evicted");
+		check(cached(c, ItemList.TYPE_MLIB, PATH, 2), "page 2 cached");
+
+		// different paths are different pages
+		check(c.get(ItemList.TYPE_MLIB, new String[] { "Albums" }, 0) == null,
+				"miss other path");
+		check(c.getHits() == 1 && c.getMisses() == 1, "hits and misses");
+
+		// replacing a page does not grow the cache
+		final int bytes = c.getBytes();
+		c.put(page(ItemList.TYPE_MLIB, PATH, 2, 10), c.getGeneration());
+		check(c.getSize() == 2 && c.getBytes() == bytes, "page replaced");
+
+		// tighter limits evict immediately
+		c.setLimits(1, Integer.MAX_VALUE);
+		check(c.getSize() == 1 && cached(c, ItemList.TYPE_MLIB, PATH, 2),
+				"evicted on new limits");
+
+		System.out.println("ok: evict by entries");
+	}
+
+	/** Check that pages get evicted to stay within the size bound. */
+	private static void evictBySize() throws BinaryDataExecption {
+
+		final ItemList p0 = page(ItemList.TYPE_PLAYLIST, null, 0, 50);
+		final ItemList p1 = page(ItemList.TYPE_PLAYLIST, null, 1, 50);
+		final int size = p0.getSizeEstimate();
+
+		final ListCache c = new ListCache(100, size + size / 2);
+
+		c.put(p0, c.getGeneration());
+		c.put(p1, c.getGeneration());
+
+		check(c.getSize() == 1, "evicted by size");
+		check(cached(c, ItemList.TYPE_PLAYLIST, null, 1), "newest kept");
+		check(c.getBytes() == p1.getSizeEstimate(), "bytes accounted");
+
+		// a page exceeding the bound alone does not evict everything else
+		c.put(page(ItemList.TYPE_PLAYLIST, null, 2, 500), c.getGeneration());
+		check(c.getSize() == 1 && cached(c, ItemList.TYPE_PLAYLIST, null, 1),
+				"oversized page not cached");
+
+		System.out.println("ok: evict by size");
+	}
+
+	/** Check invalidation of all pages and of pages of one list type. */
+	private static void invalidate() throws BinaryDataExecption {
+
+		final ListCache c = new ListCache(10, Integer.MAX_VALUE);
+
+		c.put(page(ItemList.TYPE_PLAYLIST, null, 0, 10), c.getGeneration());
+		c.put(page(ItemList.TYPE_QUEUE, null, 0, 10), c.getGeneration());
+		c.put(page(ItemList.TYPE_MLIB, PATH, 0, 10), c.getGeneration());
+
+		c.invalidate(ItemList.TYPE_QUEUE);
+
+		check(c.getSize() == 2, "one type invalidated");
+		check(!cached(c, ItemList.TYPE_QUEUE, null, 0), "queue removed");
+		check(cached(c, ItemList.TYPE_PLAYLIST, null, 0), "playlist kept");
+		check(cached(c, ItemList.TYPE_MLIB, PATH, 0), "library kept");
+
+		c.invalidate();
+
+		check(c.getSize() == 0 && c.getBytes() == 0, "all invalidated");
+
+		System.out.println("ok: invalidate");
+	}
+
+	/**
+	 * Check that pages requested before an invalidation do not get cached
+	 * when they arrive afterwards.
+	 */
+	private static void generation() throws BinaryDataExecption {
+
+		final ListCache c = new ListCache(10, Integer.MAX_VALUE);
+
+		final int before = c.getGeneration();
+
+		// e.g. an action on the queue while a playlist page is requested
+		c.invalidate(ItemList.TYPE_QUEUE);
+
+		check(c.getGeneration() != before, "generation changed");
+
+		c.put(page(ItemList.TYPE_PLAYLIST, null, 0, 10), before);
+		check(!cached(c, ItemList.TYPE_PLAYLIST, null, 0), "stale dropped");
+
+		c.put(page(ItemList.TYPE_PLAYLIST, null, 0, 10), c.getGeneration());
+		check(cached(c, ItemList.TYPE_PLAYLIST, null, 0), "current cached");
+
+		System.out.println("ok: generation");
+	}
+
+	private static boolean cached(ListCache c, int type, String path[],
+			int page) {
+		return c.contains(ListCache.key(type, path, page));
+	}
+
+	private static void check(boolean condition, String what) {
+		if (!condition) {
+			throw new IllegalStateException("check failed: " + what);
+		}
+	}
+
+	/** Create a page as received from the server. */
+	private static ItemList page(int type, String path[], int page, int items)
+			throws BinaryDataExecption {
+
+		final String ids[] = new String[items];
+		final String names[] = new String[items];
+		for (int i = 0; i < items; i++) {
+			ids[i] = "id-" + page + "-" + i;
+			names[i] = "Item " + i;
+		}
+
+		final BaOut out = new BaOut(1024);
+		out.writeI(1);
+		out.writeAS(path == null ? new String[0] : path);
+		out.writeAS(new String[0]);
+		out.writeAS(ids);
+		out.writeAS(names);
+		out.writeI(page * items);
+		out.writeI(page);
+		out.writeI(10);
+		out.writeAI(new int[0]);
+		out.writeAS(new String[0]);
+		out.writeAB(new boolean[0]);
+		out.writeAI(new int[0]);
+		out.writeAS(new String[0]);
+
+		final ItemList list = new ItemList(type);
+		Serial.in(list, new BaIn(false).wrap(out.toByteArray()));
+		return list;
+	}
+
+}
@@ -0,0 +1,176 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Minimal micro benchmark harness: runs an operation repeatedly for a fixed
+ * time (after a warm-up phase) and reports throughput and, on JVMs providing
+ * per thread allocation counters, the number of bytes allocated per operation
+ * by the measuring thread (and optionally by threads helping the operation).
+ */
+final class Bench {
+
+	/** An operation to measure. */
+	interface Op {
+
+		/** Run the operation once. */
+		void run() throws Exception;
+
+	}
+
+	/** Time in milliseconds to run an operation before measuring it. */
+	private static final int WARMUP = 1000;
+
+	/** Time in milliseconds to measure an operation. */
+	private static final int MEASURE = 2000;
+
+	private static final com.sun.management.ThreadMXBean THREADS;
+
+	static {
+		final java.lang.management.ThreadMXBean tmb = ManagementFactory
+				.getThreadMXBean();
+		if (tmb instanceof com.sun.management.ThreadMXBean) {
+			THREADS = (com.sun.management.ThreadMXBean) tmb;
+			THREADS.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			THREADS = null;
+		}
+	}
+
+	/**
+	 * Get the number of bytes allocated so far by some threads.
+	 * 
+	 * @return the number of bytes or -1 if the JVM does not count allocations
+	 */
+	static long allocated(long threadIDs[]) {
+
+		if (THREADS == null) {
+			return -1;
+		}
+
+		long sum = 0;
+		for (int i = 0; i < threadIDs.length; i++) {
+			final long n = THREADS.getThreadAllocatedBytes(threadIDs[i]);
+			if (n > 0) {
+				sum += n;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Measure an operation and print the result.
+	 * 
+	 * @param name
+	 *            name of the operation to print
+	 * @param bytes
+	 *            number of bytes processed by one operation (0 to not report
+	 *            a data rate)
+	 * @param op
+	 *            the operation
+	 */
+	static void run(String name, int bytes, Op op) throws Exception {
+		run(name, bytes, op, new Thread[0]);
+	}
+
+	/**
+	 * Like {@link #run(String, int, Op)} but counts allocations of some
+	 * helper threads as allocations of the operation too.
+	 * 
+	 * @param helpers
+	 *            threads doing part of the operation's work
+	 */
+	static void run(String name, int bytes, Op op, Thread helpers[])
+			throws Exception {
+
+		loop(op, WARMUP);
+
+		final long threads[] = new long[helpers.length + 1];
+		threads[0] = Thread.currentThread().getId();
+		for (int i = 0; i < helpers.length; i++) {
+			threads[i + 1] = helpers[i].getId();
+		}
+
+		final long a0 = allocated(threads);
+		final long t0 = System.nanoTime();
+
+		final long n = loop(op, MEASURE);
+
+		final long t1 = System.nanoTime();
+		final long a1 = allocated(threads);
+
+		final double secs = (t1 - t0) / 1e9;
+		final StringBuffer sb = new StringBuffer();
+
+		sb.append(pad(name, 28));
+		sb.append(pad(format(n / secs, 0) + " ops/s", 16));
+		if (bytes > 0) {
+			sb.append(pad(format(n * bytes / secs / 1048576, 1) + " MB/s", 13));
+		}
+		if (a0 >= 0) {
+			sb.append(format((double) (a1 - a0) / n, 1)).append(" B/op");
+		}
+
+		System.out.println(sb.toString());
+	}
+
+	static String format(double d, int decimals) {
+
+		final double f = Math.pow(10, decimals);
+		final long l = Math.round(d * f);
+
+		if (decimals == 0) {
+			return String.valueOf(l);
+		}
+		final String frac = String.valueOf(l % (long) f + (long) f);
+		return (l / (long) f) + "." + frac.substring(1);
+	}
+
+	private static long loop(Op op, int millis) throws Exception {
+
+		final long end = System.nanoTime() + millis * 1000000L;
+
+		long n = 0;
+		do {
+			for (int i = 0; i < 64; i++) {
+				op.run();
+			}
+			n += 64;
+		} while (System.nanoTime() < end);
+
+		return n;
+	}
+
+	private static String pad(String s, int width) {
+
+		final StringBuffer sb = new StringBuffer(s);
+		while (sb.length() < width) {
+			sb.append(' ');
+		}
+		return sb.append(' ').toString();
+	}
+
+	private Bench() {
+	}
+
+}
@@ -0,0 +1,395 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm;
+
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+
+import remuco.client.common.data.Item;
+import remuco.client.common.data.ItemAction;
+import remuco.client.common.data.ItemList;
+import remuco.client.common.data.ListAction;
+import remuco.client.common.data.Progress;
+import remuco.client.common.data.State;
+import remuco.client.common.serial.BaIn;
+import remuco.client.common.serial.BaOut;
+import remuco.client.common.serial.BinaryDataExecption;
+import remuco.client.common.serial.Serial;
+import remuco.client.common.serial.SerialAtom;
+
+/**
+ * Decode throughput of incoming messages. Compares the per-type codecs of the
+ * serializables ({@link remuco.client.common.serial.ISerializable#read(BaIn)})
+ * with the per-atom interpreter they replaced, which is included here as it
+ * was: each message gets decoded into an array of atoms by switching on the
+ * type of each atom, then the serializable copies the atoms into its fields.
+ * <p>
+ * Messages are a state sync, a progress sync, an item with meta information
+ * and a small image and a media library page with 100 items. The codecs get
+ * measured with a new input per message (like the interpreter) and with one
+ * reused input in zero-copy mode and with a string cache (like a
+ * {@link remuco.client.common.player.Player} uses it).
+ * <p>
+ * Usage: <code>CodecBenchmark</code> (or <code>ant benchmark.codec</code>)
+ */
+public final class CodecBenchmark {
+
+	/** A field of a serializable as used by the interpreter. */
+	private static final class Atom {
+
+		private final int type;
+
+		private boolean ab[], b;
+
+		private int ai[], i;
+
+		private short an[], n;
+
+		private String as[], s;
+
+		private byte ay[], y;
+
+		private long x;
+
+		private Atom(int type) {
+			this.type = type;
+		}
+	}
+
+	/** Item as decoded by the interpreter. */
+	private static final class InterpretedItem {
+
+		private final Atom atoms[] = atoms(new int[] { SerialAtom.TYPE_S,
+				SerialAtom.TYPE_AS, SerialAtom.TYPE_AY });
+
+		private String id;
+
+		private byte img[];
+
+		private final Hashtable meta = new Hashtable(10);
+
+		private void notifyAtomsUpdated() {
+
+			id = atoms[0].s;
+
+			final int num = atoms[1].as.length / 2;
+
+			meta.clear();
+			for (int i = 0; i < num; i++) {
+				meta.put(atoms[1].as[2 * i], atoms[1].as[2 * i + 1]);
+			}
+
+			img = atoms[2].ay;
+		}
+	}
+
+	/** Item list as decoded by the interpreter. */
+	private static final class InterpretedList {
+
+		private final Vector actions = new Vector();
+
+		private final Atom atoms[] = atoms(new int[] { SerialAtom.TYPE_I,
+				SerialAtom.TYPE_AS, SerialAtom.TYPE_AS, SerialAtom.TYPE_AS,
+				SerialAtom.TYPE_AS, SerialAtom.TYPE_I, SerialAtom.TYPE_I,
+				SerialAtom.TYPE_I, SerialAtom.TYPE_AI, SerialAtom.TYPE_AS,
+				SerialAtom.TYPE_AB, SerialAtom.TYPE_AI, SerialAtom.TYPE_AS });
+
+		private int page, pageMax, itemOffset, requestID;
+
+		private String path[], nested[], itemIDs[], itemNames[];
+
+		private void notifyAtomsUpdated() {
+
+			requestID = atoms[0].i;
+			path = atoms[1].as;
+			nested = atoms[2].as;
+			itemIDs = atoms[3].as;
+			itemNames = atoms[4].as;
+
+			itemOffset = atoms[5].i;
+			page = atoms[6].i;
+			pageMax = atoms[7].i;
+
+			actions.removeAllElements();
+
+			for (int i = 0; i < atoms[11].ai.length; i++) {
+				actions.addElement(new ListAction(atoms[11].ai[i],
+						atoms[12].as[i]));
+			}
+			for (int i = 0; i < atoms[8].ai.length; i++) {
+				actions.addElement(new ItemAction(atoms[8].ai[i],
+						atoms[9].as[i], atoms[10].ab[i]));
+			}
+		}
+	}
+
+	/** State as decoded by the interpreter. */
+	private static final class InterpretedState {
+
+		private final Atom atoms[] = atoms(new int[] { SerialAtom.TYPE_Y,
+				SerialAtom.TYPE_Y, SerialAtom.TYPE_I, SerialAtom.TYPE_B,
+				SerialAtom.TYPE_B, SerialAtom.TYPE_B });
+
+		private int playback, volume, position;
+
+		private boolean repeat, shuffle, queue;
+
+		private void notifyAtomsUpdated() {
+
+			playback = atoms[0].y;
+			volume = atoms[1].y;
+			position = atoms[2].i;
+			repeat = atoms[3].b;
+			shuffle = atoms[4].b;
+			queue = atoms[5].b;
+		}
+	}
+
+	/** Number of items of the list page. */
+	private static final int PAGE_SIZE = 100;
+
+	/** Number of string cache slots (as used by the player). */
+	private static final int STRING_CACHE_SIZE = 256;
+
+	public static void main(String[] args) throws Exception {
+
+		final byte state[] = state();
+		final byte progress[] = progress();
+		final byte item[] = item();
+		final byte page[] = page();
+
+		System.out.println("message sizes: state " + state.length
+				+ " B, progress " + progress.length + " B, item "
+				+ item.length + " B, page " + page.length + " B");
+
+		final State s = new State();
+		final Progress p = new Progress();
+		final Item i = new Item();
+
+		final InterpretedState is = new InterpretedState();
+		final Atom ip[] = atoms(new int[] { SerialAtom.TYPE_I,
+				SerialAtom.TYPE_I });
+		final InterpretedItem ii = new InterpretedItem();
+
+		final BaIn in = new BaIn(true);
+		in.setStringCache(STRING_CACHE_SIZE);
+
+		System.out.println("--- interpreter");
+		Bench.run("state", state.length, new Bench.Op() {
+			public void run() throws Exception {
+				interpret(is.atoms, state);
+				is.notifyAtomsUpdated();
+			}
+		});
+		Bench.run("progress", progress.length, new Bench.Op() {
+			public void run() throws Exception {
+				interpret(ip, progress);
+			}
+		});
+		Bench.run("item", item.length, new Bench.Op() {
+			public void run() throws Exception {
+				interpret(ii.atoms, item);
+				ii.notifyAtomsUpdated();
+			}
+		});
+		Bench.run("page", page.length, new Bench.Op() {
+			public void run() throws Exception {
+				final InterpretedList il = new InterpretedList();
+				interpret(il.atoms, page);
+				il.notifyAtomsUpdated();
+			}
+		});
+
+		System.out.println("--- codecs, new input per message");
+		Bench.run("state", state.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(s, state);
+			}
+		});
+		Bench.run("progress", progress.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(p, progress);
+			}
+		});
+		Bench.run("item", item.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(i, item);
+			}
+		});
+		Bench.run("page", page.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(new ItemList(ItemList.TYPE_MLIB), page);
+			}
+		});
+
+		System.out.println("--- codecs, reused zero-copy input, string cache");
+		Bench.run("state", state.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(s, in.wrap(state));
+			}
+		});
+		Bench.run("progress", progress.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(p, in.wrap(progress));
+			}
+		});
+		Bench.run("item", item.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(i, in.wrap(item));
+			}
+		});
+		Bench.run("page", page.length, new Bench.Op() {
+			public void run() throws Exception {
+				Serial.in(new ItemList(ItemList.TYPE_MLIB), in.wrap(page));
+			}
+		});
+	}
+
+	private static Atom[] atoms(int fmt[]) {
+
+		final Atom atoms[] = new Atom[fmt.length];
+		for (int i = 0; i < atoms.length; i++) {
+			atoms[i] = new Atom(fmt[i]);
+		}
+		return atoms;
+	}
+
+	/** The per-atom interpreter which has been replaced by the codecs. */
+	private static void interpret(Atom atoms[], byte data[])
+			throws BinaryDataExecption {
+
+		final BaIn bis = new BaIn(false).wrap(data);
+
+		final int len = atoms.length;
+
+		for (int i = 0; i < len; i++) {
+
+			switch (atoms[i].type) {
+			case SerialAtom.TYPE_Y:
+				atoms[i].y = bis.readY();
+				break;
+			case SerialAtom.TYPE_B:
+				atoms[i].b = bis.readB();
+				break;
+			case SerialAtom.TYPE_N:
+				atoms[i].n = bis.readN();
+				break;
+			case SerialAtom.TYPE_I:
+				atoms[i].i = bis.readI();
+				break;
+			case SerialAtom.TYPE_X:
+				atoms[i].x = bis.readX();
+				break;
+			case SerialAtom.TYPE_S:
+				atoms[i].s = bis.readS();
+				break;
+			case SerialAtom.TYPE_AB:
+				atoms[i].ab = bis.readAB();
+				break;
+			case SerialAtom.TYPE_AY:
+				atoms[i].ay = bis.readAY();
+				break;
+			case SerialAtom.TYPE_AN:
+				atoms[i].an = bis.readAN();
+				break;
+			case SerialAtom.TYPE_AI:
+				atoms[i].ai = bis.readAI();
+				break;
+			case SerialAtom.TYPE_AS:
+				atoms[i].as = bis.readAS();
+				break;
+			default:
+				throw new BinaryDataExecption("unknown type");
+			}
+		}
+
+		if (bis.available() > 0) {
+			throw new BinaryDataExecption(bis.available() + " unused bytes");
+		}
+	}
+
+	private static byte[] item() {
+
+		final String meta[] = { Item.META_ARTIST, "The Artist",
+				Item.META_ALBUM, "The Album", Item.META_TITLE, "The Title",
+				Item.META_GENRE, "Rock", Item.META_YEAR, "1999",
+				Item.META_TRACK, "7", Item.META_LENGTH, "245",
+				Item.META_BITRATE, "192", Item.META_TAGS, "good,loud",
+				"rating", "3", "type", "audio" };
+
+		final byte img[] = new byte[8 * 1024];
+		new Random(1).nextBytes(img);
+
+		final BaOut out = new BaOut(16 * 1024);
+		out.writeS("/music/The Artist/The Album/07 The Title.ogg");
+		out.writeAS(meta);
+		out.writeAY(img);
+		return out.toByteArray();
+	}
+
+	private static byte[] page() {
+
+		final String ids[] = new String[PAGE_SIZE];
+		final String names[] = new String[PAGE_SIZE];
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			ids[i] = "/music/Artist " + (i / 10) + "/Album/" + i + ".ogg";
+			names[i] = "Artist " + (i / 10) + " - Title " + i;
+		}
+
+		final BaOut out = new BaOut(16 * 1024);
+		out.writeI(1);
+		out.writeAS(new String[] { "Artists", "Artist 1" });
+		out.writeAS(new String[0]);
+		out.writeAS(ids);
+		out.writeAS(names);
+		out.writeI(0);
+		out.writeI(0);
+		out.writeI(3);
+		out.writeAI(new int[] { 1, 2 });
+		out.writeAS(new String[] { "Play", "Enqueue" });
+		out.writeAB(new boolean[] { false, true });
+		out.writeAI(new int[0]);
+		out.writeAS(new String[0]);
+		return out.toByteArray();
+	}
+
+	private static byte[] progress() {
+
+		final BaOut out = new BaOut(16);
+		out.writeI(100);
+		out.writeI(245);
+		return out.toByteArray();
+	}
+
+	private static byte[] state() {
+
+		final BaOut out = new BaOut(32);
+		out.writeY(State.PLAYBACK_PLAY);
+		out.writeY((byte) 50);
+		out.writeI(7);
+		out.writeB(false);
+		out.writeB(true);
+		out.writeB(false);
+		return out.toByteArray();
+	}
+
+}
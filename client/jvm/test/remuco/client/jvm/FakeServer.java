@@ -0,0 +1,173 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import remuco.client.common.io.Message;
+import remuco.client.common.serial.BaOut;
+
+/**
+ * In-process fake Remuco server for benchmarks. Speaks the {@link Message}
+ * protocol like a real server: sends the hello message, receives the client
+ * info, sends a player info and then a stream of state updates (deltas which
+ * change the volume). The last update sets the volume to
+ * {@link #LAST_VOLUME}, which no other update uses, so clients can tell when
+ * they have seen all updates. Messages sent by clients get discarded.
+ * <p>
+ * Every accepted connection gets served by its own thread - the server is not
+ * what gets measured.
+ */
+final class FakeServer implements Runnable {
+
+	/** Volume set by the last update. */
+	static final int LAST_VOLUME = 100;
+
+	private static final byte[] HELLO = { (byte) 0xFF, (byte) 0xFF,
+			(byte) 0xFF, (byte) 0xFF, (byte) 0x0A, (byte) 0xFE, (byte) 0xFE,
+			(byte) 0xFE, (byte) 0xFE };
+
+	/** Bit of the volume in the field mask of a state delta. */
+	private static final short STATE_VOLUME = 1 << 1;
+
+	/** Number of updates to write before flushing. */
+	private static final int UPDATES_PER_FLUSH = 64;
+
+	private final ServerSocket server;
+
+	private final int updates;
+
+	/**
+	 * Create a server listening on a free port of the loopback interface.
+	 * 
+	 * @param updates
+	 *            number of state updates to send to each client
+	 */
+	FakeServer(int updates) throws IOException {
+		this.updates = Math.max(updates, 1);
+		server = new ServerSocket(0, 1024, InetAddress.getByName(null));
+	}
+
+	void close() {
+		try {
+			server.close();
+		} catch (IOException e) {
+		}
+	}
+
+	int getPort() {
+		return server.getLocalPort();
+	}
+
+	@Override
+	public void run() {
+
+		while (true) {
+
+			final Socket sock;
+
+			try {
+				sock = server.accept();
+			} catch (IOException e) {
+				return; // closed
+			}
+
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						serve(sock);
+					} catch (IOException e) {
+					} finally {
+						try {
+							sock.close();
+						} catch (IOException e) {
+						}
+					}
+				}
+			}, "fake-server").start();
+		}
+	}
+
+	void start() {
+		new Thread(this, "fake-server-accept").start();
+	}
+
+	private void serve(Socket sock) throws IOException {
+
+		final DataInputStream dis = new DataInputStream(sock.getInputStream());
+		final OutputStream os = new BufferedOutputStream(sock.getOutputStream());
+		final BaOut out = new BaOut(256);
+
+		os.write(HELLO);
+		os.flush();
+
+		skipMessage(dis); // client info
+
+		out.beginMessage(Message.CONN_PINFO);
+		out.writeS("Fake");
+		out.writeI(0); // flags
+		out.writeY((byte) 5); // max rating
+		out.writeAI(new int[0]);
+		out.writeAS(new String[0]);
+		out.writeAB(new boolean[0]);
+		out.writeAS(new String[0]);
+		out.endMessage();
+		out.writeTo(os);
+		os.flush();
+
+		for (int i = 0; i < updates; i++) {
+			final int volume = i < updates - 1 ? i % LAST_VOLUME : LAST_VOLUME;
+			out.reset();
+			out.beginMessage(Message.SYNC_STATE);
+			out.writeN(STATE_VOLUME);
+			out.writeY((byte) volume);
+			out.endMessage();
+			out.writeTo(os);
+			if (i % UPDATES_PER_FLUSH == 0) {
+				os.flush();
+			}
+		}
+		os.flush();
+
+		try {
+			while (true) {
+				skipMessage(dis);
+			}
+		} catch (EOFException e) {
+			// client disconnected
+		}
+	}
+
+	private void skipMessage(DataInputStream dis) throws IOException {
+
+		dis.readShort();
+		dis.readFully(new byte[dis.readInt()]);
+	}
+
+}
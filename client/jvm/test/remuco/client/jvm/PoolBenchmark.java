@@ -0,0 +1,268 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import remuco.client.common.MainLoop;
+import remuco.client.common.UserException;
+import remuco.client.common.data.ClientInfo;
+import remuco.client.common.io.Connection;
+import remuco.client.common.io.ConnectionRuntime;
+import remuco.client.common.io.ISocket;
+import remuco.client.common.io.PlayerPool;
+import remuco.client.common.io.Reconnector.ISocketFactory;
+import remuco.client.common.player.IStateListener;
+import remuco.client.common.player.Player;
+import remuco.client.common.util.ILogPrinter;
+import remuco.client.common.util.Log;
+import remuco.client.jvm.io.SelectorDriver;
+import remuco.client.jvm.io.VirtualThreadFactory;
+
+/**
+ * Load benchmark for a {@link PlayerPool}. Connects to many in-process
+ * {@link FakeServer}s, each sending a stream of state updates, and measures
+ * how long it takes until all hosts are connected and all updates have been
+ * seen, how many client threads are used and how the main loop's dispatch lane
+ * keeps up.
+ * <p>
+ * Usage:
+ * <code>PoolBenchmark [hosts [updates [threads|virtual|selector]]]</code>
+ * <ul>
+ * <li><em>threads</em> - the pool's default runtime (a receiver thread per
+ * connection)</li>
+ * <li><em>virtual</em> - like <em>threads</em> but with a
+ * {@link VirtualThreadFactory} (virtual threads on JVMs supporting them,
+ * which are not counted as client threads)</li>
+ * <li><em>selector</em> - a runtime with a {@link SelectorDriver} (a few
+ * receive threads for all connections)</li>
+ * </ul>
+ * Run with <code>ant benchmark</code> (see <code>build.xml</code>).
+ */
+public final class PoolBenchmark {
+
+	/** Plain blocking socket for the pool's default runtime. */
+	private static final class StreamSocket implements ISocket {
+
+		private final Socket sock;
+
+		public StreamSocket(int port) throws UserException {
+			try {
+				sock = new Socket("localhost", port);
+				sock.setTcpNoDelay(true);
+			} catch (IOException e) {
+				throw new UserException("Connection Error",
+						"IO error while setting up the connection");
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				sock.close();
+			} catch (IOException e) {
+			}
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			try {
+				return sock.getInputStream();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			try {
+				return sock.getOutputStream();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+	}
+
+	/** Maximum time in milliseconds to wait for connects and updates. */
+	private static final int TIMEOUT = 60000;
+
+	public static void main(String[] args) throws Exception {
+
+		final int hosts = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		final int updates = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		final String mode = args.length > 2 ? args[2] : "selector";
+		final boolean selector = mode.equals("selector");
+
+		// connections log every message, which would dominate the results
+		Log.setOut(new ILogPrinter() {
+			@Override
+			public void println(String s) {
+			}
+		});
+
+		MainLoop.enable();
+
+		final FakeServer server = new FakeServer(updates);
+		server.start();
+
+		final Set<String> done = new HashSet<String>();
+
+		final PlayerPool.IPoolListener listener = new PlayerPool.IPoolListener() {
+
+			@Override
+			public void notifyConnected(final String key, final Player player) {
+				player.setStateListener(new IStateListener() {
+					@Override
+					public void notifyStateChanged() {
+						if (player.state.getVolume() == FakeServer.LAST_VOLUME) {
+							synchronized (done) {
+								done.add(key);
+								done.notifyAll();
+							}
+						}
+					}
+				});
+			}
+
+			@Override
+			public void notifyDisconnected(String key, UserException reason) {
+				System.out.println("disconnected: " + key + " ("
+						+ reason.getDetails() + ")");
+			}
+		};
+
+		final ClientInfo ci = new ClientInfo(100, "JPEG", 50, null);
+		final SelectorDriver driver;
+		final PlayerPool pool;
+
+		if (selector) {
+			driver = new SelectorDriver(4);
+			pool = new PlayerPool(listener, 0, ci, new ConnectionRuntime(4, 2,
+					null, driver));
+		} else {
+			if (mode.equals("virtual")) {
+				final VirtualThreadFactory vtf = new VirtualThreadFactory();
+				if (!vtf.isVirtual()) {
+					System.out.println("no virtual threads on this JVM, "
+							+ "using platform threads");
+				}
+				Connection.setThreadFactory(vtf);
+			}
+			driver = null;
+			pool = new PlayerPool(listener, 0, ci);
+		}
+
+		System.out.println("hosts: " + hosts + ", updates per host: "
+				+ updates + ", mode: " + mode);
+
+		final long t0 = System.currentTimeMillis();
+
+		for (int i = 0; i < hosts; i++) {
+			pool.add("host" + i, socketFactory(driver, server.getPort()));
+		}
+
+		while (pool.getConnectedCount() < hosts
+				&& System.currentTimeMillis() - t0 < TIMEOUT) {
+			Thread.sleep(5);
+		}
+
+		final long t1 = System.currentTimeMillis();
+		final int threads = countThreads();
+
+		synchronized (done) {
+			while (done.size() < hosts
+					&& System.currentTimeMillis() - t0 < TIMEOUT) {
+				done.wait(100);
+			}
+		}
+
+		final long t2 = System.currentTimeMillis();
+
+		int conflated = 0;
+		for (Enumeration<?> e = pool.keys(); e.hasMoreElements();) {
+			final Player player = pool.getPlayer((String) e.nextElement());
+			if (player != null) {
+				conflated += player.getConnection().getDroppedMessages();
+			}
+		}
+
+		System.out.println("connected:   " + pool.getConnectedCount() + "/"
+				+ hosts + " in " + (t1 - t0) + " ms");
+		System.out.println("updated:     " + done.size() + "/" + hosts
+				+ " in " + (t2 - t0) + " ms ("
+				+ (long) hosts * updates * 1000 / Math.max(t2 - t0, 1)
+				+ " updates/s)");
+		System.out.println("conflated:   " + conflated + " of "
+				+ (long) hosts * updates + " updates");
+		System.out.println("threads:     " + threads + " client threads");
+		System.out.println("dispatching: " + MainLoop.getTaskCount(0)
+				+ " tasks, latency avg "
+				+ MainLoop.getLatencyAvg(MainLoop.LANE_DISPATCH) + " ms, max "
+				+ MainLoop.getLatencyMax(MainLoop.LANE_DISPATCH) + " ms");
+
+		pool.close();
+		if (driver != null) {
+			driver.shutdown();
+		}
+		server.close();
+		MainLoop.disable();
+
+		System.exit(done.size() == hosts ? 0 : 1);
+	}
+
+	/** Count the threads used by the client (not by the fake server). */
+	private static int countThreads() {
+
+		int n = 0;
+
+		for (Map.Entry<Thread, StackTraceElement[]> e : Thread
+				.getAllStackTraces().entrySet()) {
+			if (e.getKey().getName().startsWith("remuco-")) {
+				n++;
+			}
+		}
+
+		return n;
+	}
+
+	private static ISocketFactory socketFactory(SelectorDriver driver,
+			final int port) {
+
+		if (driver != null) {
+			return driver.socketFactory("localhost", port);
+		}
+		return new ISocketFactory() {
+			@Override
+			public ISocket createSocket() throws UserException {
+				return new StreamSocket(port);
+			}
+		};
+	}
+
+}
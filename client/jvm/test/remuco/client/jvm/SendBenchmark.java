@@ -0,0 +1,238 @@
+/*   
+ *   Remuco - A remote control system for media players.
+ *   Copyright (C) 2006-2010 by the Remuco team, see AUTHORS.
+ *
+ *   This file is part of Remuco.
+ *
+ *   Remuco is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Remuco is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Remuco.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ */
+package remuco.client.jvm;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Map;
+
+import remuco.client.common.MainLoop;
+import remuco.client.common.UserException;
+import remuco.client.common.data.ClientInfo;
+import remuco.client.common.data.ControlParam;
+import remuco.client.common.io.Connection;
+import remuco.client.common.io.ISocket;
+import remuco.client.common.io.Message;
+import remuco.client.common.player.Player;
+import remuco.client.common.serial.Serial;
+import remuco.client.common.util.ILogPrinter;
+import remuco.client.common.util.Log;
+
+/**
+ * Allocation benchmark for outgoing messages. Measures the bytes allocated per
+ * control sent to an in-process {@link FakeServer}, like when a key repeats a
+ * volume or seek control:
+ * <ul>
+ * <li><em>legacy</em> - the send path before messages got serialized into the
+ * connection's reusable buffer (a message, its parameter, a serialization
+ * buffer and a copy of its content per control, written with separate
+ * header and data writes)</li>
+ * <li><em>ctrlRate</em> - a control sent via {@link Player} and written by the
+ * connection's writer thread (a message and its parameter per control)</li>
+ * <li><em>ctrlVolume</em> - a coalescing control sent via {@link Player}</li>
+ * </ul>
+ * Each operation sends one control and waits until it has been written to
+ * the socket, so controls do not pile up (and coalescing controls do not
+ * merge). Allocations of the writer thread count as allocations of the
+ * operation.
+ * <p>
+ * Run with <code>ant benchmark.send</code> (see <code>build.xml</code>).
+ */
+public final class SendBenchmark {
+
+	/** Output stream which counts the bytes written through it. */
+	private static final class CountingOutputStream extends FilterOutputStream {
+
+		private volatile long count = 0;
+
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		/** Wait until more than <em>bytes</em> bytes have been written. */
+		private void await(long bytes) {
+			while (count <= bytes) {
+				Thread.yield();
+			}
+		}
+
+	}
+
+	/** Blocking socket whose output gets counted. */
+	private static final class CountingSocket implements ISocket {
+
+		private final CountingOutputStream os;
+
+		private final Socket sock;
+
+		public CountingSocket(int port) throws IOException {
+			sock = new Socket("localhost", port);
+			sock.setTcpNoDelay(true);
+			os = new CountingOutputStream(sock.getOutputStream());
+		}
+
+		@Override
+		public void close() {
+			try {
+				sock.close();
+			} catch (IOException e) {
+			}
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			try {
+				return sock.getInputStream();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return os;
+		}
+
+	}
+
+	/** Maximum time in milliseconds to wait for the connection. */
+	private static final int TIMEOUT = 10000;
+
+	public static void main(String[] args) throws Exception {
+
+		// connections log every message, which would dominate the results
+		Log.setOut(new ILogPrinter() {
+			@Override
+			public void println(String s) {
+			}
+		});
+
+		MainLoop.enable();
+
+		final FakeServer server = new FakeServer(1);
+		server.start();
+
+		final CountingSocket sock = new CountingSocket(server.getPort());
+		final Player players[] = new Player[1];
+
+		final Connection conn = new Connection(sock,
+				new Connection.IConnectionListener() {
+
+					@Override
+					public void notifyConnected(Player player) {
+						synchronized (players) {
+							players[0] = player;
+							players.notifyAll();
+						}
+					}
+
+					@Override
+					public void notifyDisconnected(ISocket sock,
+							UserException reason) {
+						System.out.println("disconnected: "
+								+ reason.getDetails());
+					}
+				}, 0, new ClientInfo(100, "JPEG", 50, null));
+
+		final Player player;
+		synchronized (players) {
+			final long end = System.currentTimeMillis() + TIMEOUT;
+			while (players[0] == null && System.currentTimeMillis() < end) {
+				players.wait(100);
+			}
+			player = players[0];
+		}
+		if (player == null) {
+			System.out.println("connecting failed");
+			System.exit(1);
+		}
+
+		final Thread writer[] = { findThread("remuco-writer") };
+		final CountingOutputStream os = sock.os;
+		final DataOutputStream dos = new DataOutputStream(os);
+
+		Bench.run("legacy", 0, new Bench.Op() {
+			@Override
+			public void run() throws Exception {
+				final Message m = new Message();
+				m.id = Message.CTRL_VOLUME;
+				m.data = Serial.out(new ControlParam(1));
+				Log.ln("[CN] send msg: " + m.id + ", " + m.data.length + "B");
+				dos.writeShort(m.id);
+				dos.writeInt(m.data.length);
+				dos.write(m.data);
+				dos.flush();
+			}
+		});
+
+		Bench.run("ctrlRate", 0, new Bench.Op() {
+			@Override
+			public void run() throws Exception {
+				final long before = os.count;
+				player.ctrlRate(3);
+				os.await(before);
+			}
+		}, writer);
+
+		Bench.run("ctrlVolume", 0, new Bench.Op() {
+			@Override
+			public void run() throws Exception {
+				final long before = os.count;
+				player.ctrlVolume(1);
+				os.await(before);
+			}
+		}, writer);
+
+		conn.close();
+		server.close();
+		MainLoop.disable();
+
+		System.exit(0);
+	}
+
+	private static Thread findThread(String name) {
+
+		for (Map.Entry<Thread, StackTraceElement[]> e : Thread
+				.getAllStackTraces().entrySet()) {
+			if (e.getKey().getName().equals(name)) {
+				return e.getKey();
+			}
+		}
+		throw new IllegalStateException("no thread " + name);
+	}
+
+}
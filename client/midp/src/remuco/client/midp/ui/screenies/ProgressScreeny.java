@@ -23,7 +23,7 @@ package remuco.client.midp.ui.screenies;
 import javax.microedition.lcdui.Image;
 
 import remuco.client.common.data.PlayerInfo;
-import remuco.client.common.data.Progress;
+import remuco.client.common.player.ProgressModel;
 import remuco.client.common.player.Feature;
 import remuco.client.midp.ui.Theme;
 
@@ -71,7 +71,7 @@ public class ProgressScreeny extends Screeny {
 			return;
 		}
 
-		final Progress p = (Progress) data;
+		final ProgressModel p = (ProgressModel) data;
 
 		final StringBuffer sb = new StringBuffer(13);
 
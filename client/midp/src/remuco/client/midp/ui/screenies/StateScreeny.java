@@ -68,6 +68,9 @@ public class StateScreeny extends Screeny {
 
 	private final SliderState sliderStateVolume;
 
+	/** Whether sub screenies have been updated at least once. */
+	private boolean synced = false;
+
 	public StateScreeny(PlayerInfo player) {
 
 		super(player);
@@ -125,15 +128,23 @@ public class StateScreeny extends Screeny {
 
 		State s = (State) data;
 
-		screenyPlayback.updateData(new Integer(s.getPlayback()));
-		if (screenyRepeat != null) {
+		// only update sub screenies whose data changed (saves redrawing)
+		final int changed = synced ? s.getChanged() : State.CHANGED_ALL;
+		synced = true;
+
+		if ((changed & State.CHANGED_PLAYBACK) != 0) {
+			screenyPlayback.updateData(new Integer(s.getPlayback()));
+		}
+		if (screenyRepeat != null && (changed & State.CHANGED_REPEAT) != 0) {
 			screenyRepeat.updateData(new Boolean(s.isRepeat()));
 		}
-		if (screenyShuffle != null) {
+		if (screenyShuffle != null && (changed & State.CHANGED_SHUFFLE) != 0) {
 			screenyShuffle.updateData(new Boolean(s.isShuffle()));
 		}
-		sliderStateVolume.setPosition(s.getVolume());
-		screenyVolume.updateData(sliderStateVolume);
+		if ((changed & State.CHANGED_VOLUME) != 0) {
+			sliderStateVolume.setPosition(s.getVolume());
+			screenyVolume.updateData(sliderStateVolume);
+		}
 
 	}
 
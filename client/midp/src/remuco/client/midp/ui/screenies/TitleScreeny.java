@@ -161,7 +161,8 @@ public final class TitleScreeny extends Screeny {
 		if (maxImgHeight < 32) // not enough space for an image
 			return;
 
-		Image plobImg = MIDPTools.baToImage(item.getImg());
+		Image plobImg = MIDPTools.baToImage(item.getImgData(),
+			item.getImgOffset(), item.getImgLength());
 
 		if (plobImg == null) {
 			// The logo should not get scaled as this drops the alpha channel.
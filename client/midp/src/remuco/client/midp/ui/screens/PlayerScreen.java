@@ -30,6 +30,8 @@ import javax.microedition.lcdui.Displayable;
 import javax.microedition.lcdui.Graphics;
 import javax.microedition.lcdui.Image;
 
+import java.util.TimerTask;
+
 import remuco.client.common.MainLoop;
 import remuco.client.common.data.ClientInfo;
 import remuco.client.common.data.Item;
@@ -119,6 +121,9 @@ public final class PlayerScreen extends Canvas implements IItemListener,
 
 	private RepeatedControl recoVolume = null;
 
+	/** Updates the extrapolated progress display while playing. */
+	private TimerTask progressTicker = null;
+
 	/** Screen to configure key setup */
 	private final KeyBindingsScreen screenKeyConfig;
 
@@ -420,7 +425,7 @@ public final class PlayerScreen extends Canvas implements IItemListener,
 
 		case KeyBindings.ACTION_IMAGE:
 
-			if (player.item.getImg().length == 0) {
+			if (player.item.getImgLength() == 0) {
 				break; // ignore fullscreen toggles when there is no image
 			}
 			itemImageFullscreenEnabled = !itemImageFullscreenEnabled;
@@ -548,7 +553,8 @@ public final class PlayerScreen extends Canvas implements IItemListener,
 	public void notifyItemChanged() {
 
 		screenyItem.updateData(player.item);
-		final Image img = MIDPTools.baToImage(player.item.getImg());
+		final Image img = MIDPTools.baToImage(player.item.getImgData(),
+			player.item.getImgOffset(), player.item.getImgLength());
 		screenyItemImageFullscreen.updateData(img);
 
 		if (!itemImageFullscreenEnabled) {
@@ -564,15 +570,18 @@ public final class PlayerScreen extends Canvas implements IItemListener,
 
 	public void notifyProgressChanged() {
 
-		screenyProgress.updateData(player.progress);
+		screenyProgress.updateData(player.progressModel);
 		repaint(screenyProgress);
 
+		updateProgressTicker();
 	}
 
 	public void notifyStateChanged() {
 
 		screenyState.updateData(player.state);
 		repaint(screenyState);
+
+		updateProgressTicker();
 	}
 
 	public void optionChanged(OptionDescriptor od) {
@@ -860,4 +869,38 @@ public final class PlayerScreen extends Canvas implements IItemListener,
 		}
 	}
 
+	/**
+	 * (Re)starts the progress ticker if the extrapolated progress is running,
+	 * stops it otherwise. The ticker fires whenever the displayed progress
+	 * changes, so there is no need for frequent progress syncs.
+	 */
+	private void updateProgressTicker() {
+
+		if (progressTicker != null) {
+			progressTicker.cancel();
+			progressTicker = null;
+		}
+
+		final long delay = player.progressModel.getMillisToNextChange();
+
+		if (delay < 0) {
+			return;
+		}
+
+		progressTicker = new TimerTask() {
+			public void run() {
+				if (player.getConnection().isClosed()
+						|| player.progressModel.getMillisToNextChange() < 0) {
+					cancel();
+				}
+				if (isShown()) {
+					screenyProgress.updateData(player.progressModel);
+					repaint(screenyProgress);
+				}
+			}
+		};
+
+		MainLoop.schedule(progressTicker, delay, 1000);
+	}
+
 }
@@ -38,6 +38,9 @@ import remuco.client.midp.ui.screens.PlayerScreen;
  */
 public class MIDPTools {
 
+	/** Interval of progress syncs in seconds (progress gets extrapolated). */
+	private static final int PROGRESS_SYNC_INTERVAL = 30;
+
 	/**
 	 * Create an image from its byte array representation.
 	 * 
@@ -48,9 +51,26 @@ public class MIDPTools {
 	 */
 	public static Image baToImage(byte ay[]) {
 
-		if (ay != null && ay.length > 0) {
+		return baToImage(ay, 0, ay != null ? ay.length : 0);
+	}
+
+	/**
+	 * Create an image from a part of a byte array.
+	 * 
+	 * @param ay
+	 *            the byte array
+	 * @param off
+	 *            offset of the image data within <em>ay</em>
+	 * @param len
+	 *            length of the image data
+	 * @return an image or <code>null</code> if <em>ay</em> is <code>null</code>
+	 *         or <em>len</em> is 0 or if the image data is malformed
+	 */
+	public static Image baToImage(byte ay[], int off, int len) {
+
+		if (ay != null && len > 0) {
 			try {
-				return Image.createImage(ay, 0, ay.length);
+				return Image.createImage(ay, off, len);
 			} catch (Exception e) {
 				Log.ln("[IT] creating image failed", e);
 				return null;
@@ -90,6 +110,12 @@ public class MIDPTools {
 				Integer.parseInt(config.getOption(ItemlistScreen.OD_PAGE_SIZE)),
 				info);
 
+		// large cover images may exceed the heap of low-end phones
+		ci.setMaxMessageSize((int) (Runtime.getRuntime().totalMemory() / 8));
+
+		// progress gets extrapolated, occasional syncs are sufficient
+		ci.setProgressInterval(PROGRESS_SYNC_INTERVAL);
+
 		return ci;
 	}
 